@@ -0,0 +1,23 @@
+
+-- Store hashes and objects as binary instead of Base64 encoded strings, converting the existing rows in place.
+
+CREATE ALIAS BASE64_DECODE FOR "org.apache.commons.codec.binary.Base64.decodeBase64(java.lang.String)";
+
+CREATE TABLE retrieved_objects_binary (
+  hash BINARY(32) NOT NULL PRIMARY KEY,
+  uri CHARACTER VARYING(2000) NOT NULL,
+  encoded_object VARBINARY NOT NULL,
+  expires TIMESTAMP NOT NULL,
+  update_order BIGINT NOT NULL
+);
+
+INSERT INTO retrieved_objects_binary (hash, uri, encoded_object, expires, update_order)
+  SELECT BASE64_DECODE(hash), uri, BASE64_DECODE(encoded_object), expires, update_order FROM retrieved_objects;
+
+DROP TABLE retrieved_objects;
+
+ALTER TABLE retrieved_objects_binary RENAME TO retrieved_objects;
+
+CREATE INDEX uri_idx ON retrieved_objects(uri, update_order);
+
+DROP ALIAS BASE64_DECODE;
@@ -30,19 +30,38 @@
 package net.ripe.rpki.validator.api
 
 import net.ripe.rpki.validator.models.RtrPrefix
-import scalaz.Validation
+import scalaz.{Validation, Success, Failure}
 import org.scalatra.{FlashMapSupport, ScalatraBase, Ok, BadRequest}
 import net.liftweb.json._
+import net.ripe.ipresource.{Asn, IpRange}
 import net.ripe.rpki.validator.lib.Validation._
-import net.ripe.rpki.validator.bgp.preview.{BgpAnnouncement, BgpAnnouncementValidator}
+import net.ripe.rpki.validator.bgp.preview.{BgpAnnouncement, BgpValidatedAnnouncement, RtrPrefixTrie}
 import net.ripe.rpki.validator.models.RouteValidity._
 
 
 trait BgpPrefixOriginValidationController extends ScalatraBase {
   import net.liftweb.json.JsonDSL._
+  import BgpPrefixOriginValidationController._
 
   protected def getVrpObjects: Set[RtrPrefix]
 
+  /**
+   * The VRP set only changes together with the memory image version, so the trie is rebuilt when a different set is
+   * returned and shared by all requests until then.
+   */
+  @volatile private var vrpIndex: (Set[RtrPrefix], RtrPrefixTrie) = (Set.empty, RtrPrefixTrie.empty)
+
+  private def vrpTrie: RtrPrefixTrie = {
+    val vrpObjects = getVrpObjects
+    val (indexed, trie) = vrpIndex
+    if (indexed eq vrpObjects) trie
+    else {
+      val updated = RtrPrefixTrie(vrpObjects)
+      vrpIndex = (vrpObjects, updated)
+      updated
+    }
+  }
+
   get("/v1/validity/:asn/:prefix/:length") {
     contentType = "text/json;charset=UTF-8"
     response.addHeader("Cache-Control", "no-cache,no-store")
@@ -50,19 +69,61 @@ trait BgpPrefixOriginValidationController extends ScalatraBase {
     val asn = parseAsn(params("asn")).orHalt
     val prefix = parseIpPrefix(s"${params("prefix")}/${params("length")}").orHalt
 
-    val announcement = BgpAnnouncementValidator.validate(BgpAnnouncement(asn, prefix), getVrpObjects.toSeq)
-
-    Ok(body = pretty(render(
-      "validated_route" ->
-        ("route" ->
-          ("origin_asn" -> announcement.asn.toString) ~ ("prefix" -> announcement.prefix.toString)) ~
-        ("validity" ->
-          convert(announcement.validity) ~
-          ("VRPs" ->
-            ("matched" -> convert(announcement.valids)) ~
-            ("unmatched_as" -> convert(announcement.invalidsAsn)) ~
-            ("unmatched_length" -> convert(announcement.invalidsLength)))))
-    ))
+    val announcement = vrpTrie.validate(BgpAnnouncement(asn, prefix))
+
+    Ok(body = pretty(render("validated_route" -> convert(announcement))))
+  }
+
+  /**
+   * Validates all routes of a request body like `{"routes": [{"asn": "AS65001", "prefix": "10.0.0.0/8"}]}` against
+   * the same set of VRPs.
+   */
+  post("/v1/validity") {
+    contentType = "text/json;charset=UTF-8"
+    response.addHeader("Cache-Control", "no-cache,no-store")
+
+    val routes = parseRoutes(request.body).orHalt
+
+    val trie = vrpTrie
+    val announcements = routes.map { case (asn, prefix) => trie.validate(BgpAnnouncement(asn, prefix)) }
+
+    Ok(body = pretty(render("validated_routes" -> announcements.map(convert))))
+  }
+
+  private def convert(announcement: BgpValidatedAnnouncement): JObject = {
+    ("route" ->
+      ("origin_asn" -> announcement.asn.toString) ~ ("prefix" -> announcement.prefix.toString)) ~
+    ("validity" ->
+      convert(announcement.validity) ~
+      ("VRPs" ->
+        ("matched" -> convert(announcement.valids)) ~
+        ("unmatched_as" -> convert(announcement.invalidsAsn)) ~
+        ("unmatched_length" -> convert(announcement.invalidsLength))))
+  }
+
+  private def parseRoutes(body: String): Validation[String, Seq[(Asn, IpRange)]] = {
+    val routes = try {
+      parse(body) \ "routes"
+    } catch {
+      case _: Exception => return Failure("request body is not valid JSON")
+    }
+    routes match {
+      case JArray(entries) if entries.size > MaximumBatchSize =>
+        Failure(s"at most $MaximumBatchSize routes can be validated per request")
+      case JArray(entries) =>
+        val parsed = entries.map(parseRoute)
+        parsed.collectFirst { case Failure(error) => error } match {
+          case Some(error) => Failure(error)
+          case None => Success(parsed.collect { case Success(route) => route })
+        }
+      case _ =>
+        Failure("request body must contain a \"routes\" array")
+    }
+  }
+
+  private def parseRoute(route: JValue): Validation[String, (Asn, IpRange)] = (route \ "asn", route \ "prefix") match {
+    case (JString(asn), JString(prefix)) => parseAsn(asn).flatMap(asn => parseIpPrefix(prefix).map(prefix => (asn, prefix)))
+    case _ => Failure("each route must have an \"asn\" and a \"prefix\"")
   }
 
   private def convert(value: RouteValidity) = {
@@ -85,4 +146,8 @@ trait BgpPrefixOriginValidationController extends ScalatraBase {
       ))
     })
   }
-}
\ No newline at end of file
+}
+
+object BgpPrefixOriginValidationController {
+  val MaximumBatchSize = 10000
+}
@@ -0,0 +1,103 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import java.math.BigInteger
+import lib.NumberResources._
+import net.ripe.ipresource.{Ipv4Address, Ipv6Address, UniqueIpResource}
+
+/**
+ * Conversions between IP addresses and the primitive representation used by the prefix trie and the columnar
+ * announcement storage: an address is a pair of longs, with IPv4 addresses left aligned in the high long.
+ */
+private[validator] object AddressBits {
+
+  def isIpv6(address: UniqueIpResource): Boolean = address.isInstanceOf[Ipv6Address]
+
+  def high(address: UniqueIpResource): Long = address match {
+    case ipv4: Ipv4Address => ipv4.longValue << 32
+    case ipv6: Ipv6Address => ipv6.getValue.shiftRight(64).longValue
+  }
+
+  def low(address: UniqueIpResource): Long = address match {
+    case _: Ipv4Address => 0L
+    case ipv6: Ipv6Address => ipv6.getValue.longValue
+  }
+
+  /**
+   * The number of leading bits shared by the start and end of the interval, which is the prefix length for intervals
+   * that are prefixes.
+   */
+  def prefixLength(interval: NumberResourceInterval): Int = {
+    val high = this.high(interval.start) ^ this.high(interval.end)
+    val low = this.low(interval.start) ^ this.low(interval.end)
+    val length = if (high != 0) java.lang.Long.numberOfLeadingZeros(high) else 64 + java.lang.Long.numberOfLeadingZeros(low)
+    if (isIpv6(interval.start)) length else length min 32
+  }
+
+  /**
+   * The interval of the prefix that starts at the given address bits.
+   */
+  def interval(high: Long, low: Long, prefixLength: Int, ipv6: Boolean): NumberResourceInterval = {
+    if (ipv6) {
+      val highHostBits = hostMask(64 - prefixLength)
+      val lowHostBits = hostMask(128 - prefixLength)
+      NumberResourceInterval(new Ipv6Address(unsigned(high, low)), new Ipv6Address(unsigned(high | highHostBits, low | lowHostBits)))
+    } else {
+      val start = high >>> 32
+      NumberResourceInterval(new Ipv4Address(start), new Ipv4Address(start | hostMask(32 - prefixLength)))
+    }
+  }
+
+  /**
+   * @return a mask of the given number of least significant bits.
+   */
+  def hostMask(bits: Int): Long =
+    if (bits <= 0) 0L
+    else if (bits >= 64) -1L
+    else -1L >>> (64 - bits)
+
+  def bit(high: Long, low: Long, index: Int): Int =
+    if (index < 64) ((high >>> (63 - index)) & 1).toInt
+    else ((low >>> (127 - index)) & 1).toInt
+
+  /**
+   * @return true if the 128-bit unsigned value of the first pair is less than or equal to that of the second pair.
+   */
+  def lessOrEqual(high1: Long, low1: Long, high2: Long, low2: Long): Boolean =
+    if (high1 != high2) (high1 ^ Long.MinValue) < (high2 ^ Long.MinValue)
+    else (low1 ^ Long.MinValue) <= (low2 ^ Long.MinValue)
+
+  private def unsigned(high: Long, low: Long): BigInteger = {
+    val bytes = java.nio.ByteBuffer.allocate(16).putLong(high).putLong(low).array
+    new BigInteger(1, bytes)
+  }
+}
@@ -35,7 +35,6 @@ import net.ripe.rpki.validator.models.{RouteValidity, RtrPrefix}
 import net.ripe.ipresource.Asn
 import net.ripe.ipresource.IpRange
 import grizzled.slf4j.Logging
-import net.ripe.rpki.validator.models.RouteValidity._
 
 case class BgpAnnouncement private (asn: Asn, interval: NumberResourceInterval) {
   def prefix = interval.start.upTo(interval.end).asInstanceOf[IpRange]
@@ -56,57 +55,91 @@ case class BgpValidatedAnnouncement(announced: BgpAnnouncement, valids: Seq[RtrP
     else RouteValidity.Unknown
   }
 }
+object BgpValidatedAnnouncement {
+  /**
+   * Classifies the VRPs covering an announcement with the given prefix length.
+   */
+  def fromCovering(announced: BgpAnnouncement, prefixLength: Int, covering: Seq[RtrPrefix]): BgpValidatedAnnouncement = {
+    val (sameAsn, otherAsn) = covering.partition(_.asn == announced.asn)
+    val (valids, invalidsLength) = sameAsn.partition(_.effectiveMaxPrefixLength >= prefixLength)
+    BgpValidatedAnnouncement(announced, valids, otherAsn, invalidsLength)
+  }
+}
 
 object BgpAnnouncementValidator {
   val VISIBILITY_THRESHOLD = 5
 
   def validate(announcement: BgpAnnouncement, prefixes: Seq[RtrPrefix]): BgpValidatedAnnouncement = {
-    validate(announcement, NumberResourceIntervalTree(prefixes: _*))
-  }
-
-  def validate(announcement: BgpAnnouncement, prefixTree: NumberResourceIntervalTree[RtrPrefix]): BgpValidatedAnnouncement = {
-    val matchingPrefixes = prefixTree.findExactAndAllLessSpecific(announcement.interval)
-    val groupedByValidity = matchingPrefixes.groupBy {
-      case prefix if hasInvalidAsn(prefix, announcement) => InvalidAsn
-      case prefix if hasInvalidPrefixLength(prefix, announcement) => InvalidLength
-      case _ => Valid
-    }
-    BgpValidatedAnnouncement(announcement,
-      groupedByValidity.getOrElse(Valid, Seq.empty),
-      groupedByValidity.getOrElse(InvalidAsn, Seq.empty),
-      groupedByValidity.getOrElse(InvalidLength, Seq.empty))
+    validate(announcement, RtrPrefixTrie(prefixes))
   }
 
-  private def hasInvalidAsn(prefix: RtrPrefix, announced: BgpAnnouncement): Boolean = {
-    prefix.asn != announced.asn
+  def validate(announcement: BgpAnnouncement, prefixTrie: RtrPrefixTrie): BgpValidatedAnnouncement = {
+    prefixTrie.validate(announcement)
   }
 
-  private def hasInvalidPrefixLength(prefix: RtrPrefix, announced: BgpAnnouncement): Boolean = {
-    prefix.maxPrefixLength.getOrElse(prefix.prefix.getPrefixLength) < announced.prefix.getPrefixLength
+  /**
+   * @param revalidatedCount the number of announcements validated by the update that produced this state
+   */
+  private case class ValidationState(prefixes: Set[RtrPrefix], prefixTrie: RtrPrefixTrie, validatedAnnouncements: ValidatedAnnouncements, revalidatedCount: Int)
+  private object ValidationState {
+    val empty = ValidationState(Set.empty, RtrPrefixTrie.empty, ValidatedAnnouncements.empty, 0)
   }
 }
 class BgpAnnouncementValidator(implicit actorSystem: akka.actor.ActorSystem) extends Logging {
   import actorSystem.dispatcher
   import scala.concurrent.duration._
+  import BgpAnnouncementValidator._
+
+  private val _state = akka.agent.Agent(ValidationState.empty)
 
-  private val _validatedAnnouncements = akka.agent.Agent(IndexedSeq.empty[BgpValidatedAnnouncement])
+  def validatedAnnouncements: IndexedSeq[BgpValidatedAnnouncement] = _state.await(30.seconds).validatedAnnouncements
 
-  def validatedAnnouncements: IndexedSeq[BgpValidatedAnnouncement] = _validatedAnnouncements.await(30.seconds)
+  private[preview] def lastRevalidatedCount: Int = _state.await(30.seconds).revalidatedCount
 
-  def startUpdate(announcements: Seq[BgpAnnouncement], prefixes: Seq[RtrPrefix]) {
-    _validatedAnnouncements.sendOff {
-      _ => validate(announcements, prefixes)
+  def startUpdate(announcements: Seq[BgpAnnouncement], prefixes: Iterable[RtrPrefix]) {
+    _state.sendOff {
+      previous => validate(previous, BgpAnnouncements(announcements), prefixes.toSet)
     }
   }
 
-  private def validate(announcements: Seq[BgpAnnouncement], prefixes: Seq[RtrPrefix]): IndexedSeq[BgpValidatedAnnouncement] = {
-    info("Started validating " + announcements.size + " BGP announcements with " + prefixes.size + " RTR prefixes.")
-    val prefixTree = NumberResourceIntervalTree(prefixes: _*)
+  /**
+   * Only revalidates announcements that were not validated before or that are covered by an added or removed VRP. All
+   * other announcements keep their previous result, which is still correct because none of their covering VRPs changed.
+   */
+  private def validate(previous: ValidationState, announcements: BgpAnnouncements, prefixes: Set[RtrPrefix]): ValidationState = {
+    val added = prefixes -- previous.prefixes
+    val removed = previous.prefixes -- prefixes
+    val prefixTrie = if (added.isEmpty && removed.isEmpty) previous.prefixTrie else RtrPrefixTrie(prefixes)
 
-    val result = announcements.par.map(BgpAnnouncementValidator.validate(_, prefixTree)).seq.toIndexedSeq
-
-    info("Completed validating " + result.size + " BGP announcements with " + prefixes.size + " RTR prefixes.")
+    val (result, revalidatedCount) = if (previous.validatedAnnouncements.isEmpty || added.size + removed.size > prefixes.size / 2) {
+      info("Started validating " + announcements.size + " BGP announcements with " + prefixes.size + " RTR prefixes.")
+      val validated = ValidatedAnnouncements.validate(announcements, prefixTrie)
+      info("Completed validating " + validated.size + " BGP announcements with " + prefixes.size + " RTR prefixes.")
+      (validated, validated.size)
+    } else {
+      info("Started revalidating " + announcements.size + " BGP announcements for " + added.size + " added and " + removed.size + " removed RTR prefixes.")
+      val changedPrefixes = RtrPrefixTrie(added ++ removed)
+      val previousResults = previous.validatedAnnouncements
+      val previousAnnouncements = previousResults.announcements
+      val revalidated = new java.util.concurrent.atomic.AtomicInteger
+      val validated = previousResults.revalidate(announcements, prefixTrie, { i =>
+        val asn = announcements.asnValueAt(i)
+        val high = announcements.highAt(i)
+        val low = announcements.lowAt(i)
+        val length = announcements.prefixLengthAt(i)
+        val ipv6 = announcements.isIpv6At(i)
+        val previousIndex = if (announcements eq previousAnnouncements) i else previousAnnouncements.indexOf(asn, high, low, length, ipv6)
+        if (previousIndex >= 0 && changedPrefixes.validity(asn, high, low, length, ipv6) == RouteValidity.Unknown) {
+          previousIndex
+        } else {
+          revalidated.incrementAndGet()
+          -1
+        }
+      })
+      info("Completed revalidating " + revalidated.get + " of " + validated.size + " BGP announcements with " + prefixes.size + " RTR prefixes.")
+      (validated, revalidated.get)
+    }
 
-    result
+    ValidationState(prefixes, prefixTrie, result, revalidatedCount)
   }
 }
@@ -0,0 +1,192 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import java.util.Arrays
+import net.ripe.ipresource.Asn
+
+/**
+ * BGP announcements stored in parallel primitive arrays, about 25 bytes per announcement. Addresses are kept as a pair
+ * of longs with IPv4 addresses left aligned in the high long, like in `RtrPrefixTrie`. `BgpAnnouncement` instances are
+ * only created when an element is accessed.
+ */
+class BgpAnnouncements private (asns: Array[Int], highs: Array[Long], lows: Array[Long], prefixLengths: Array[Byte], ipv6: Array[Boolean])
+  extends IndexedSeq[BgpAnnouncement] {
+  import BgpAnnouncements._
+
+  override def length = asns.length
+
+  override def apply(index: Int): BgpAnnouncement =
+    BgpAnnouncement(asnAt(index), AddressBits.interval(highs(index), lows(index), prefixLengthAt(index), ipv6(index)))
+
+  def asnAt(index: Int): Asn = new Asn(asnValueAt(index))
+
+  def asnValueAt(index: Int): Long = asns(index) & MaximumAsn
+
+  def highAt(index: Int): Long = highs(index)
+
+  def lowAt(index: Int): Long = lows(index)
+
+  def prefixLengthAt(index: Int): Int = prefixLengths(index) & 0xff
+
+  def isIpv6At(index: Int): Boolean = ipv6(index)
+
+  /**
+   * Hash table from announcement to index, only built when an announcement is first looked up.
+   */
+  private lazy val table = {
+    val table = new Array[Int](tableSize(length))
+    for (i <- 0 until length) {
+      var slot = hash(asnValueAt(i), highs(i), lows(i), prefixLengthAt(i)) & (table.length - 1)
+      while (table(slot) != 0) slot = (slot + 1) & (table.length - 1)
+      table(slot) = i + 1
+    }
+    table
+  }
+
+  /**
+   * @return the index of the announcement, or -1 if it is not present.
+   */
+  def indexOf(asn: Long, high: Long, low: Long, prefixLength: Int, isIpv6: Boolean): Int = {
+    val table = this.table
+    var slot = hash(asn, high, low, prefixLength) & (table.length - 1)
+    while (table(slot) != 0) {
+      val i = table(slot) - 1
+      if (asnValueAt(i) == asn && highs(i) == high && lows(i) == low && prefixLengthAt(i) == prefixLength && ipv6(i) == isIpv6)
+        return i
+      slot = (slot + 1) & (table.length - 1)
+    }
+    -1
+  }
+}
+
+object BgpAnnouncements {
+  val MaximumAsn = 0xffffffffL
+
+  val empty: BgpAnnouncements = new Builder().result()
+
+  def apply(announcements: Iterable[BgpAnnouncement]): BgpAnnouncements = announcements match {
+    case compact: BgpAnnouncements => compact
+    case _ =>
+      val builder = new Builder
+      for (announcement <- announcements) {
+        val start = announcement.interval.start
+        builder.add(announcement.asn.longValue, AddressBits.high(start), AddressBits.low(start), AddressBits.prefixLength(announcement.interval), AddressBits.isIpv6(start))
+      }
+      builder.result()
+  }
+
+  def concat(parts: Seq[BgpAnnouncements]): BgpAnnouncements = parts match {
+    case Seq(single) => single
+    case _ =>
+      val builder = new Builder
+      for (part <- parts; i <- 0 until part.length) {
+        builder.add(part.asnValueAt(i), part.highAt(i), part.lowAt(i), part.prefixLengthAt(i), part.isIpv6At(i))
+      }
+      builder.result()
+  }
+
+  /**
+   * Collects announcements, ignoring announcements that were already added.
+   */
+  class Builder {
+    private[this] var count = 0
+    private[this] var asns = new Array[Int](1024)
+    private[this] var highs = new Array[Long](1024)
+    private[this] var lows = new Array[Long](1024)
+    private[this] var prefixLengths = new Array[Byte](1024)
+    private[this] var ipv6 = new Array[Boolean](1024)
+
+    /**
+     * Open addressing hash table of announcement index + 1, where 0 marks an empty slot.
+     */
+    private[this] var table = new Array[Int](tableSize(1024))
+
+    def size = count
+
+    /**
+     * @return false if the announcement was already added.
+     */
+    def add(asn: Long, high: Long, low: Long, prefixLength: Int, isIpv6: Boolean): Boolean = {
+      require(asn >= 0 && asn <= MaximumAsn, "ASN out of range: " + asn)
+      var slot = hash(asn, high, low, prefixLength) & (table.length - 1)
+      while (table(slot) != 0) {
+        val i = table(slot) - 1
+        if (asns(i) == asn.toInt && highs(i) == high && lows(i) == low && prefixLengths(i) == prefixLength.toByte && ipv6(i) == isIpv6)
+          return false
+        slot = (slot + 1) & (table.length - 1)
+      }
+
+      if (count == asns.length) {
+        asns = Arrays.copyOf(asns, count * 2)
+        highs = Arrays.copyOf(highs, count * 2)
+        lows = Arrays.copyOf(lows, count * 2)
+        prefixLengths = Arrays.copyOf(prefixLengths, count * 2)
+        ipv6 = Arrays.copyOf(ipv6, count * 2)
+      }
+      asns(count) = asn.toInt
+      highs(count) = high
+      lows(count) = low
+      prefixLengths(count) = prefixLength.toByte
+      ipv6(count) = isIpv6
+      count += 1
+      table(slot) = count
+
+      if (tableSize(count) > table.length) rehash()
+      true
+    }
+
+    def result(): BgpAnnouncements = new BgpAnnouncements(
+      Arrays.copyOf(asns, count), Arrays.copyOf(highs, count), Arrays.copyOf(lows, count), Arrays.copyOf(prefixLengths, count), Arrays.copyOf(ipv6, count))
+
+    private def rehash() {
+      table = new Array[Int](table.length * 2)
+      for (i <- 0 until count) {
+        var slot = hash(asns(i) & MaximumAsn, highs(i), lows(i), prefixLengths(i) & 0xff) & (table.length - 1)
+        while (table(slot) != 0) slot = (slot + 1) & (table.length - 1)
+        table(slot) = i + 1
+      }
+    }
+  }
+
+  /**
+   * A power of two that keeps the load factor of the hash table at or below one half.
+   */
+  private def tableSize(count: Int) = Integer.highestOneBit(count * 2 + 1) * 2
+
+  private def hash(asn: Long, high: Long, low: Long, prefixLength: Int): Int = {
+    var h = asn.toInt
+    h = 31 * h + (high ^ (high >>> 32)).toInt
+    h = 31 * h + (low ^ (low >>> 32)).toInt
+    h = 31 * h + prefixLength
+    h ^ (h >>> 16)
+  }
+}
@@ -31,63 +31,255 @@ package net.ripe.rpki.validator.bgp.preview
 
 import net.ripe.ipresource.Asn
 import net.ripe.ipresource.IpRange
-import java.io.BufferedReader
 import java.io.InputStream
-import java.io.InputStreamReader
 import grizzled.slf4j.Logging
 import org.joda.time.DateTime
 
 case class BgpRisEntry(origin: Asn, prefix: IpRange, visibility: Int)
-case class BgpRisDump(url: String, lastModified: Option[DateTime] = None, entries: Seq[BgpRisEntry] = Nil) {
-  def announcedRoutes: Seq[BgpAnnouncement] = {
-    (for {
-      entry <- entries
-      if entry.visibility >= BgpAnnouncementValidator.VISIBILITY_THRESHOLD
-    } yield {
-      BgpAnnouncement(entry.origin, entry.prefix)
-    }).distinct
-  }
-}
+case class BgpRisDump(url: String, lastModified: Option[DateTime] = None, announcedRoutes: BgpAnnouncements = BgpAnnouncements.empty)
 
 object BgpRisDump extends Logging {
 
-  def parse(is: InputStream): Either[Exception, IndexedSeq[BgpRisEntry]] = {
-    val identityMap = new ObjectIdentityMap
-    val reader = new BufferedReader(new InputStreamReader(is))
+  /**
+   * Parses the distinct announcements that are seen by at least `BgpAnnouncementValidator.VISIBILITY_THRESHOLD` peers.
+   * Lines are parsed directly from the bytes of the stream, so only the resulting announcements are kept in memory.
+   */
+  def parse(is: InputStream): Either[Exception, BgpAnnouncements] = {
+    val parser = new LineParser(BgpAnnouncementValidator.VISIBILITY_THRESHOLD)
+    val announcements = new BgpAnnouncements.Builder
     try {
-      Right(Iterator.continually(reader.readLine()).takeWhile(_ != null).flatMap(parseLine).map(makeResourcesUnique(identityMap, _)).toIndexedSeq)
+      foreachLine(is) { (line, start, end) =>
+        if (parser.parse(line, start, end))
+          announcements.add(parser.asn, parser.high, parser.low, parser.prefixLength, parser.ipv6)
+      }
+      Right(announcements.result())
     } catch {
       case e: Exception =>
         Left(e)
     }
   }
 
-  private def makeResourcesUnique(identityMap: ObjectIdentityMap, entry: BgpRisEntry) = {
-    import identityMap._
-    val asn = makeUnique(entry.origin)
-    val prefix = (makeUnique(entry.prefix.getStart) upTo makeUnique(entry.prefix.getEnd)).asInstanceOf[IpRange]
-    entry.copy(origin = asn, prefix = prefix)
+  private[preview] def parseLine(content: String): Option[BgpRisEntry] = {
+    val parser = new LineParser(0)
+    val line = content.getBytes("US-ASCII")
+    if (parser.parse(line, 0, line.length)) {
+      val interval = AddressBits.interval(parser.high, parser.low, parser.prefixLength, parser.ipv6)
+      Some(BgpRisEntry(new Asn(parser.asn), interval.start.upTo(interval.end).asInstanceOf[IpRange], parser.visibility))
+    } else {
+      None
+    }
   }
 
-  private val BgpEntryRegex = """^\s*([0-9]+)\s+([0-9a-fA-F.:/]+)\s+([0-9]+)\s*$""".r
-  private[preview] def parseLine(content: String): Option[BgpRisEntry] = {
-    content match {
-      case BgpEntryRegex(asn, ipprefix, visibility) =>
-        try {
-          Some(new BgpRisEntry(origin = Asn.parse(asn), prefix = IpRange.parse(ipprefix), visibility = Integer.parseInt(visibility)))
-        } catch {
-          case e: Throwable =>
-            error("Skipping unparseble line: " + content)
-            debug("Detailed error: ", e)
-            None
+  /**
+   * Calls `f` with the buffer, start and end offset of every line, excluding the line terminator. The buffer is reused
+   * between lines.
+   */
+  private def foreachLine(is: InputStream)(f: (Array[Byte], Int, Int) => Unit) {
+    var buffer = new Array[Byte](64 * 1024)
+    var start = 0
+    var scanned = 0
+    var end = 0
+    var eof = false
+    while (start < end || !eof) {
+      while (scanned < end && buffer(scanned) != '\n') scanned += 1
+      if (scanned < end) {
+        f(buffer, start, scanned)
+        scanned += 1
+        start = scanned
+      } else if (eof) {
+        f(buffer, start, end)
+        start = end
+      } else {
+        if (start > 0) {
+          System.arraycopy(buffer, start, buffer, 0, end - start)
+          end -= start
+          scanned -= start
+          start = 0
         }
-      case _ => None
+        if (end == buffer.length) buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2)
+        val read = is.read(buffer, end, buffer.length - end)
+        if (read < 0) eof = true else end += read
+      }
     }
   }
 
-  private[this] class ObjectIdentityMap {
-    private val identityMap = collection.mutable.Map.empty[AnyRef, AnyRef]
+  /**
+   * Parses lines of the form "origin-asn whitespace prefix whitespace visibility" without regular expressions or
+   * intermediate strings. The fields of the last parsed line are available until the next line is parsed.
+   */
+  private class LineParser(minimumVisibility: Int) {
+    var asn = 0L
+    var visibility = 0
+    var high = 0L
+    var low = 0L
+    var prefixLength = 0
+    var ipv6 = false
+
+    private[this] val groups = new Array[Int](8)
+
+    /**
+     * @return true if the line is a well-formed announcement with at least the minimum visibility.
+     */
+    def parse(line: Array[Byte], start: Int, end: Int): Boolean = {
+      val asnStart = skipWhitespace(line, start, end)
+      val asnEnd = skipDigits(line, asnStart, end)
+      val prefixStart = skipWhitespace(line, asnEnd, end)
+      val prefixEnd = skipNonWhitespace(line, prefixStart, end)
+      val visibilityStart = skipWhitespace(line, prefixEnd, end)
+      val visibilityEnd = skipDigits(line, visibilityStart, end)
+
+      val wellFormed = asnEnd > asnStart && prefixStart > asnEnd && prefixEnd > prefixStart &&
+        visibilityStart > prefixEnd && visibilityEnd > visibilityStart && skipWhitespace(line, visibilityEnd, end) == end
+      if (!wellFormed) return false
 
-    def makeUnique[A <: AnyRef](a: A): A = identityMap.getOrElseUpdate(a, a).asInstanceOf[A]
+      asn = parseDecimal(line, asnStart, asnEnd, 10)
+      visibility = parseDecimal(line, visibilityStart, visibilityEnd, 9).toInt
+      if (asn < 0 || asn > BgpAnnouncements.MaximumAsn || visibility < 0 || !parsePrefix(line, prefixStart, prefixEnd)) {
+        error("Skipping unparseble line: " + new String(line, start, end - start, "US-ASCII"))
+        false
+      } else {
+        visibility >= minimumVisibility
+      }
+    }
+
+    private def parsePrefix(line: Array[Byte], start: Int, end: Int): Boolean = {
+      var slash = start
+      while (slash < end && line(slash) != '/') slash += 1
+      if (slash == end) return false
+
+      val length = parseDecimal(line, slash + 1, end, 3)
+      ipv6 = indexOf(line, start, slash, ':') >= 0
+      if (ipv6) {
+        if (length < 0 || length > 128 || !parseIpv6(line, start, slash)) return false
+      } else {
+        val address = parseIpv4(line, start, slash)
+        if (length < 0 || length > 32 || address < 0) return false
+        high = address << 32
+        low = 0L
+      }
+      prefixLength = length.toInt
+      high &= ~AddressBits.hostMask(64 - prefixLength)
+      low &= ~AddressBits.hostMask(128 - prefixLength)
+      true
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or -1 if it is malformed.
+     */
+    private def parseIpv4(line: Array[Byte], start: Int, end: Int): Long = {
+      var address = 0L
+      var octets = 0
+      var i = start
+      while (i <= end) {
+        var octetEnd = i
+        while (octetEnd < end && line(octetEnd) != '.') octetEnd += 1
+        val octet = parseDecimal(line, i, octetEnd, 3)
+        if (octet < 0 || octet > 255 || octets == 4) return -1
+        address = (address << 8) | octet
+        octets += 1
+        i = octetEnd + 1
+      }
+      if (octets == 4) address else -1
+    }
+
+    /**
+     * Parses eight groups of hexadecimal digits, which may be shortened with a single "::" and may end in an
+     * embedded IPv4 address, into `high` and `low`.
+     */
+    private def parseIpv6(line: Array[Byte], start: Int, end: Int): Boolean = {
+      var count = 0
+      var gap = -1
+      var i = start
+      if (end - start >= 2 && line(start) == ':' && line(start + 1) == ':') {
+        gap = 0
+        i += 2
+      }
+      while (i < end) {
+        var groupEnd = i
+        while (groupEnd < end && hexDigit(line(groupEnd)) >= 0) groupEnd += 1
+        if (groupEnd < end && line(groupEnd) == '.') {
+          val address = parseIpv4(line, i, end)
+          if (address < 0 || count > 6) return false
+          groups(count) = (address >>> 16).toInt
+          groups(count + 1) = (address & 0xffff).toInt
+          count += 2
+          i = end
+        } else {
+          if (groupEnd == i || groupEnd - i > 4 || count == 8) return false
+          var group = 0
+          for (j <- i until groupEnd) group = (group << 4) | hexDigit(line(j))
+          groups(count) = group
+          count += 1
+          i = groupEnd
+          if (i < end) {
+            if (line(i) != ':' || i + 1 == end) return false
+            i += 1
+            if (line(i) == ':') {
+              if (gap >= 0) return false
+              gap = count
+              i += 1
+            }
+          }
+        }
+      }
+      if (gap < 0 && count != 8 || gap >= 0 && count > 7) return false
+
+      high = 0L
+      low = 0L
+      val zeros = if (gap < 0) 0 else 8 - count
+      for (g <- 0 until count) {
+        val position = if (gap >= 0 && g >= gap) g + zeros else g
+        if (position < 4) high |= groups(g).toLong << (16 * (3 - position))
+        else low |= groups(g).toLong << (16 * (7 - position))
+      }
+      true
+    }
+  }
+
+  private def isWhitespace(b: Byte) = b == ' ' || b == '\t' || b == '\r' || b == '\n'
+
+  private def skipWhitespace(line: Array[Byte], start: Int, end: Int) = {
+    var i = start
+    while (i < end && isWhitespace(line(i))) i += 1
+    i
+  }
+
+  private def skipNonWhitespace(line: Array[Byte], start: Int, end: Int) = {
+    var i = start
+    while (i < end && !isWhitespace(line(i))) i += 1
+    i
   }
+
+  private def skipDigits(line: Array[Byte], start: Int, end: Int) = {
+    var i = start
+    while (i < end && line(i) >= '0' && line(i) <= '9') i += 1
+    i
+  }
+
+  private def indexOf(line: Array[Byte], start: Int, end: Int, c: Char): Int = {
+    var i = start
+    while (i < end && line(i) != c) i += 1
+    if (i < end) i else -1
+  }
+
+  /**
+   * @return the value of the decimal digits, or -1 if there are no or more than `maxDigits` digits or any other
+   * characters.
+   */
+  private def parseDecimal(line: Array[Byte], start: Int, end: Int, maxDigits: Int): Long = {
+    if (start >= end || end - start > maxDigits) return -1
+    var value = 0L
+    for (i <- start until end) {
+      val b = line(i)
+      if (b < '0' || b > '9') return -1
+      value = value * 10 + (b - '0')
+    }
+    value
+  }
+
+  private def hexDigit(b: Byte): Int =
+    if (b >= '0' && b <= '9') b - '0'
+    else if (b >= 'a' && b <= 'f') b - 'a' + 10
+    else if (b >= 'A' && b <= 'F') b - 'A' + 10
+    else -1
 }
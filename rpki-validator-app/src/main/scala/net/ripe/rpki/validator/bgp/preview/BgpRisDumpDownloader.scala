@@ -85,10 +85,10 @@ class BgpRisDumpDownloader(httpClient: HttpClient) extends Logging {
                 case Left(exception) =>
                   error("Error parsing BGP entries from " + dump.url + ". " + exception.toString, exception)
                   dump
-                case Right(entries) =>
+                case Right(announcements) =>
                   val modified = lastModified(response)
-                  info("Retrieved " + entries.size + " entries from " + dump.url + ", last modified at " + modified.getOrElse("unknown"))
-                  dump.copy(lastModified = modified, entries = entries)
+                  info("Retrieved " + announcements.size + " announcements from " + dump.url + ", last modified at " + modified.getOrElse("unknown"))
+                  dump.copy(lastModified = modified, announcedRoutes = announcements)
               }
             } catch {
               case exception: Exception =>
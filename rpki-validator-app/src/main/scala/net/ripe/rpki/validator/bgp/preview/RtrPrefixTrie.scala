@@ -0,0 +1,186 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import lib.NumberResources._
+import models.{RouteValidity, RtrPrefix}
+import models.RouteValidity._
+import net.ripe.ipresource.Asn
+
+/**
+ * Binary prefix trie of VRPs for route origin validation. Nodes and VRP attributes are kept in primitive arrays and
+ * addresses are compared as a pair of longs (IPv4 addresses are left aligned in the high long), so a lookup walks at
+ * most 33 or 129 nodes without boxing or intermediate collections.
+ *
+ * VRPs of a node are stored in the order they were given, so the covering VRPs of an announcement are visited from
+ * least to most specific, the same order as `NumberResourceIntervalTree.findExactAndAllLessSpecific`.
+ */
+class RtrPrefixTrie private (children: Array[Int], valueOffsets: Array[Int], asns: Array[Long], maxLengths: Array[Int], vrps: Array[RtrPrefix]) {
+  import RtrPrefixTrie._
+
+  def size = vrps.length
+
+  def isEmpty = vrps.isEmpty
+
+  /**
+   * The VRP with the given index, as passed to `foreachCovering`.
+   */
+  def vrp(index: Int): RtrPrefix = vrps(index)
+
+  /**
+   * @return the index in the other trie of every VRP of this trie, or -1 for VRPs the other trie does not contain.
+   */
+  def indexesIn(other: RtrPrefixTrie): Array[Int] = {
+    if (other eq this) Array.range(0, size)
+    else {
+      val otherIndexes: Map[RtrPrefix, Int] = (0 until other.size).map(i => other.vrp(i) -> i)(collection.breakOut)
+      vrps.map(vrp => otherIndexes.getOrElse(vrp, -1))
+    }
+  }
+
+  def validity(announcement: BgpAnnouncement): RouteValidity = validity(announcement.asn, announcement.interval)
+
+  def validity(asn: Asn, interval: NumberResourceInterval): RouteValidity =
+    validity(asn.longValue, AddressBits.high(interval.start), AddressBits.low(interval.start), AddressBits.prefixLength(interval), AddressBits.isIpv6(interval.start))
+
+  def validity(asn: Long, high: Long, low: Long, length: Int, ipv6: Boolean): RouteValidity = {
+    var sameAsn = false
+    var otherAsn = false
+    var node = if (ipv6) Ipv6Root else Ipv4Root
+    var depth = 0
+    while (node != NoNode) {
+      var i = valueOffsets(node)
+      val end = valueOffsets(node + 1)
+      while (i < end) {
+        if (asns(i) != asn) otherAsn = true
+        else if (maxLengths(i) >= length) return Valid
+        else sameAsn = true
+        i += 1
+      }
+      node = if (depth < length) children(2 * node + AddressBits.bit(high, low, depth)) else NoNode
+      depth += 1
+    }
+
+    if (sameAsn) InvalidLength
+    else if (otherAsn) InvalidAsn
+    else Unknown
+  }
+
+  /**
+   * Validates the announcement and keeps the VRPs that determined the outcome. Announcements not covered by any VRP
+   * are the common case and do not allocate anything besides the result.
+   */
+  def validate(announcement: BgpAnnouncement): BgpValidatedAnnouncement = {
+    if (validity(announcement) == Unknown) return BgpValidatedAnnouncement(announcement)
+
+    val interval = announcement.interval
+    val length = AddressBits.prefixLength(interval)
+    val covering = IndexedSeq.newBuilder[RtrPrefix]
+    foreachCovering(AddressBits.high(interval.start), AddressBits.low(interval.start), length, AddressBits.isIpv6(interval.start)) { i =>
+      covering += vrps(i)
+    }
+    BgpValidatedAnnouncement(announcement, length, covering.result())
+  }
+
+  /**
+   * Calls `f` with the index of every VRP covering the prefix, from least to most specific.
+   */
+  def foreachCovering(high: Long, low: Long, length: Int, ipv6: Boolean)(f: Int => Unit) {
+    var node = if (ipv6) Ipv6Root else Ipv4Root
+    var depth = 0
+    while (node != NoNode) {
+      var i = valueOffsets(node)
+      while (i < valueOffsets(node + 1)) {
+        f(i)
+        i += 1
+      }
+      node = if (depth < length) children(2 * node + AddressBits.bit(high, low, depth)) else NoNode
+      depth += 1
+    }
+  }
+}
+
+object RtrPrefixTrie {
+  private val NoNode = 0
+  private val Ipv4Root = 1
+  private val Ipv6Root = 2
+
+  def apply(prefixes: Iterable[RtrPrefix]): RtrPrefixTrie = {
+    val vrps = prefixes.toArray
+    var children = new Array[Int](64)
+    var nodeCount = Ipv6Root + 1
+    val nodeOfVrp = new Array[Int](vrps.length)
+    val lengthOfVrp = new Array[Int](vrps.length)
+
+    for (v <- 0 until vrps.length) {
+      val interval = vrps(v).interval
+      val high = AddressBits.high(interval.start)
+      val low = AddressBits.low(interval.start)
+      val length = AddressBits.prefixLength(interval)
+
+      var node = if (AddressBits.isIpv6(interval.start)) Ipv6Root else Ipv4Root
+      var depth = 0
+      while (depth < length) {
+        val slot = 2 * node + AddressBits.bit(high, low, depth)
+        if (children(slot) == NoNode) {
+          if (2 * nodeCount + 2 > children.length) children = java.util.Arrays.copyOf(children, children.length * 2)
+          children(slot) = nodeCount
+          nodeCount += 1
+        }
+        node = children(slot)
+        depth += 1
+      }
+      nodeOfVrp(v) = node
+      lengthOfVrp(v) = length
+    }
+
+    // Group the VRPs by node, keeping their relative order, so the VRPs of node n are at valueOffsets(n) until
+    // valueOffsets(n + 1).
+    val valueOffsets = new Array[Int](nodeCount + 1)
+    nodeOfVrp.foreach(node => valueOffsets(node + 1) += 1)
+    for (n <- 1 to nodeCount) valueOffsets(n) += valueOffsets(n - 1)
+    val next = java.util.Arrays.copyOf(valueOffsets, nodeCount)
+    val sorted = new Array[RtrPrefix](vrps.length)
+    val asns = new Array[Long](vrps.length)
+    val maxLengths = new Array[Int](vrps.length)
+    for (v <- 0 until vrps.length) {
+      val i = next(nodeOfVrp(v))
+      next(nodeOfVrp(v)) += 1
+      sorted(i) = vrps(v)
+      asns(i) = vrps(v).asn.longValue
+      maxLengths(i) = vrps(v).maxPrefixLength.getOrElse(lengthOfVrp(v))
+    }
+
+    new RtrPrefixTrie(java.util.Arrays.copyOf(children, 2 * nodeCount), valueOffsets, asns, maxLengths, sorted)
+  }
+
+  val empty: RtrPrefixTrie = apply(Seq.empty)
+}
@@ -0,0 +1,164 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import java.util.Arrays
+import models.{RouteValidity, RtrPrefix}
+import models.RouteValidity._
+import net.ripe.ipresource.{Asn, IpRange}
+
+/**
+ * Validation results of BGP announcements stored in columns: the announcements themselves in `BgpAnnouncements`, a
+ * validity code per announcement and, for announcements covered by VRPs, the indexes of the covering VRPs in the
+ * prefix trie used for validation. `BgpValidatedAnnouncement` instances are only created when an element is accessed.
+ */
+class ValidatedAnnouncements private (val announcements: BgpAnnouncements, private val validities: Array[Byte], private val vrpOffsets: Array[Int], private val vrpIndexes: Array[Int], private val prefixTrie: RtrPrefixTrie)
+  extends IndexedSeq[BgpValidatedAnnouncement] {
+
+  override def length = announcements.length
+
+  override def apply(index: Int): BgpValidatedAnnouncement = {
+    if (validities(index) == Unknown.id) BgpValidatedAnnouncement(announcements(index))
+    else BgpValidatedAnnouncement.fromCovering(announcements(index), announcements.prefixLengthAt(index), coveringVrps(index))
+  }
+
+  def validityAt(index: Int): RouteValidity = RouteValidity(validities(index))
+
+  def coveringVrps(index: Int): IndexedSeq[RtrPrefix] =
+    (vrpOffsets(index) until vrpOffsets(index + 1)).map(i => prefixTrie.vrp(vrpIndexes(i)))
+
+  /**
+   * Validates the announcements against the VRPs of the prefix trie, reusing the results of this validation.
+   *
+   * @param previousIndex the index in this validation of the announcement at an index if none of its covering VRPs
+   *                      was added or removed since, or -1 if the announcement must be validated. Called concurrently.
+   */
+  def revalidate(announcements: BgpAnnouncements, prefixTrie: RtrPrefixTrie, previousIndex: Int => Int, chunkSize: Int = ValidatedAnnouncements.ChunkSize): ValidatedAnnouncements =
+    ValidatedAnnouncements.validate(announcements, prefixTrie, Some(this), previousIndex, chunkSize)
+
+  /**
+   * @return a predicate on the index of an announcement that is true if its prefix overlaps the range.
+   */
+  def overlapping(range: IpRange): Int => Boolean = {
+    val ipv6 = AddressBits.isIpv6(range.getStart)
+    val startHigh = AddressBits.high(range.getStart)
+    val startLow = AddressBits.low(range.getStart)
+    val endHigh = AddressBits.high(range.getEnd)
+    val endLow = AddressBits.low(range.getEnd)
+    index => announcements.isIpv6At(index) == ipv6 && {
+      val high = announcements.highAt(index)
+      val low = announcements.lowAt(index)
+      val length = announcements.prefixLengthAt(index)
+      AddressBits.lessOrEqual(high, low, endHigh, endLow) &&
+        AddressBits.lessOrEqual(startHigh, startLow, high | AddressBits.hostMask(64 - length), low | AddressBits.hostMask(128 - length))
+    }
+  }
+
+  /**
+   * @return a predicate on the index of an announcement that is true if it is originated by the ASN.
+   */
+  def originatedBy(asn: Asn): Int => Boolean = {
+    val value = asn.longValue
+    index => announcements.asnValueAt(index) == value
+  }
+}
+
+object ValidatedAnnouncements {
+
+  /**
+   * Number of consecutive announcements validated by one task. Chunks are validated in parallel, each into its own
+   * part of the validity and offset arrays and its own buffer of VRP indexes.
+   */
+  val ChunkSize = 16384
+
+  val empty: ValidatedAnnouncements = validate(BgpAnnouncements.empty, RtrPrefixTrie.empty)
+
+  /**
+   * Validates all announcements against the VRPs of the prefix trie.
+   */
+  def validate(announcements: BgpAnnouncements, prefixTrie: RtrPrefixTrie, chunkSize: Int = ChunkSize): ValidatedAnnouncements =
+    validate(announcements, prefixTrie, None, _ => -1, chunkSize)
+
+  /**
+   * Announcements with an index in the previous validation keep their validity and covering VRPs. The indexes of their
+   * VRPs are mapped from the previous trie to the new one, so the trie is only searched for the other announcements.
+   */
+  private def validate(announcements: BgpAnnouncements, prefixTrie: RtrPrefixTrie, previous: Option[ValidatedAnnouncements], previousIndex: Int => Int, chunkSize: Int): ValidatedAnnouncements = {
+    val previousVrpIndexes = previous.map(_.prefixTrie.indexesIn(prefixTrie))
+    val validities = new Array[Byte](announcements.length)
+    val vrpOffsets = new Array[Int](announcements.length + 1)
+
+    // Offsets are relative to the start of the chunk until the chunks are concatenated.
+    val chunks = (0 until announcements.length by chunkSize).par.map { start =>
+      val end = (start + chunkSize) min announcements.length
+      var vrpIndexes = new Array[Int](256)
+      var vrpCount = 0
+
+      def addVrp(vrp: Int) {
+        if (vrpCount == vrpIndexes.length) vrpIndexes = Arrays.copyOf(vrpIndexes, vrpCount * 2)
+        vrpIndexes(vrpCount) = vrp
+        vrpCount += 1
+      }
+
+      for (i <- start until end) {
+        val high = announcements.highAt(i)
+        val low = announcements.lowAt(i)
+        val length = announcements.prefixLengthAt(i)
+        val ipv6 = announcements.isIpv6At(i)
+
+        val p = previousIndex(i)
+        if (p >= 0) {
+          val before = previous.get
+          val indexesInTrie = previousVrpIndexes.get
+          validities(i) = before.validities(p)
+          for (j <- before.vrpOffsets(p) until before.vrpOffsets(p + 1)) addVrp(indexesInTrie(before.vrpIndexes(j)))
+        } else {
+          val validity = prefixTrie.validity(announcements.asnValueAt(i), high, low, length, ipv6)
+          validities(i) = validity.id.toByte
+          if (validity != Unknown) prefixTrie.foreachCovering(high, low, length, ipv6)(addVrp)
+        }
+        vrpOffsets(i + 1) = vrpCount
+      }
+
+      (start, end, Arrays.copyOf(vrpIndexes, vrpCount))
+    }.seq
+
+    val vrpIndexes = new Array[Int](chunks.map(_._3.length).sum)
+    var base = 0
+    for ((start, end, chunkVrpIndexes) <- chunks) {
+      System.arraycopy(chunkVrpIndexes, 0, vrpIndexes, base, chunkVrpIndexes.length)
+      for (i <- start + 1 to end) vrpOffsets(i) += base
+      base += chunkVrpIndexes.length
+    }
+
+    new ValidatedAnnouncements(announcements, validities, vrpOffsets, vrpIndexes, prefixTrie)
+  }
+}
@@ -121,8 +121,17 @@ class Main(options: Options) { main =>
   val feedbackMetrics = new FeedbackMetrics(httpClient, options.feedbackUri + "/" + ReleaseInfo.version)
   feedbackMetrics.enabled = data.userPreferences.isFeedbackEnabled
 
+  val snapshotFile = new File(dataFile.getParentFile, "validated-state.snapshot")
+
   val memoryImage = Ref(
-    MemoryImage(data.filters, data.whitelist, new TrustAnchors(trustAnchors), roas))
+    restoreSnapshot(MemoryImage(data.filters, data.whitelist, new TrustAnchors(trustAnchors), roas)))
+
+  @volatile private var snapshotVersion = memoryImage.single.get.version
+
+  /**
+   * Validated publication points per trust anchor, remembered between validation runs.
+   */
+  private val validatedPublicationPoints = scala.collection.concurrent.TrieMap.empty[TrustAnchorLocator, ValidatedPublicationPoints]
 
   def updateMemoryImage(f: MemoryImage => MemoryImage)(implicit transaction: MaybeTxn) {
     atomic { implicit transaction =>
@@ -131,7 +140,7 @@ class Main(options: Options) { main =>
       memoryImage.transform(f)
 
       if (oldVersion != memoryImage().version) {
-        bgpAnnouncementValidator.startUpdate(main.bgpRisDumps().flatMap(_.announcedRoutes), memoryImage().getDistinctRtrPrefixes.toSeq)
+        bgpAnnouncementValidator.startUpdate(BgpAnnouncements.concat(main.bgpRisDumps().map(_.announcedRoutes)), memoryImage().getDistinctRtrPrefixes)
         rtrServer.notify(memoryImage().version)
       }
     }
@@ -140,8 +149,14 @@ class Main(options: Options) { main =>
   val rtrServer = runRtrServer()
   runWebServer()
 
-  actorSystem.scheduler.schedule(initialDelay = 0.seconds, interval = 10.seconds) { runValidator() }
+  val validationExecutor = new ValidationExecutor(options.validationThreads)
+  val objectCacheSizes = ObjectCacheSizes(options.publicationPointCacheMaxBytes, options.objectCacheMaxBytes)
+  val validationScheduler = new ValidationScheduler(actorSystem.scheduler, trustAnchorNames => runValidator(trustAnchorNames))
+  memoryImage.single.get.trustAnchors.all.foreach(validationScheduler.scheduleNextValidation)
+
   actorSystem.scheduler.schedule(initialDelay = 0.seconds, interval = 2.hours) { refreshRisDumps() }
+  actorSystem.scheduler.schedule(initialDelay = 5.minutes, interval = 5.minutes) { writeSnapshot() }
+  sys.addShutdownHook(writeSnapshot())
   actorSystem.scheduler.schedule(initialDelay = 0.seconds, interval = 24.hours) { networkMetrics() }
   actorSystem.scheduler.schedule(initialDelay = 5.minutes, interval = 1.hour) { feedbackMetrics.sendMetrics() }
 
@@ -151,37 +166,49 @@ class Main(options: Options) { main =>
     TrustAnchors.load(tals.asScala, "tmp/tals")
   }
 
+  private def restoreSnapshot(image: MemoryImage): MemoryImage = {
+    ValidatedStateSnapshot.read(snapshotFile, new DateTime) match {
+      case Some(snapshot) =>
+        logger.info("Restoring validated prefixes from snapshot written at " + snapshot.writtenAt)
+        snapshot.restore(image)
+      case None =>
+        image
+    }
+  }
+
+  /**
+   * Writes the validated prefixes when they changed since the last snapshot.
+   */
+  private def writeSnapshot() {
+    val image = memoryImage.single.get
+    if (image.version != snapshotVersion) {
+      try {
+        ValidatedStateSnapshot.write(ValidatedStateSnapshot(image, new DateTime), snapshotFile)
+        snapshotVersion = image.version
+      } catch {
+        case e: java.io.IOException =>
+          logger.warn("Error writing validated state snapshot: " + e.getMessage)
+      }
+    }
+  }
+
   private def refreshRisDumps() {
     Future.traverse(bgpRisDumps.single.get)(bgpRisDumpDownloader.download) foreach { dumps =>
       atomic { implicit transaction =>
         bgpRisDumps() = dumps
-        bgpAnnouncementValidator.startUpdate(dumps.flatMap(_.announcedRoutes), memoryImage().getDistinctRtrPrefixes.toSeq)
+        bgpAnnouncementValidator.startUpdate(BgpAnnouncements.concat(dumps.map(_.announcedRoutes)), memoryImage().getDistinctRtrPrefixes)
       }
     }
   }
 
-  private def runValidator() {
-    import lib.DateAndTime._
-
-    val now = new DateTime
-    val needUpdating = for {
-      ta <- memoryImage.single.get.trustAnchors.all if ta.status.isIdle
-      Idle(nextUpdate, _) = ta.status
-      if nextUpdate <= now
-    } yield ta.name
-
-    runValidator(needUpdating)
-  }
-
   private def runValidator(trustAnchorNames: Seq[String]) {
     val maxStaleDays = userPreferences.single.get.maxStaleDays
     val trustAnchors = memoryImage.single.get.trustAnchors.all
 
-    val taLocators = trustAnchorNames.flatMap { name => trustAnchors.find(_.name == name) }.map(_.locator)
-
-    for (trustAnchorLocator <- taLocators) {
-      Future {
-        val process = new TrustAnchorValidationProcess(trustAnchorLocator, maxStaleDays) with TrackValidationProcess with MeasureValidationProcess with MeasureRsyncExecution with ValidationProcessLogger with MeasureInconsistentRepositories {
+    for (trustAnchor <- trustAnchorNames.flatMap { name => trustAnchors.find(_.name == name) }) {
+      val trustAnchorLocator = trustAnchor.locator
+      validationExecutor.submit(trustAnchor.name) {
+        val process = new TrustAnchorValidationProcess(trustAnchorLocator, maxStaleDays, Some(validatedPublicationPoints.getOrElseUpdate(trustAnchorLocator, new ValidatedPublicationPoints)), objectCacheSizes) with TrackValidationProcess with MeasureValidationProcess with MeasureRsyncExecution with ValidationProcessLogger with MeasureInconsistentRepositories {
           override val memoryImage = main.memoryImage
         }
         try {
@@ -192,8 +219,9 @@ class Main(options: Options) { main =>
           }
         } finally {
           val now = DateTimeUtils.currentTimeMillis
-          feedbackMetrics.store(process.metrics ++ process.rsyncMetrics ++ process.inconsistencyMetrics ++ Metric.baseMetrics(now) ++ Metric.validatorMetrics(now, startedAt))
+          feedbackMetrics.store(process.metrics ++ process.rsyncMetrics ++ process.inconsistencyMetrics ++ TrustAnchorValidationProcess.SharedDecodedObjectCache.metrics(now) ++ validationExecutor.metrics(now) ++ Metric.baseMetrics(now) ++ Metric.validatorMetrics(now, startedAt))
           process.shutdown()
+          memoryImage.single.get.trustAnchors.all.find(_.locator == trustAnchorLocator).foreach(validationScheduler.scheduleNextValidation)
         }
       }
     }
@@ -272,7 +300,10 @@ class Main(options: Options) { main =>
       override protected def bgpRisDumps = main.bgpRisDumps.single.get
       override protected def validatedAnnouncements = bgpAnnouncementValidator.validatedAnnouncements
 
-      override protected def getRtrPrefixes = memoryImage.single.get.getDistinctRtrPrefixes
+      override protected def getVersionedRtrPrefixes = {
+        val image = memoryImage.single.get
+        (image.version, image.getDistinctRtrPrefixes)
+      }
 
       protected def sessionData = rtrServer.rtrSessions.allClientData
 
@@ -283,8 +314,11 @@ class Main(options: Options) { main =>
       override def userPreferences = main.userPreferences.single.get
       override def updateUserPreferences(userPreferences: UserPreferences) = updateAndPersist { implicit transaction => main.userPreferences.set(userPreferences) }
 
-      override protected def updateTrustAnchorState(locator: TrustAnchorLocator, enabled: Boolean) = updateAndPersist { implicit transaction =>
-        memoryImage.transform(_.updateTrustAnchorState(locator, enabled))
+      override protected def updateTrustAnchorState(locator: TrustAnchorLocator, enabled: Boolean) {
+        updateAndPersist { implicit transaction =>
+          memoryImage.transform(_.updateTrustAnchorState(locator, enabled))
+        }
+        if (enabled) trustAnchors.all.find(_.locator == locator).foreach(validationScheduler.scheduleNextValidation)
       }
     }
 
@@ -38,36 +38,71 @@ import java.net.URI
 
 case class MemoryImage(filters: Filters, whitelist: Whitelist, trustAnchors: TrustAnchors, validatedObjects: ValidatedObjects, version: Int = 0) {
 
-  def startProcessingTrustAnchor(locator: TrustAnchorLocator, description: String) = copy(trustAnchors = trustAnchors.startProcessing(locator, description))
+  /**
+   * Set by the update methods below on the images they create, so the prefixes are updated incrementally instead of
+   * being computed from scratch for every new image.
+   */
+  @volatile private var knownRtrPrefixes: Option[Set[RtrPrefix]] = None
+
+  private lazy val distinctRtrPrefixes: Set[RtrPrefix] = knownRtrPrefixes getOrElse {
+    Set.empty[RtrPrefix] ++ whitelist.entries ++ filters.filter(validatedObjects.rtrPrefixesByTrustAnchor.values.flatten)
+  }
+
+  def startProcessingTrustAnchor(locator: TrustAnchorLocator, description: String) =
+    withRtrPrefixes(copy(trustAnchors = trustAnchors.startProcessing(locator, description)), distinctRtrPrefixes)
 
   def finishedProcessingTrustAnchor(locator: TrustAnchorLocator, result: Validation[String, Map[URI, ValidatedObject]]) =
-    copy(trustAnchors = trustAnchors.finishedProcessing(locator, result))
+    withRtrPrefixes(copy(trustAnchors = trustAnchors.finishedProcessing(locator, result)), distinctRtrPrefixes)
 
   def updateValidatedObjects(locator: TrustAnchorLocator, newValidatedObjects: Seq[ValidatedObject]) = {
     trustAnchors.all.find(_.locator == locator) match {
       case Some(trustAnchor) if trustAnchor.enabled =>
-        copy(version = version + 1, validatedObjects = validatedObjects.update(locator, newValidatedObjects))
+        val updated = validatedObjects.update(locator, newValidatedObjects)
+        withRtrPrefixes(copy(version = version + 1, validatedObjects = updated), replaceRtrPrefixes(locator, updated))
       case _ =>
         this
     }
   }
 
-  def addWhitelistEntry(entry: RtrPrefix) = copy(version = version + 1, whitelist = whitelist.addEntry(entry))
+  def addWhitelistEntry(entry: RtrPrefix) =
+    withRtrPrefixes(copy(version = version + 1, whitelist = whitelist.addEntry(entry)), distinctRtrPrefixes + entry)
 
-  def removeWhitelistEntry(entry: RtrPrefix) = copy(version = version + 1, whitelist = whitelist.removeEntry(entry))
+  def removeWhitelistEntry(entry: RtrPrefix) = {
+    val validated = entry.trustAnchorLocator.exists(validatedObjects.rtrPrefixes(_).contains(entry)) && filters.filter(Seq(entry)).nonEmpty
+    withRtrPrefixes(copy(version = version + 1, whitelist = whitelist.removeEntry(entry)), if (validated) distinctRtrPrefixes else distinctRtrPrefixes - entry)
+  }
 
-  def getDistinctRtrPrefixes: Set[RtrPrefix] =
-    Set.empty[RtrPrefix] ++ whitelist.entries ++ filters.filter(validatedObjects.getValidatedRtrPrefixes)
+  def getDistinctRtrPrefixes: Set[RtrPrefix] = distinctRtrPrefixes
 
-  def addFilter(filter: IgnoreFilter) = copy(version = version + 1, filters = filters.addFilter(filter))
+  def addFilter(filter: IgnoreFilter) = {
+    val ignored = distinctRtrPrefixes.filter(prefix => filter.shouldIgnore(prefix) && !whitelist.entries.contains(prefix))
+    withRtrPrefixes(copy(version = version + 1, filters = filters.addFilter(filter)), distinctRtrPrefixes -- ignored)
+  }
 
-  def removeFilter(filter: IgnoreFilter) = copy(version = version + 1, filters = filters.removeFilter(filter))
+  def removeFilter(filter: IgnoreFilter) = {
+    val remainingFilters = filters.removeFilter(filter)
+    val unignored = remainingFilters.filter(validatedObjects.rtrPrefixesByTrustAnchor.values.flatten.filter(filter.shouldIgnore))
+    withRtrPrefixes(copy(version = version + 1, filters = remainingFilters), distinctRtrPrefixes ++ unignored)
+  }
 
   def updateTrustAnchorState(locator: TrustAnchorLocator, enabled: Boolean) = {
     val newValidatedObjects = enabled match {
       case true => validatedObjects.update(locator, Seq.empty[ValidatedObject])
       case false => validatedObjects.removeTrustAnchor(locator)
     }
-    copy(version = version + 1, trustAnchors = trustAnchors.updateTrustAnchorState(locator, enabled), validatedObjects = newValidatedObjects)
+    withRtrPrefixes(
+      copy(version = version + 1, trustAnchors = trustAnchors.updateTrustAnchorState(locator, enabled), validatedObjects = newValidatedObjects),
+      replaceRtrPrefixes(locator, newValidatedObjects))
+  }
+
+  /**
+   * Replaces the prefixes of one trust anchor, keeping those that are also whitelisted.
+   */
+  private def replaceRtrPrefixes(locator: TrustAnchorLocator, updated: ValidatedObjects) =
+    distinctRtrPrefixes -- (validatedObjects.rtrPrefixes(locator) -- whitelist.entries) ++ filters.filter(updated.rtrPrefixes(locator))
+
+  private def withRtrPrefixes(image: MemoryImage, rtrPrefixes: Set[RtrPrefix]) = {
+    image.knownRtrPrefixes = Some(rtrPrefixes)
+    image
   }
 }
@@ -31,6 +31,7 @@ package net.ripe.rpki.validator.config
 
 import org.clapper.argot._
 import org.clapper.argot.ArgotConverters._
+import net.ripe.rpki.validator.models.{ObjectCacheSizes, ValidationExecutor}
 
 object Options {
 
@@ -47,6 +48,7 @@ object Options {
 
 class Options(args: Array[String]) {
   private val DefaultFeedbackUri = "https://ba-feedback-server.ripe.net/metrics/rpki-validator"
+  private val Megabyte = 1024L * 1024
 
   private val parser = new ArgotParser(programName = "rpki-validator")
 
@@ -55,6 +57,9 @@ class Options(args: Array[String]) {
   private val noCloseOption = parser.flag[Boolean](List("n", "no-close-on-error"), "Stop the server from closing connections when it receives fatal errors.")
   private val noNotifyOption = parser.flag[Boolean](List("s", "silent"), "Stop the server from sending notify messages when it has updates.")
   private val dataFileNameOption = parser.option[String](List("f", "data-file"), "FILE", "Specify the data file used to load and store configuration. Default: " + Options.DEFAULT_DATA_FILE_NAME)
+  private val validationThreadsOption = parser.option[Int](List("validation-threads"), "THREADS", "The number of trust anchors validated at the same time. Default: " + ValidationExecutor.DefaultParallelism)
+  private val publicationPointCacheSizeOption = parser.option[Int](List("publication-point-cache-size"), "MEGABYTES", "The size of the manifest and CRL cache of each trust anchor validation. Default: " + ObjectCacheSizes.DefaultPublicationPointCacheMaxBytes / Megabyte)
+  private val objectCacheSizeOption = parser.option[Int](List("object-cache-size"), "MEGABYTES", "The size of the cache of other objects of each trust anchor validation. Default: " + ObjectCacheSizes.DefaultObjectCacheMaxBytes / Megabyte)
   private val feedbackUriOption = parser.option[String](List("feedback-uri"), "URI", "Specify the URI used to send back feedback metrics to RIPE NCC. Default: " + DefaultFeedbackUri)
 
   def rtrPort: Int = rtrPortOption.value.getOrElse(Options.DEFAULT_RTR_PORT)
@@ -62,6 +67,9 @@ class Options(args: Array[String]) {
   def noCloseOnError: Boolean = noCloseOption.value.getOrElse(false)
   def noNotify: Boolean = noNotifyOption.value.getOrElse(false)
   def dataFileName: String = dataFileNameOption.value.getOrElse(Options.DEFAULT_DATA_FILE_NAME)
+  def validationThreads: Int = validationThreadsOption.value.getOrElse(ValidationExecutor.DefaultParallelism)
+  def publicationPointCacheMaxBytes: Long = publicationPointCacheSizeOption.value.map(_ * Megabyte).getOrElse(ObjectCacheSizes.DefaultPublicationPointCacheMaxBytes)
+  def objectCacheMaxBytes: Long = objectCacheSizeOption.value.map(_ * Megabyte).getOrElse(ObjectCacheSizes.DefaultObjectCacheMaxBytes)
   def feedbackUri: String = feedbackUriOption.value.getOrElse(DefaultFeedbackUri)
 
   parser.parse(args)
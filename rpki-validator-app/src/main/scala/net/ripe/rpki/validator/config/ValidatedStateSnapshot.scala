@@ -0,0 +1,190 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package config
+
+import java.io._
+import java.net.URI
+import org.joda.time.DateTime
+import org.joda.time.Period
+import grizzled.slf4j.Logging
+import net.ripe.ipresource.{Asn, IpRange}
+import bgp.preview.AddressBits
+import models._
+import net.ripe.rpki.validator.util.TrustAnchorLocator
+
+/**
+ * The validated prefixes of the enabled trust anchors, written periodically so a restarted validator can serve RTR
+ * clients before the trust anchors have been validated again.
+ */
+case class ValidatedStateSnapshot(version: Int, writtenAt: DateTime, trustAnchors: Seq[TrustAnchorSnapshot]) {
+
+  /**
+   * Restores the validated prefixes of the trust anchors of the image that are enabled and that are in the snapshot.
+   * The filters and whitelist of the image are applied to the restored prefixes like they are to validated prefixes.
+   */
+  def restore(image: MemoryImage): MemoryImage = {
+    val restored: Map[URI, TrustAnchorSnapshot] = trustAnchors.map(ta => ta.certificateLocation -> ta)(collection.breakOut)
+    val enabled = image.trustAnchors.all.filter(ta => ta.enabled && restored.contains(ta.locator.getCertificateLocation))
+    if (enabled.isEmpty) {
+      image
+    } else {
+      val rtrPrefixes: Map[TrustAnchorLocator, Set[RtrPrefix]] = enabled.map { ta =>
+        ta.locator -> restored(ta.locator.getCertificateLocation).rtrPrefixes.map(_.copy(trustAnchorLocator = Some(ta.locator)))
+      }(collection.breakOut)
+      val trustAnchors = image.trustAnchors.all.map { ta =>
+        if (rtrPrefixes.contains(ta.locator)) ta.copy(lastUpdated = restored(ta.locator.getCertificateLocation).lastUpdated) else ta
+      }
+      image.copy(
+        trustAnchors = new TrustAnchors(trustAnchors),
+        validatedObjects = new ValidatedObjects(image.validatedObjects.all ++ rtrPrefixes.keys.map(_ -> Seq.empty[ValidatedObject]), rtrPrefixes),
+        version = version)
+    }
+  }
+}
+
+case class TrustAnchorSnapshot(certificateLocation: URI, lastUpdated: Option[DateTime], rtrPrefixes: Set[RtrPrefix])
+
+object ValidatedStateSnapshot extends Logging {
+  /**
+   * Older snapshots are ignored, so a validator that was stopped for a long time does not serve outdated prefixes.
+   */
+  val MaximumAge = Period.hours(24)
+
+  private val Magic = 0x52504b49
+  private val FormatVersion = 1
+  private val NoMaxPrefixLength = 255
+
+  def apply(image: MemoryImage, now: DateTime): ValidatedStateSnapshot = {
+    val trustAnchors = for (ta <- image.trustAnchors.all if ta.enabled) yield {
+      TrustAnchorSnapshot(ta.locator.getCertificateLocation, ta.lastUpdated, image.validatedObjects.rtrPrefixes(ta.locator))
+    }
+    ValidatedStateSnapshot(image.version, now, trustAnchors)
+  }
+
+  def write(snapshot: ValidatedStateSnapshot, file: File) {
+    file.getParentFile.mkdirs()
+    val tempFile: File = File.createTempFile("rpki", "snapshot", file.getParentFile)
+    try {
+      val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))
+      try {
+        writeSnapshot(snapshot, out)
+      } finally {
+        out.close()
+      }
+      if (!tempFile.renameTo(file)) throw new IOException("Error writing file: " + file.getAbsolutePath)
+    } finally {
+      tempFile.delete()
+    }
+  }
+
+  /**
+   * @return the snapshot in the file, or None if it does not exist, cannot be read or is older than the maximum age.
+   */
+  def read(file: File, now: DateTime): Option[ValidatedStateSnapshot] = try {
+    val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+    val snapshot = try {
+      readSnapshot(in)
+    } finally {
+      in.close()
+    }
+    if (snapshot.writtenAt.plus(MaximumAge).isBefore(now)) {
+      info("Ignoring validated state snapshot written at " + snapshot.writtenAt)
+      None
+    } else {
+      Some(snapshot)
+    }
+  } catch {
+    case e: FileNotFoundException =>
+      info("Validated state snapshot does not exist: " + e.getLocalizedMessage)
+      None
+    case e: IOException =>
+      warn("Error reading " + file.getAbsolutePath + ": " + e.getMessage)
+      None
+    case e: IllegalArgumentException =>
+      warn("Error reading " + file.getAbsolutePath + ": " + e.getMessage)
+      None
+  }
+
+  private def writeSnapshot(snapshot: ValidatedStateSnapshot, out: DataOutputStream) {
+    out.writeInt(Magic)
+    out.writeInt(FormatVersion)
+    out.writeInt(snapshot.version)
+    out.writeLong(snapshot.writtenAt.getMillis)
+    out.writeInt(snapshot.trustAnchors.size)
+    for (ta <- snapshot.trustAnchors) {
+      out.writeUTF(ta.certificateLocation.toString)
+      out.writeLong(ta.lastUpdated.map(_.getMillis).getOrElse(-1L))
+      out.writeInt(ta.rtrPrefixes.size)
+      ta.rtrPrefixes.foreach(writeRtrPrefix(_, out))
+    }
+  }
+
+  /**
+   * Prefixes are written as the primitive address bits used by the BGP preview, IPv4 prefixes without the low long.
+   * Lengths are unsigned bytes, a missing maximum length is written as 255.
+   */
+  private def writeRtrPrefix(prefix: RtrPrefix, out: DataOutputStream) {
+    val start = prefix.interval.start
+    val ipv6 = AddressBits.isIpv6(start)
+    out.writeInt(prefix.asn.longValue.toInt)
+    out.writeBoolean(ipv6)
+    out.writeLong(AddressBits.high(start))
+    if (ipv6) out.writeLong(AddressBits.low(start))
+    out.writeByte(prefix.prefix.getPrefixLength)
+    out.writeByte(prefix.maxPrefixLength.getOrElse(NoMaxPrefixLength))
+  }
+
+  private def readSnapshot(in: DataInputStream): ValidatedStateSnapshot = {
+    if (in.readInt() != Magic) throw new IOException("not a validated state snapshot")
+    val formatVersion = in.readInt()
+    if (formatVersion != FormatVersion) throw new IOException("unsupported snapshot format " + formatVersion)
+    val version = in.readInt()
+    val writtenAt = new DateTime(in.readLong())
+    val trustAnchors = Vector.fill(in.readInt()) {
+      val certificateLocation = URI.create(in.readUTF())
+      val lastUpdated = Some(in.readLong()).filter(_ >= 0).map(new DateTime(_))
+      val rtrPrefixes = Vector.fill(in.readInt())(readRtrPrefix(in))
+      TrustAnchorSnapshot(certificateLocation, lastUpdated, rtrPrefixes.toSet)
+    }
+    ValidatedStateSnapshot(version, writtenAt, trustAnchors)
+  }
+
+  private def readRtrPrefix(in: DataInputStream): RtrPrefix = {
+    val asn = new Asn(in.readInt() & 0xffffffffL)
+    val ipv6 = in.readBoolean()
+    val high = in.readLong()
+    val low = if (ipv6) in.readLong() else 0L
+    val prefixLength = in.readUnsignedByte()
+    val maxPrefixLength = Some(in.readUnsignedByte()).filter(_ != NoMaxPrefixLength)
+    val interval = AddressBits.interval(high, low, prefixLength, ipv6)
+    RtrPrefix(asn, interval.start.upTo(interval.end).asInstanceOf[IpRange], maxPrefixLength)
+  }
+}
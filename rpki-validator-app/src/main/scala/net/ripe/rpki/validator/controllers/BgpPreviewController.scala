@@ -34,6 +34,7 @@ package controllers
 import bgp.preview._
 import views.BgpPreviewView
 import views.BgpPreviewTableData
+import views.DataTableIndex
 
 trait BgpPreviewController extends ApplicationController {
 
@@ -42,15 +43,19 @@ trait BgpPreviewController extends ApplicationController {
 
   private def baseUrl = views.Tabs.BgpPreviewTab.url
 
+  private val bgpPreviewIndex = new DataTableIndex.Latest[BgpValidatedAnnouncement]
+
   get(baseUrl) {
     new BgpPreviewView(bgpRisDumps)
   }
 
   get("/bgp-preview-data") {
-    new BgpPreviewTableData(validatedAnnouncements) {
+    val announcements = validatedAnnouncements
+    new BgpPreviewTableData(announcements) {
       override def getParam(name: String) = {
         params(name)
       }
+      override def getIndex() = Some(bgpPreviewIndex(announcements)(buildIndex(announcements)))
     }
   }
 
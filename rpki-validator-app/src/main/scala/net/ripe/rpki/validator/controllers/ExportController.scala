@@ -30,46 +30,97 @@
 package net.ripe.rpki.validator
 package controllers
 
+import java.io.{BufferedWriter, OutputStreamWriter, Writer}
+import java.util.zip.GZIPOutputStream
 import views.ExportView
 import models.RtrPrefix
-import net.liftweb.json._
-import scala.Some
 
 trait ExportController extends ApplicationController {
+  import ExportController._
 
-  protected def getRtrPrefixes: Set[RtrPrefix]
+  /**
+   * The prefixes together with the version of the memory image they were taken from, which changes whenever the
+   * exported prefixes change. Both must come from the same image, so an ETag never names other prefixes.
+   */
+  protected def getVersionedRtrPrefixes: (Int, Set[RtrPrefix])
 
   get("/export") {
     new ExportView()
   }
 
   get("/export.csv") {
-    val Header = "ASN,IP Prefix,Max Length\n"
-    val RowFormat = "%s,%s,%s\n"
-
-    contentType = "text/csv"
-    response.addHeader("Pragma", "public")
-    response.addHeader("Cache-Control", "no-cache")
-
-    val roas = getRtrPrefixes.map(rtr => {
-      RowFormat.format(rtr.asn, rtr.prefix, rtr.maxPrefixLength.getOrElse(rtr.prefix.getPrefixLength))
-    })
-    response.getWriter.write(Header + roas.mkString)
+    export("text/csv", "csv") { (writer, prefixes) =>
+      writer.write("ASN,IP Prefix,Max Length\n")
+      for (rtr <- prefixes) {
+        writer.write(rtr.asn.toString)
+        writer.write(',')
+        writer.write(rtr.prefix.toString)
+        writer.write(',')
+        writer.write(maxLength(rtr).toString)
+        writer.write('\n')
+      }
+    }
   }
 
   get("/export.json") {
-    import net.liftweb.json.JsonDSL._
+    export("text/json", "json") { (writer, prefixes) =>
+      // ASN and prefix notations never contain characters that need escaping in a JSON string
+      writer.write("{\"roas\":[")
+      var first = true
+      for (rtr <- prefixes) {
+        if (!first) writer.write(',')
+        writer.write("{\"asn\":\"")
+        writer.write(rtr.asn.toString)
+        writer.write("\",\"prefix\":\"")
+        writer.write(rtr.prefix.toString)
+        writer.write("\",\"maxLength\":")
+        writer.write(maxLength(rtr).toString)
+        writer.write('}')
+        first = false
+      }
+      writer.write("]}")
+    }
+  }
 
-    contentType = "text/json"
+  /**
+   * Streams the export to the response, compressed when the client accepts gzip. Clients that already have the
+   * current version get a 304 without the prefixes being written.
+   */
+  private def export(mediaType: String, format: String)(write: (Writer, Set[RtrPrefix]) => Unit) {
+    val (version, prefixes) = getVersionedRtrPrefixes
+    val gzip = Option(request.getHeader("Accept-Encoding")).exists(_.toLowerCase.contains("gzip"))
+    val etag = "\"%s-%d-%d%s\"".format(format, StartTime, version, if (gzip) "-gzip" else "")
+
+    contentType = mediaType
     response.addHeader("Pragma", "public")
     response.addHeader("Cache-Control", "no-cache")
+    response.addHeader("ETag", etag)
+    response.addHeader("Vary", "Accept-Encoding")
+
+    val ifNoneMatch = Option(request.getHeader("If-None-Match")).toSeq.flatMap(_.split(",")).map(_.trim)
+    if (ifNoneMatch.exists(tag => tag == etag || tag == "*")) {
+      halt(304)
+    }
 
-    val roas = getRtrPrefixes.map(rtr =>
-      ("asn" -> rtr.asn.toString) ~
-        ("prefix" -> rtr.prefix.toString) ~
-        ("maxLength" -> rtr.maxPrefixLength.getOrElse(rtr.prefix.getPrefixLength))
-    )
-    response.getWriter.write(compact(render(("roas" -> roas))))
+    if (gzip) response.addHeader("Content-Encoding", "gzip")
+    val stream = if (gzip) new GZIPOutputStream(response.getOutputStream, BufferSize) else response.getOutputStream
+    val writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), BufferSize)
+    write(writer, prefixes)
+    writer.flush()
+    stream match {
+      case compressed: GZIPOutputStream => compressed.finish()
+      case _ =>
+    }
   }
 
+  private def maxLength(rtr: RtrPrefix) = rtr.maxPrefixLength.getOrElse(rtr.prefix.getPrefixLength)
+}
+
+object ExportController {
+  private val BufferSize = 64 * 1024
+
+  /**
+   * Part of the ETag, since the memory image version starts counting from zero again when the validator restarts.
+   */
+  private val StartTime = System.currentTimeMillis
 }
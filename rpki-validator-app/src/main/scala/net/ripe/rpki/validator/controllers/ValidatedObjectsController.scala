@@ -38,13 +38,18 @@ import net.ripe.rpki.commons.validation.ValidationStatus
 trait ValidatedObjectsController extends ApplicationController with Logging {
   protected def validatedObjects: ValidatedObjects
 
+  private val roaIndex = new DataTableIndex.Latest[RtrPrefix]
+  private val validationDetailsIndex = new DataTableIndex.Latest[ValidatedObjectDetail]
+
   get("/roas") {
     new RoasView(validatedObjects)
   }
 
   get("/roas-data") {
-    new RoaTableData(validatedObjects) {
+    val objects = validatedObjects
+    new RoaTableData(objects) {
       override def getParam(name: String) = params(name)
+      override def getIndex() = Some(roaIndex(objects)(buildIndex(getAllRecords())))
     }
   }
 
@@ -63,8 +68,10 @@ trait ValidatedObjectsController extends ApplicationController with Logging {
   }
 
   get("/validation-details-data") {
+    val objects = validatedObjects
     new ValidationDetailsTableData(getValidationDetails) {
       override def getParam(name: String) = params(name)
+      override def getIndex() = Some(validationDetailsIndex(objects)(buildIndex(getAllRecords())))
     }
   }
 
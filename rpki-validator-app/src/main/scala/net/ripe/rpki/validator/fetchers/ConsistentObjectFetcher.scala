@@ -31,19 +31,26 @@ package net.ripe.rpki.validator
 package fetchers
 
 import java.net.URI
+import akka.util.ByteString
 import models.StoredRepositoryObject
 import net.ripe.rpki.commons.crypto.CertificateRepositoryObject
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms.FileContentSpecification
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms
 import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory
 import net.ripe.rpki.commons.util.Specification
+import net.ripe.rpki.commons.validation.ValidationCheck
 import net.ripe.rpki.commons.validation.ValidationLocation
 import net.ripe.rpki.commons.validation.ValidationResult
 import net.ripe.rpki.commons.validation.ValidationString
 import scala.collection.JavaConverters._
+import store.DecodedObjectCache
+import store.DecodedObjectCache.CachedObject
 import store.RepositoryObjectStore
 
-class ConsistentObjectFetcher(remoteObjectFetcher: RpkiRepositoryObjectFetcher, store: RepositoryObjectStore) extends RpkiRepositoryObjectFetcher {
+/**
+ * @param objectCache decoded objects by content hash, so unchanged objects are not read from the store and decoded on every run.
+ */
+class ConsistentObjectFetcher(remoteObjectFetcher: RpkiRepositoryObjectFetcher, store: RepositoryObjectStore, objectCache: DecodedObjectCache = new DecodedObjectCache(DecodedObjectCache.DefaultMaxBytes)) extends RpkiRepositoryObjectFetcher {
 
   /**
    * Pass this on to the remote object fetcher
@@ -58,14 +65,21 @@ class ConsistentObjectFetcher(remoteObjectFetcher: RpkiRepositoryObjectFetcher,
    * If it is, we put the new manifest and all the contents in our durable object store for future use, and return the new manifest.
    */
   override def fetch(uri: URI, specification: Specification[Array[Byte]], result: ValidationResult): CertificateRepositoryObject = {
-    val storedObject = specification match {
+    val hash = specification match {
       case filecontentSpec: FileContentSpecification =>
-        store.getByHash(filecontentSpec.getHash)
+        Some(ByteString(filecontentSpec.getHash))
       case _ =>
         fetchAndStoreObject(uri, specification, result)
-        store.getLatestByUrl(uri)
+        store.getLatestHashByUrl(uri)
+    }
+    // The cache is kept across runs, so only trust it for objects that are still in the store
+    hash.flatMap(hash => objectCache.get(hash).filter(_ => store.contains(hash.toArray))) match {
+      case Some(cached) =>
+        reportChecks(cached.checks, result)
+        cached.repositoryObject
+      case None =>
+        storedObjectToCro(uri, hash.flatMap(hash => store.getByHash(hash.toArray)), result)
     }
-    storedObjectToCro(uri, storedObject, result)
   }
 
   private[this] def fetchAndStoreObject(uri: URI, specification: Specification[Array[Byte]], result: ValidationResult) {
@@ -87,13 +101,35 @@ class ConsistentObjectFetcher(remoteObjectFetcher: RpkiRepositoryObjectFetcher,
   private[this] def storedObjectToCro(uri: URI, storedObject: Option[StoredRepositoryObject], result: ValidationResult): CertificateRepositoryObject = {
     storedObject match {
       case Some(repositoryObject) =>
-        CertificateRepositoryObjectFactory.createCertificateRepositoryObject(repositoryObject.binaryObject.toArray, result)
+        decodeAndCache(uri, repositoryObject, result)
       case None =>
         result.rejectForLocation(new ValidationLocation(uri), ValidationString.VALIDATOR_REPOSITORY_OBJECT_NOT_IN_CACHE, uri.toString)
         null
     }
   }
 
+  /**
+   * Decodes into a separate result first, only objects that decode without failures are cached. Failures are rare, so
+   * in that case the object is simply decoded again to report them in the original result.
+   */
+  private[this] def decodeAndCache(uri: URI, storedObject: StoredRepositoryObject, result: ValidationResult): CertificateRepositoryObject = {
+    val encoded = storedObject.binaryObject.toArray
+    val decodeResult = ValidationResult.withLocation(uri)
+    val cro = CertificateRepositoryObjectFactory.createCertificateRepositoryObject(encoded, decodeResult)
+    val checks = decodeResult.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSeq
+    if (cro != null && checks.forall(_.isOk)) {
+      objectCache.put(storedObject.hash, CachedObject(cro, checks, DecodedObjectCache.estimatedWeight(encoded.length)))
+      reportChecks(checks, result)
+      cro
+    } else {
+      CertificateRepositoryObjectFactory.createCertificateRepositoryObject(encoded, result)
+    }
+  }
+
+  private[this] def reportChecks(checks: Seq[ValidationCheck], result: ValidationResult) {
+    checks.foreach(check => result.rejectIfFalse(true, check.getKey, check.getParams: _*))
+  }
+
   private[this] def fetchAndStoreConsistentObjectSet(manifestUri: URI, mft: ManifestCms): ValidationResult = {
     val fetchResults = ValidationResult.withLocation(manifestUri)
 
@@ -34,13 +34,22 @@ import java.net.URI
 import net.ripe.rpki.commons.validation.ValidationResult
 import net.ripe.rpki.commons.util.Specification
 
-class RemoteObjectFetcher(rsyncFetcher: RsyncRpkiRepositoryObjectFetcher) extends RpkiRepositoryObjectFetcher with Logging {
+/**
+ * Fetches the objects of publication points that are available over RRDP from the local copy of their RRDP repository,
+ * and all other objects using rsync. When the RRDP repository cannot be synchronized rsync is used instead.
+ */
+class RemoteObjectFetcher(rsyncFetcher: RsyncRpkiRepositoryObjectFetcher, rrdpFetcher: Option[RrdpRpkiRepositoryObjectFetcher] = None) extends RpkiRepositoryObjectFetcher with Logging {
 
   override def prefetch(uri: URI, result: ValidationResult) {
-    rsyncFetcher.prefetch(uri, result)
+    if (!rrdpFetcher.exists(_.synchronize(uri, result))) {
+      rsyncFetcher.prefetch(uri, result)
+    }
   }
 
   override def fetch(uri: URI, fileContentSpecification: Specification[Array[Byte]], result: ValidationResult) = {
-    rsyncFetcher.fetch(uri, fileContentSpecification, result)
+    rrdpFetcher.filter(_.isSynchronized(uri)) match {
+      case Some(fetcher) => fetcher.fetch(uri, fileContentSpecification, result)
+      case None => rsyncFetcher.fetch(uri, fileContentSpecification, result)
+    }
   }
 }
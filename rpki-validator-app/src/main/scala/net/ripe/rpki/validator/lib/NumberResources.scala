@@ -49,6 +49,7 @@ object NumberResources {
 
   case class NumberResourceInterval(start: UniqueIpResource, end: UniqueIpResource) {
     def contains(that: NumberResourceInterval) = this.start.compareTo(that.start) <= 0 && this.end.compareTo(that.end) >= 0
+    def overlaps(that: NumberResourceInterval) = this.start.compareTo(that.end) <= 0 && this.end.compareTo(that.start) >= 0
   }
 
   implicit object NumberResourceIntervalOrdering extends Ordering[NumberResourceInterval] {
@@ -80,6 +81,26 @@ object NumberResources {
       builder.result()
     }
 
+    /**
+     * Finds all entries that share at least one resource with the range. Subtrees whose bounding interval does not
+     * overlap the range are skipped.
+     */
+    def findOverlapping(range: NumberResourceInterval): IndexedSeq[A] = {
+      val builder = IndexedSeq.newBuilder[A]
+      traverseTree(tree, _ overlaps range, (a: A) => if (measurer.unit(a) overlaps range) builder += a)
+      builder.result()
+    }
+
+    /**
+     * Same as <code>findOverlapping(range).nonEmpty</code>, but without collecting the entries. No more subtrees are
+     * visited once an overlapping entry is found.
+     */
+    def existsOverlapping(range: NumberResourceInterval): Boolean = {
+      var found = false
+      traverseTree(tree, measure => !found && (measure overlaps range), (a: A) => if (!found && (measurer.unit(a) overlaps range)) found = true)
+      found
+    }
+
     private[this] final def traverseTree[A](tree: FingerTree[NumberResourceInterval, A], pred: NumberResourceInterval => Boolean, collect: A => Unit) {
       def traverseFinger(finger: Finger[NumberResourceInterval, A]) = if (pred(finger.measure)) finger.foreach(collect)
       def traverseNode(node: Node[NumberResourceInterval, A]) = if (pred(node.measure)) node.foreach(collect)
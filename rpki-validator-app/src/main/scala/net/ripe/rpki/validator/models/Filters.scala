@@ -30,17 +30,34 @@
 package net.ripe.rpki.validator
 package models
 
+import scalaz.Reducer
 import net.ripe.ipresource.IpRange
+import lib.NumberResources._
 
 case class IgnoreFilter(prefix: IpRange) {
+  def interval = NumberResourceInterval(prefix.getStart, prefix.getEnd)
+
   def shouldIgnore(rtrPrefix: RtrPrefix): Boolean = prefix.overlaps(rtrPrefix.prefix)
 }
 
+object IgnoreFilter {
+  implicit object IgnoreFilterReducer extends Reducer[IgnoreFilter, NumberResourceInterval] {
+    override def unit(filter: IgnoreFilter) = filter.interval
+  }
+}
+
 case class Filters(entries: Set[IgnoreFilter] = Set.empty) {
   def addFilter(filter: IgnoreFilter) = copy(entries + filter)
   def removeFilter(filter: IgnoreFilter) = copy(entries - filter)
 
-  def filter(input: Iterable[RtrPrefix]): Iterable[RtrPrefix] = input.filterNot(shouldIgnore(_))
+  /**
+   * Filters are indexed by the interval they cover, so each prefix is matched against the filters that overlap it
+   * instead of against all of them.
+   */
+  private lazy val index = NumberResourceIntervalTree(entries.toSeq: _*)
+
+  def filter(input: Iterable[RtrPrefix]): Iterable[RtrPrefix] =
+    if (entries.isEmpty) input else input.filterNot(shouldIgnore(_))
 
-  private def shouldIgnore(rtrPrefix: RtrPrefix) = entries.exists(_.shouldIgnore(rtrPrefix)) 
+  private def shouldIgnore(rtrPrefix: RtrPrefix) = index.existsOverlapping(rtrPrefix.interval)
 }
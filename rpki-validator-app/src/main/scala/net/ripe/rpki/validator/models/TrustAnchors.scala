@@ -31,8 +31,11 @@ package net.ripe.rpki.validator.models
 
 import java.io.File
 import java.net.URI
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import scala.collection.JavaConverters._
+import scala.collection.concurrent.TrieMap
 import scala.concurrent.stm.Ref
 import scala.concurrent.stm.atomic
 import scala.math.Ordering.Implicits._
@@ -42,13 +45,16 @@ import com.yammer.metrics.core.MetricsRegistry
 import com.yammer.metrics.core.Timer
 import grizzled.slf4j.Logger
 import grizzled.slf4j.Logging
+import net.ripe.rpki.validator.commands.ParallelTopDownWalker
+import net.ripe.rpki.validator.commands.PipelinedTopDownWalker
+import net.ripe.rpki.validator.commands.PublicationPointCache
 import net.ripe.rpki.validator.commands.TopDownWalker
+import net.ripe.rpki.validator.util.PackFileStore
 import net.ripe.rpki.validator.util.TrustAnchorLocator
 import net.ripe.rpki.validator.util.UriToFileMapper
 import net.ripe.rpki.commons.crypto.CertificateRepositoryObject
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms
 import net.ripe.rpki.commons.crypto.crl.X509Crl
-import net.ripe.rpki.commons.rsync.Rsync
 import net.ripe.rpki.commons.util.Specifications
 import net.ripe.rpki.commons.validation.ValidationLocation
 import net.ripe.rpki.commons.validation.ValidationOptions
@@ -62,6 +68,7 @@ import net.ripe.rpki.validator.fetchers._
 import net.ripe.rpki.validator.lib.DateAndTime._
 import net.ripe.rpki.validator.statistics.InconsistentRepositoryChecker
 import net.ripe.rpki.validator.statistics.Metric
+import net.ripe.rpki.validator.store.DecodedObjectCache
 import net.ripe.rpki.validator.store.DataSources
 import net.ripe.rpki.validator.store.RepositoryObjectStore
 import scalaz._
@@ -87,7 +94,8 @@ case class TrustAnchor(
   certificate: Option[X509ResourceCertificate] = None,
   manifest: Option[ManifestCms] = None,
   crl: Option[X509Crl] = None,
-  lastUpdated: Option[DateTime] = None) {
+  lastUpdated: Option[DateTime] = None,
+  consecutiveFailures: Int = 0) {
   def name: String = locator.getCaName
   def prefetchUris: Seq[URI] = locator.getPrefetchUris.asScala
 
@@ -102,7 +110,7 @@ case class TrustAnchor(
 
     result match {
       case Success(validatedObjects) =>
-        val nextUpdate = now.plusHours(4)
+        val nextUpdate = ValidationScheduler.nextUpdateAfterSuccess(now, validatedObjects.values)
         val trustAnchor = validatedObjects.get(locator.getCertificateLocation).collect {
           case ValidObject(_, _, certificate: X509ResourceCertificate) => certificate
         }
@@ -113,10 +121,10 @@ case class TrustAnchor(
           case ValidObject(_, _, crl: X509Crl) => crl
         }
 
-        copy(lastUpdated = Some(now), status = Idle(nextUpdate), certificate = trustAnchor, manifest = manifest, crl = crl)
+        copy(lastUpdated = Some(now), status = Idle(nextUpdate), certificate = trustAnchor, manifest = manifest, crl = crl, consecutiveFailures = 0)
       case Failure(errorMessage) =>
-        val nextUpdate = now.plusHours(1)
-        copy(lastUpdated = Some(now), status = Idle(nextUpdate, Some(errorMessage)))
+        val nextUpdate = ValidationScheduler.nextUpdateAfterFailure(now, consecutiveFailures + 1)
+        copy(lastUpdated = Some(now), status = Idle(nextUpdate, Some(errorMessage)), consecutiveFailures = consecutiveFailures + 1)
     }
   }
 }
@@ -199,7 +207,65 @@ trait ValidationProcess {
   def shutdown(): Unit = {}
 }
 
-class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorLocator, maxStaleDays: Int) extends ValidationProcess {
+/**
+ * Byte budgets of the per trust anchor object caches, see [[net.ripe.rpki.validator.fetchers.CachingCertificateRepositoryObjectFetcher]].
+ */
+case class ObjectCacheSizes(publicationPointCacheMaxBytes: Long, objectCacheMaxBytes: Long) {
+  require(publicationPointCacheMaxBytes > 0, "publication point cache size must be positive")
+  require(objectCacheMaxBytes > 0, "object cache size must be positive")
+}
+
+object ObjectCacheSizes {
+  val DefaultPublicationPointCacheMaxBytes = 64L * 1024 * 1024
+  val DefaultObjectCacheMaxBytes = 32L * 1024 * 1024
+
+  val Default = ObjectCacheSizes(DefaultPublicationPointCacheMaxBytes, DefaultObjectCacheMaxBytes)
+}
+
+object TrustAnchorValidationProcess {
+  val RsyncMaxConcurrent = 16
+  val RsyncMaxConcurrentPerHost = 4
+  val RsyncTimeoutInSeconds = 300
+
+  /**
+   * Shared by all trust anchors, so the limits apply to all concurrently running validations.
+   */
+  val SharedRsyncScheduler = new RsyncScheduler(RsyncMaxConcurrent, RsyncMaxConcurrentPerHost, RsyncTimeoutInSeconds)
+
+  /**
+   * Threads that block on rsync while prefetching, shared by all trust anchors and kept apart from the validation
+   * threads. The shared rsync scheduler bounds the number of rsync processes, so this pool has the same size.
+   */
+  val SharedPrefetchExecutor = Executors.newFixedThreadPool(RsyncMaxConcurrent, ValidationExecutor.daemonThreads("prefetch"))
+
+  /**
+   * Keyed by content hash, so it can be shared by all trust anchors and kept between runs.
+   */
+  val SharedDecodedObjectCache = new DecodedObjectCache(DecodedObjectCache.DefaultMaxBytes)
+
+  /**
+   * Repository objects read from the rsync disk cache of all trust anchors. Kept outside of the rsync disk cache, so
+   * wiping that cache does not remove segments that are mapped. Without it objects are read from the files directly.
+   */
+  lazy val SharedPackFileStore: Option[PackFileStore] = try {
+    Some(new PackFileStore(new File("tmp/packs")))
+  } catch {
+    case e: java.io.IOException =>
+      Logger[this.type].warn("Cannot open pack files, reading repository objects from the rsync disk cache: " + e.getMessage)
+      None
+  }
+
+  /**
+   * The RRDP publication points and session state of the local repository copies, by trust anchor, kept between runs.
+   */
+  val SharedRrdpRepositories = TrieMap.empty[String, RrdpRepositories]
+}
+
+/**
+ * @param publicationPoints when defined, the validated publication points of the previous run are remembered here and
+ *                          reused when they did not change (incremental validation).
+ */
+class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorLocator, maxStaleDays: Int, publicationPoints: Option[ValidatedPublicationPoints] = None, cacheSizes: ObjectCacheSizes = ObjectCacheSizes.Default) extends ValidationProcess {
 
   private val options = new ValidationOptions()
   private val RsyncDiskCacheBasePath = "tmp/cache/"
@@ -214,6 +280,7 @@ class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorL
     val cro = consistentObjectFetcher.fetch(uri, Specifications.alwaysTrue(), validationResult)
     cro match {
       case certificate: X509ResourceCertificate =>
+        rrdpRepositories.register(certificate)
         validationResult.rejectIfFalse(trustAnchorLocator.getPublicKeyInfo == X509CertificateUtil.getEncodedSubjectPublicKeyInfo(certificate.getCertificate), ValidationString.TRUST_ANCHOR_PUBLIC_KEY_MATCH)
         if (validationResult.hasFailureForCurrentLocation) {
           InvalidObject(uri, validationResult.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSet)
@@ -226,27 +293,67 @@ class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorL
   }
 
   override def validateObjects(certificate: CertificateRepositoryObjectValidationContext) = {
-    val builder = Map.newBuilder[URI, ValidatedObject]
-    val fetcher = createFetcher(new RoaCollector(trustAnchorLocator, builder) +: objectFetcherListeners: _*)
+    val objects = TrieMap.empty[URI, ValidatedObject]
+    val fetcher = createFetcher(new RoaCollector(trustAnchorLocator, objects) +: RrdpRepositoryRegistration +: objectFetcherListeners: _*)
 
     // purge cache
     val cache = new RepositoryObjectStore(DataSources.DurableDataSource)
     cache.purgeExpired(maxStaleDays)
 
-    trustAnchorLocator.getPrefetchUris.asScala.foreach { prefetchUri =>
+    prefetch(trustAnchorLocator.getPrefetchUris.asScala, fetcher)
 
-      logger.info("Prefetching '" + prefetchUri + "'")
-      val validationResult = ValidationResult.withLocation(prefetchUri)
+    val incrementalValidation = publicationPoints.map(new IncrementalValidation(_, objects))
+    walk(certificate, fetcher, incrementalValidation)
+    incrementalValidation.foreach(_.finish())
 
-      fetcher.prefetch(prefetchUri, validationResult)
-      logger.info("Done prefetching for '" + prefetchUri + "'")
-    }
+    logger.info("Object cache for " + trustAnchorLocator.getCaName + ": manifests and CRLs [" + fetcher.getPublicationPointCache + "], other objects [" + fetcher.getObjectCache + "], decoded objects [" + TrustAnchorValidationProcess.SharedDecodedObjectCache + "]")
 
-    val walker = new TopDownWalker(fetcher)
-    walker.addTrustAnchor(certificate)
-    walker.execute()
+    objects.readOnlySnapshot.toMap
+  }
 
-    builder.result()
+  /**
+   * Prefetches concurrently on the shared prefetch threads, the shared rsync scheduler limits the number of rsync
+   * processes (per host).
+   */
+  private def prefetch(prefetchUris: Seq[URI], fetcher: CertificateRepositoryObjectFetcher) {
+    val prefetches = prefetchUris.map { prefetchUri =>
+      TrustAnchorValidationProcess.SharedPrefetchExecutor.submit(new Runnable {
+        override def run() {
+          logger.info("Prefetching '" + prefetchUri + "'")
+          val validationResult = ValidationResult.withLocation(prefetchUri)
+
+          fetcher.prefetch(prefetchUri, validationResult)
+          logger.info("Done prefetching for '" + prefetchUri + "'")
+        }
+      })
+    }
+    prefetches.foreach(_.get)
+  }
+
+  private def walk(certificate: CertificateRepositoryObjectValidationContext, fetcher: CertificateRepositoryObjectFetcher, publicationPointCache: Option[PublicationPointCache]) {
+    trustAnchorLocator.getWalkerThreads match {
+      case threads if threads > 1 =>
+        val executor = Executors.newFixedThreadPool(threads)
+        try {
+          val walker = new ParallelTopDownWalker(fetcher, executor)
+          publicationPointCache.foreach(walker.setPublicationPointCache)
+          walker.addTrustAnchor(certificate)
+          walker.execute()
+        } finally {
+          executor.shutdownNow()
+        }
+      case _ if trustAnchorLocator.getWalkerLookAhead > 0 =>
+        val walker = new PipelinedTopDownWalker(fetcher, trustAnchorLocator.getWalkerLookAhead)
+        publicationPointCache.foreach(walker.setPublicationPointCache)
+        walker.addTrustAnchor(certificate)
+        walker.execute()
+        logger.info("Pipelined walk of " + trustAnchorLocator.getCaName + ": " + walker)
+      case _ =>
+        val walker = new TopDownWalker(fetcher)
+        publicationPointCache.foreach(walker.setPublicationPointCache)
+        walker.addTrustAnchor(certificate)
+        walker.execute()
+    }
   }
 
   def wipeRsyncDiskCache() {
@@ -256,10 +363,12 @@ class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorL
     }
   }
 
-  private def createFetcher(listeners: NotifyingCertificateRepositoryObjectFetcher.Listener*): CertificateRepositoryObjectFetcher = {
+  private def createFetcher(listeners: NotifyingCertificateRepositoryObjectFetcher.Listener*): CachingCertificateRepositoryObjectFetcher = {
     val validatingFetcher = new ValidatingCertificateRepositoryObjectFetcher(new RpkiRepositoryObjectFetcherAdapter(consistentObjectFetcher), options)
     val notifyingFetcher = new NotifyingCertificateRepositoryObjectFetcher(validatingFetcher)
-    val cachingFetcher = new CachingCertificateRepositoryObjectFetcher(notifyingFetcher)
+    val cachingFetcher = new CachingCertificateRepositoryObjectFetcher(notifyingFetcher,
+      new CertificateRepositoryObjectCache(Int.MaxValue, cacheSizes.publicationPointCacheMaxBytes),
+      new CertificateRepositoryObjectCache(Int.MaxValue, cacheSizes.objectCacheMaxBytes))
     validatingFetcher.setOuterMostDecorator(cachingFetcher)
 
     listeners.foreach(notifyingFetcher.addCallback)
@@ -267,23 +376,81 @@ class TrustAnchorValidationProcess(override val trustAnchorLocator: TrustAnchorL
     cachingFetcher
   }
 
+  private[this] lazy val rrdpRepositories = {
+    val repositories = new RrdpRepositories
+    TrustAnchorValidationProcess.SharedRrdpRepositories.putIfAbsent(trustAnchorLocator.getFile.getName, repositories).getOrElse(repositories)
+  }
+
   private[this] lazy val consistentObjectFetcher = {
-    val rsync = new Rsync()
-    rsync.setTimeoutInSeconds(300)
-    val rsyncFetcher = new RsyncRpkiRepositoryObjectFetcher(rsync, new UriToFileMapper(new File(RsyncDiskCacheBasePath  + trustAnchorLocator.getFile.getName)))
+    val uriToFileMapper = new UriToFileMapper(new File(RsyncDiskCacheBasePath  + trustAnchorLocator.getFile.getName))
+    val packFileStore = TrustAnchorValidationProcess.SharedPackFileStore.orNull
+    val rsyncFetcher = new RsyncRpkiRepositoryObjectFetcher(TrustAnchorValidationProcess.SharedRsyncScheduler, uriToFileMapper, packFileStore)
+    val rrdpFetcher = new RrdpRpkiRepositoryObjectFetcher(rrdpRepositories, uriToFileMapper, packFileStore)
 
-    val remoteFetcher = new RemoteObjectFetcher(rsyncFetcher)
+    val remoteFetcher = new RemoteObjectFetcher(rsyncFetcher, Some(rrdpFetcher))
 
-    new ConsistentObjectFetcher(remoteFetcher, new RepositoryObjectStore(DataSources.DurableDataSource))
+    new ConsistentObjectFetcher(remoteFetcher, new RepositoryObjectStore(DataSources.DurableDataSource), TrustAnchorValidationProcess.SharedDecodedObjectCache)
   }
 
-  private class RoaCollector(trustAnchor: TrustAnchorLocator, objects: collection.mutable.Builder[(URI, ValidatedObject), _]) extends NotifyingCertificateRepositoryObjectFetcher.ListenerAdapter {
+  /**
+   * Registers the publication points of validated CA certificates, before they are prefetched by the walker.
+   */
+  private object RrdpRepositoryRegistration extends NotifyingCertificateRepositoryObjectFetcher.ListenerAdapter {
+    override def afterFetchSuccess(uri: URI, obj: CertificateRepositoryObject, result: ValidationResult) {
+      obj match {
+        case certificate: X509ResourceCertificate if certificate.isObjectIssuer => rrdpRepositories.register(certificate)
+        case _ =>
+      }
+    }
+  }
+
+  /**
+   * Collects into a concurrent map since the parallel walker notifies listeners from multiple threads.
+   */
+  private class RoaCollector(trustAnchor: TrustAnchorLocator, objects: collection.concurrent.Map[URI, ValidatedObject]) extends NotifyingCertificateRepositoryObjectFetcher.ListenerAdapter {
     override def afterFetchFailure(uri: URI, result: ValidationResult) {
-      objects += uri -> new InvalidObject(uri, result.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSet)
+      objects.put(uri, new InvalidObject(uri, result.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSet))
     }
 
     override def afterFetchSuccess(uri: URI, obj: CertificateRepositoryObject, result: ValidationResult) {
-      objects += uri -> new ValidObject(uri, result.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSet, obj)
+      objects.put(uri, new ValidObject(uri, result.getAllValidationChecksForLocation(new ValidationLocation(uri)).asScala.toSet, obj))
+    }
+  }
+
+  /**
+   * Reuses the validated manifest entries of publication points whose manifest, issuing certificate and entries did
+   * not change or expire since the previous run. The manifest itself (and thereby its CRL) is always validated again.
+   */
+  private class IncrementalValidation(publicationPoints: ValidatedPublicationPoints, objects: collection.concurrent.Map[URI, ValidatedObject]) extends PublicationPointCache {
+    private[this] val now = new DateTime
+    private[this] val visited = TrieMap.empty[URI, Boolean]
+    private[this] val reused = new AtomicInteger
+
+    override def reuse(context: CertificateRepositoryObjectValidationContext, manifest: ManifestCms): java.util.List[CertificateRepositoryObjectValidationContext] = {
+      val manifestUri = context.getManifestURI
+      visited.put(manifestUri, true)
+      publicationPoints.get(manifestUri).filter(_.isUnchanged(context, manifest, now)) match {
+        case Some(publicationPoint) =>
+          publicationPoint.objects.foreach { case (uri, validatedObject) => objects.putIfAbsent(uri, validatedObject) }
+          reused.incrementAndGet()
+          val childContexts = publicationPoint.childContexts(context)
+          childContexts.foreach(child => rrdpRepositories.register(child.getCertificate))
+          childContexts.asJava
+        case None =>
+          null
+      }
+    }
+
+    override def processed(context: CertificateRepositoryObjectValidationContext, manifest: ManifestCms) {
+      val entries = manifest.getFileNames.asScala.toSeq.map(fileName => context.getRepositoryURI.resolve(fileName))
+      val entryObjects = entries.flatMap(uri => objects.get(uri).map(uri -> _)).toMap
+      val publicationPoint = if (entryObjects.size == entries.size) ValidatedPublicationPoint(context, manifest, entryObjects) else None
+      publicationPoints.update(context.getManifestURI, publicationPoint)
+    }
+
+    def finish() {
+      publicationPoints.retain(visited.keySet)
+      logger.info("Reused " + reused.get + " of " + visited.size + " unchanged publication points for " + trustAnchorLocator.getCaName)
     }
   }
 }
@@ -347,15 +514,19 @@ trait MeasureRsyncExecution extends ValidationProcess {
   private object RsyncExecution extends NotifyingCertificateRepositoryObjectFetcher.ListenerAdapter {
     override def afterPrefetchFailure(uri: URI, result: ValidationResult) {
       update("rsync.prefetch.failure", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_PREFETCH_VALIDATION_METRIC, result)
+      update("rsync.prefetch.failure", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_PREFETCH_QUEUE_WAIT_METRIC, result)
     }
     override def afterPrefetchSuccess(uri: URI, result: ValidationResult) {
       update("rsync.prefetch.success", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_PREFETCH_VALIDATION_METRIC, result)
+      update("rsync.prefetch.success", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_PREFETCH_QUEUE_WAIT_METRIC, result)
     }
     override def afterFetchFailure(uri: URI, result: ValidationResult) {
       update("rsync.fetch.file.failure", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_FETCH_FILE_VALIDATION_METRIC, result)
+      update("rsync.fetch.file.failure", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_FETCH_FILE_QUEUE_WAIT_METRIC, result)
     }
     override def afterFetchSuccess(uri: URI, obj: CertificateRepositoryObject, result: ValidationResult) {
       update("rsync.fetch.file.success", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_FETCH_FILE_VALIDATION_METRIC, result)
+      update("rsync.fetch.file.success", uri, RsyncRpkiRepositoryObjectFetcher.RSYNC_FETCH_FILE_QUEUE_WAIT_METRIC, result)
     }
 
     private[this] def update(callback: String, uri: URI, name: String, result: ValidationResult) {
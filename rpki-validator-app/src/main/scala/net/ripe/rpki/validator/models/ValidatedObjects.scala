@@ -58,7 +58,18 @@ case class ValidObject(uri: URI, checks: Set[ValidationCheck], repositoryObject:
   override val isValid = true
 }
 
-class ValidatedObjects(val all: Map[TrustAnchorLocator, Seq[ValidatedObject]]) {
+/**
+ * @param knownRtrPrefixes the already known prefixes of trust anchors whose objects did not change.
+ */
+class ValidatedObjects(val all: Map[TrustAnchorLocator, Seq[ValidatedObject]], knownRtrPrefixes: Map[TrustAnchorLocator, Set[RtrPrefix]]) {
+  def this(all: Map[TrustAnchorLocator, Seq[ValidatedObject]]) = this(all, Map.empty)
+
+  val rtrPrefixesByTrustAnchor: Map[TrustAnchorLocator, Set[RtrPrefix]] = all.map {
+    case (locator, validatedObjects) => locator -> knownRtrPrefixes.getOrElse(locator, ValidatedObjects.rtrPrefixes(locator, validatedObjects))
+  }
+
+  def rtrPrefixes(locator: TrustAnchorLocator): Set[RtrPrefix] = rtrPrefixesByTrustAnchor.getOrElse(locator, Set.empty)
+
   def validationStatusCounts: Map[TrustAnchorLocator, Map[ValidationStatus, Int]] = for ((locator, validatedObjects) <- all) yield {
     locator -> validatedObjects.groupBy(_.validationStatus).map(p => p._1 -> p._2.size)
   }
@@ -74,11 +85,11 @@ class ValidatedObjects(val all: Map[TrustAnchorLocator, Seq[ValidatedObject]]) {
   }
 
   def update(locator: TrustAnchorLocator, validatedObjects: Seq[ValidatedObject]) = {
-    new ValidatedObjects(all.updated(locator, validatedObjects))
+    new ValidatedObjects(all.updated(locator, validatedObjects), rtrPrefixesByTrustAnchor - locator)
   }
 
   def removeTrustAnchor(locator: TrustAnchorLocator) = {
-    new ValidatedObjects(all.filterKeys(key => !key.equals(locator)))
+    new ValidatedObjects(all.filterKeys(key => !key.equals(locator)), rtrPrefixesByTrustAnchor - locator)
   }
 
 }
@@ -89,4 +100,14 @@ object ValidatedObjects {
   def apply(trustAnchors: TrustAnchors): ValidatedObjects = {
     new ValidatedObjects(trustAnchors.all.map(ta => ta.locator -> Seq.empty[ValidatedObject])(collection.breakOut))
   }
+
+  private def rtrPrefixes(locator: TrustAnchorLocator, validatedObjects: Seq[ValidatedObject]): Set[RtrPrefix] = {
+    val prefixes = for {
+      ValidObject(_, _, roa: RoaCms) <- validatedObjects
+      roaPrefix <- roa.getPrefixes.asScala
+    } yield {
+      RtrPrefix(roa.getAsn, roaPrefix.getPrefix, Java.toOption(roaPrefix.getMaximumLength), Option(locator))
+    }
+    prefixes.toSet
+  }
 }
@@ -0,0 +1,122 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package models
+
+import java.net.URI
+import scala.collection.concurrent.TrieMap
+import akka.util.ByteString
+import org.joda.time.DateTime
+import net.ripe.ipresource.IpResourceSet
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms
+import net.ripe.rpki.commons.crypto.cms.roa.RoaCms
+import net.ripe.rpki.commons.crypto.crl.X509Crl
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate
+import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext
+
+/**
+ * The validated manifest entries of a publication point, together with everything that determines whether they are
+ * still valid: the manifest hash, the issuing certificate (and its, possibly inherited, resources) and the earliest
+ * expiry of the manifest and its entries.
+ */
+case class ValidatedPublicationPoint(manifestHash: ByteString, location: URI, certificate: X509ResourceCertificate, resources: IpResourceSet, validUntil: DateTime, objects: Map[URI, ValidatedObject]) {
+
+  def isUnchanged(context: CertificateRepositoryObjectValidationContext, manifest: ManifestCms, now: DateTime) = {
+    now.isBefore(validUntil) &&
+      location == context.getLocation &&
+      certificate == context.getCertificate &&
+      resources == context.getResources &&
+      manifestHash == ValidatedPublicationPoint.hash(manifest)
+  }
+
+  def childContexts(context: CertificateRepositoryObjectValidationContext): Seq[CertificateRepositoryObjectValidationContext] = {
+    objects.values.toSeq.collect {
+      case ValidObject(uri, _, certificate: X509ResourceCertificate) if certificate.isObjectIssuer => context.createChildContext(uri, certificate)
+    }
+  }
+}
+
+object ValidatedPublicationPoint {
+  private[models] def hash(manifest: ManifestCms) = ByteString(ManifestCms.hashContents(manifest.getEncoded))
+
+  /**
+   * Only publication points with exclusively valid entries are remembered, since invalid entries (for example
+   * missing files) may become valid without a new manifest being published.
+   */
+  def apply(context: CertificateRepositoryObjectValidationContext, manifest: ManifestCms, objects: Map[URI, ValidatedObject]): Option[ValidatedPublicationPoint] = {
+    val allValid = objects.values.forall(_.isValid)
+    if (!allValid) {
+      None
+    } else {
+      val expiryTimes = manifestExpiry(manifest) +: objects.values.toSeq.collect { case ValidObject(_, _, obj) => expiry(obj) }.flatten
+      val validUntil = expiryTimes.reduceLeft((a, b) => if (a.isBefore(b)) a else b)
+      Some(ValidatedPublicationPoint(hash(manifest), context.getLocation, context.getCertificate, context.getResources, validUntil, objects))
+    }
+  }
+
+  private def manifestExpiry(manifest: ManifestCms) = {
+    if (manifest.getNextUpdateTime.isBefore(manifest.getNotValidAfter)) manifest.getNextUpdateTime else manifest.getNotValidAfter
+  }
+
+  private def expiry(obj: CertificateRepositoryObject): Option[DateTime] = obj match {
+    case certificate: X509ResourceCertificate => Some(certificate.getValidityPeriod.getNotValidAfter)
+    case roa: RoaCms => Some(roa.getValidityPeriod.getNotValidAfter)
+    case manifest: ManifestCms => Some(manifestExpiry(manifest))
+    case crl: X509Crl => Some(crl.getNextUpdateTime)
+    case _ => None
+  }
+}
+
+/**
+ * Remembers the validated publication points of a trust anchor between validation runs, keyed by manifest URI. Safe
+ * for use by the parallel walker.
+ */
+class ValidatedPublicationPoints {
+  private val publicationPoints = TrieMap.empty[URI, ValidatedPublicationPoint]
+
+  def get(manifestUri: URI): Option[ValidatedPublicationPoint] = publicationPoints.get(manifestUri)
+
+  def update(manifestUri: URI, publicationPoint: Option[ValidatedPublicationPoint]) {
+    publicationPoint match {
+      case Some(validated) => publicationPoints.put(manifestUri, validated)
+      case None => publicationPoints.remove(manifestUri)
+    }
+  }
+
+  /**
+   * Forgets all publication points that were not part of the last validation run.
+   */
+  def retain(manifestUris: collection.Set[URI]) {
+    publicationPoints.keys.filterNot(manifestUris.contains).foreach(publicationPoints.remove)
+  }
+
+  def size = publicationPoints.size
+}
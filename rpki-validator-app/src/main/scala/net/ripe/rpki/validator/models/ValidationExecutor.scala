@@ -0,0 +1,119 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.models
+
+import java.util.concurrent.{LinkedBlockingQueue, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import scala.collection.concurrent.TrieMap
+import grizzled.slf4j.Logging
+import net.ripe.rpki.validator.statistics.Metric
+
+/**
+ * Runs trust anchor validations on dedicated threads, so a long validation cannot starve the Akka dispatcher that
+ * serves the RTR server, the BGP preview and web requests.
+ *
+ * At most `parallelism` validations run at the same time, the others wait in order of submission. A trust anchor
+ * waits in the queue at most once, so a trust anchor that is submitted often cannot crowd out the others.
+ */
+class ValidationExecutor(parallelism: Int) extends Logging {
+  require(parallelism > 0, "validation parallelism must be positive")
+
+  private val executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+    new LinkedBlockingQueue[Runnable], ValidationExecutor.daemonThreads("validation"))
+
+  private val queued = TrieMap.empty[String, Long]
+  private val startedCount = new AtomicLong
+  private val waitTime = new AtomicLong
+  private val maxWaitTime = new AtomicLong
+
+  /**
+   * @return false when the trust anchor is already waiting to run.
+   */
+  def submit(trustAnchorName: String)(validation: => Unit): Boolean = {
+    val submittedAt = System.nanoTime
+    if (queued.putIfAbsent(trustAnchorName, submittedAt).isDefined) {
+      false
+    } else {
+      executor.execute(new Runnable {
+        override def run() {
+          queued.remove(trustAnchorName)
+          val waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime - submittedAt)
+          startedCount.incrementAndGet()
+          waitTime.addAndGet(waited)
+          updateMaximum(maxWaitTime, waited)
+          try {
+            validation
+          } catch {
+            case e: Exception => error("Validation of trust anchor " + trustAnchorName + " failed", e)
+          }
+        }
+      })
+      true
+    }
+  }
+
+  def queueDepth: Int = executor.getQueue.size
+
+  def runningCount: Int = executor.getActiveCount
+
+  def metrics(now: Long): Seq[Metric] = Vector(
+    Metric("validation.executor.parallelism", parallelism.toString, now),
+    Metric("validation.executor.queued", queueDepth.toString, now),
+    Metric("validation.executor.running", runningCount.toString, now),
+    Metric("validation.executor.started", startedCount.get.toString, now),
+    Metric("validation.executor.wait.total.ms", waitTime.get.toString, now),
+    Metric("validation.executor.wait.max.ms", maxWaitTime.get.toString, now))
+
+  def shutdown() {
+    executor.shutdownNow()
+  }
+
+  private def updateMaximum(maximum: AtomicLong, value: Long) {
+    var current = maximum.get
+    while (value > current && !maximum.compareAndSet(current, value)) current = maximum.get
+  }
+}
+
+object ValidationExecutor {
+  val DefaultParallelism = Runtime.getRuntime.availableProcessors / 2 max 1
+
+  /**
+   * Names the threads after the pool, and does not keep the JVM running.
+   */
+  def daemonThreads(poolName: String): ThreadFactory = new ThreadFactory {
+    private val count = new AtomicInteger
+
+    override def newThread(runnable: Runnable) = {
+      val thread = new Thread(runnable, poolName + "-" + count.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
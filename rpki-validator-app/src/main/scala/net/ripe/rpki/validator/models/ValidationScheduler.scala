@@ -0,0 +1,169 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.models
+
+import scala.collection.mutable
+import scala.concurrent.ExecutionContext
+import scala.concurrent.duration._
+import scala.util.Random
+import akka.actor.{Cancellable, Scheduler}
+import org.joda.time.DateTime
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms
+import net.ripe.rpki.commons.crypto.cms.roa.RoaCms
+import net.ripe.rpki.commons.crypto.crl.X509Crl
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate
+
+/**
+ * Starts the validation of each trust anchor at its next update time. Pending runs are kept in a priority queue and a
+ * single timer is armed for the earliest one, so trust anchors are validated when their objects become stale instead
+ * of being polled.
+ */
+class ValidationScheduler(scheduler: Scheduler, startValidation: Seq[String] => Unit)(implicit executor: ExecutionContext) {
+
+  private val due = mutable.Map.empty[String, Long]
+  private val queue = mutable.PriorityQueue.empty[(Long, String)](Ordering.by[(Long, String), Long](_._1).reverse)
+  private var timer: Option[(Long, Cancellable)] = None
+
+  /**
+   * Schedules the next validation of the trust anchor, replacing a previously scheduled one.
+   */
+  def schedule(trustAnchorName: String, nextUpdate: DateTime): Unit = synchronized {
+    due(trustAnchorName) = nextUpdate.getMillis
+    queue.enqueue((nextUpdate.getMillis, trustAnchorName))
+    arm()
+  }
+
+  /**
+   * Schedules the next validation of an idle and enabled trust anchor. Trust anchors that are running are scheduled
+   * when they finish, disabled trust anchors when they are enabled again.
+   */
+  def scheduleNextValidation(trustAnchor: TrustAnchor): Unit = trustAnchor.status match {
+    case Idle(nextUpdate, _) if trustAnchor.enabled => schedule(trustAnchor.name, nextUpdate)
+    case _ =>
+  }
+
+  def pending: Map[String, DateTime] = synchronized {
+    due.map { case (name, at) => name -> new DateTime(at) }.toMap
+  }
+
+  private def arm() {
+    while (queue.nonEmpty && !isCurrent(queue.head)) queue.dequeue()
+
+    if (queue.isEmpty) {
+      timer.foreach(_._2.cancel())
+      timer = None
+    } else if (timer.forall(_._1 != queue.head._1)) {
+      val at = queue.head._1
+      timer.foreach(_._2.cancel())
+      timer = Some(at -> scheduler.scheduleOnce((at - System.currentTimeMillis max 0).millis)(fire()))
+    }
+  }
+
+  private def fire() {
+    val trustAnchorNames = synchronized {
+      timer = None
+      val now = System.currentTimeMillis
+      val names = Seq.newBuilder[String]
+      while (queue.nonEmpty && queue.head._1 <= now) {
+        val entry = queue.dequeue()
+        if (isCurrent(entry)) {
+          due -= entry._2
+          names += entry._2
+        }
+      }
+      arm()
+      names.result()
+    }
+    if (trustAnchorNames.nonEmpty) startValidation(trustAnchorNames)
+  }
+
+  private def isCurrent(entry: (Long, String)) = due.get(entry._2) == Some(entry._1)
+}
+
+object ValidationScheduler {
+  val MinimumInterval = 5.minutes
+  val MaximumInterval = 4.hours
+  val InitialBackoff = 10.minutes
+  val MaximumBackoff = 4.hours
+
+  /**
+   * Runs are delayed by a random part of their interval, up to a maximum, so trust anchors that were validated
+   * together do not stay in lockstep.
+   */
+  val JitterFraction = 0.1
+  val MaximumJitter = 5.minutes
+
+  private val SharedRandom = new Random
+
+  /**
+   * The next update after a successful validation is when the first validated object becomes stale or expires, but
+   * no later than the maximum interval.
+   */
+  def nextUpdateAfterSuccess(now: DateTime, validatedObjects: Iterable[ValidatedObject], random: Random = SharedRandom): DateTime = {
+    val untilExpiry = earliestExpiry(now, validatedObjects).map(_.getMillis - now.getMillis)
+    val interval = untilExpiry.getOrElse(MaximumInterval.toMillis) min MaximumInterval.toMillis max MinimumInterval.toMillis
+    withJitter(now, interval, random)
+  }
+
+  /**
+   * Backs off exponentially with the number of consecutive failures, including this one.
+   */
+  def nextUpdateAfterFailure(now: DateTime, failures: Int, random: Random = SharedRandom): DateTime = {
+    val backoff = InitialBackoff.toMillis << ((failures - 1) max 0 min 16) min MaximumBackoff.toMillis
+    withJitter(now, backoff, random)
+  }
+
+  /**
+   * @return the earliest time after now at which a valid manifest or CRL becomes stale or a certificate expires.
+   *         Objects that are already stale are ignored, validating again sooner does not refresh them.
+   */
+  def earliestExpiry(now: DateTime, validatedObjects: Iterable[ValidatedObject]): Option[DateTime] = {
+    validatedObjects.iterator.flatMap {
+      case ValidObject(_, _, repositoryObject) => expiry(repositoryObject)
+      case _ => None
+    }.filter(_.isAfter(now)).reduceOption((a, b) => if (a.isBefore(b)) a else b)
+  }
+
+  private def expiry(repositoryObject: CertificateRepositoryObject): Option[DateTime] = repositoryObject match {
+    case manifest: ManifestCms =>
+      val notValidAfter = manifest.getCertificate.getValidityPeriod.getNotValidAfter
+      Some(if (manifest.getNextUpdateTime.isBefore(notValidAfter)) manifest.getNextUpdateTime else notValidAfter)
+    case crl: X509Crl => Some(crl.getNextUpdateTime)
+    case certificate: X509ResourceCertificate => Some(certificate.getValidityPeriod.getNotValidAfter)
+    case roa: RoaCms => Some(roa.getCertificate.getValidityPeriod.getNotValidAfter)
+    case _ => None
+  }
+
+  private def withJitter(now: DateTime, interval: Long, random: Random): DateTime = {
+    val maximumJitter = (interval * JitterFraction).toLong min MaximumJitter.toMillis
+    now.plus(interval + (random.nextDouble * maximumJitter).toLong)
+  }
+}
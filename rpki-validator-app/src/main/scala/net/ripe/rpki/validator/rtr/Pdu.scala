@@ -37,6 +37,7 @@ import net.ripe.ipresource._
 import java.math.BigInteger
 import scala.util.Random
 import java.net.SocketAddress
+import models.RtrPrefix
 
 sealed trait Pdu {
   def protocolVersion: Byte = 0
@@ -106,7 +107,7 @@ case class CacheResponsePdu(sessionId: Pdu.SessionId) extends Pdu {
  */
 case class IPv4PrefixAnnouncePdu(ipv4PrefixStart: Ipv4Address, prefixLength: Byte, maxLength: Byte, asn: Asn) extends Pdu {
   override def pduType = PduTypes.IPv4Prefix
-  override def length = 20
+  override def length = Pdus.IPv4PrefixAnnouncePduLength
   override def toPrettyContentString: String = "Add IPv4 Prefix (prefix: " + ipv4PrefixStart + "/" + prefixLength + ", maxLength: " + maxLength + ", Asn: " + asn + ")"
 }
 
@@ -115,11 +116,29 @@ case class IPv4PrefixAnnouncePdu(ipv4PrefixStart: Ipv4Address, prefixLength: Byt
  */
 case class IPv6PrefixAnnouncePdu(ipv6PrefixStart: Ipv6Address, prefixLength: Byte, maxLength: Byte, asn: Asn) extends Pdu {
   override def pduType = PduTypes.IPv6Prefix
-  override def length = 32
+  override def length = Pdus.IPv6PrefixAnnouncePduLength
   override def toPrettyContentString: String = "Add IPv6 Prefix (prefix: " + ipv6PrefixStart + "/" + prefixLength + ", maxLength: " + maxLength + ", Asn: " + asn + ")"
 
 }
 
+/**
+ * IPv4 prefix PDU with the withdraw flag, see: http://tools.ietf.org/html/draft-ietf-sidr-rpki-rtr-16#section-5.5
+ */
+case class IPv4PrefixWithdrawPdu(ipv4PrefixStart: Ipv4Address, prefixLength: Byte, maxLength: Byte, asn: Asn) extends Pdu {
+  override def pduType = PduTypes.IPv4Prefix
+  override def length = Pdus.IPv4PrefixAnnouncePduLength
+  override def toPrettyContentString: String = "Withdraw IPv4 Prefix (prefix: " + ipv4PrefixStart + "/" + prefixLength + ", maxLength: " + maxLength + ", Asn: " + asn + ")"
+}
+
+/**
+ * IPv6 prefix PDU with the withdraw flag, see: http://tools.ietf.org/html/draft-ietf-sidr-rpki-rtr-16#section-5.6
+ */
+case class IPv6PrefixWithdrawPdu(ipv6PrefixStart: Ipv6Address, prefixLength: Byte, maxLength: Byte, asn: Asn) extends Pdu {
+  override def pduType = PduTypes.IPv6Prefix
+  override def length = Pdus.IPv6PrefixAnnouncePduLength
+  override def toPrettyContentString: String = "Withdraw IPv6 Prefix (prefix: " + ipv6PrefixStart + "/" + prefixLength + ", maxLength: " + maxLength + ", Asn: " + asn + ")"
+}
+
 /**
  * See: http://tools.ietf.org/html/draft-ietf-sidr-rpki-rtr-16#section-5.7
  */
@@ -187,13 +206,19 @@ object PduTypes {
 
 object Pdus {
   val SupportedProtocol: Byte = 0
+  val IPv4PrefixAnnouncePduLength = 20
+  val IPv6PrefixAnnouncePduLength = 32
+  val AnnounceFlag: Byte = 1
+  val WithdrawFlag: Byte = 0
 
   def encode(pdu: Pdu): Array[Byte] = {
     val buffer = ChannelBuffers.buffer(ByteOrder.BIG_ENDIAN, pdu.length)
-    buffer.writeByte(pdu.protocolVersion)
-    buffer.writeByte(pdu.pduType)
-    buffer.writeShort(pdu.headerShort)
-    buffer.writeInt(pdu.length)
+    write(buffer, pdu)
+    buffer.array()
+  }
+
+  def write(buffer: ChannelBuffer, pdu: Pdu): Unit = {
+    writeHeader(buffer, pdu.protocolVersion, pdu.pduType, pdu.headerShort, pdu.length)
 
     pdu match {
       case SerialNotifyPdu(_, serial) => buffer.writeInt(serial.toInt)
@@ -201,13 +226,54 @@ object Pdus {
       case errorPdu @ ErrorPdu(errorCode, causingPdu, errorText) => writeErrorPduPayload(buffer, errorPdu, causingPdu)
       case ResetQueryPdu() => // no payload
       case CacheResponsePdu(_) => // no payload (sessionId is in header)
-      case IPv4PrefixAnnouncePdu(prefix, length, maxLength, asn) => writeIPv4PrefixAnnouncePduPayload(buffer, prefix, length, maxLength, asn)
-      case IPv6PrefixAnnouncePdu(prefix, length, maxLength, asn) => writeIPv6PrefixAnnouncePduPayload(buffer, prefix, length, maxLength, asn)
+      case IPv4PrefixAnnouncePdu(prefix, length, maxLength, asn) => writeIPv4PrefixPduPayload(buffer, AnnounceFlag, prefix, length, maxLength, asn)
+      case IPv6PrefixAnnouncePdu(prefix, length, maxLength, asn) => writeIPv6PrefixPduPayload(buffer, AnnounceFlag, prefix, length, maxLength, asn)
+      case IPv4PrefixWithdrawPdu(prefix, length, maxLength, asn) => writeIPv4PrefixPduPayload(buffer, WithdrawFlag, prefix, length, maxLength, asn)
+      case IPv6PrefixWithdrawPdu(prefix, length, maxLength, asn) => writeIPv6PrefixPduPayload(buffer, WithdrawFlag, prefix, length, maxLength, asn)
       case EndOfDataPdu(_, serial) => buffer.writeInt(serial.toInt)
       case CacheResetPdu() => // no payload
     }
+  }
 
-    buffer.array()
+  def prefixAnnouncement(rtrPrefix: RtrPrefix): Pdu = {
+    val prefixLength = rtrPrefix.prefix.getPrefixLength.toByte
+    val maxLength = rtrPrefix.effectiveMaxPrefixLength.toByte
+    rtrPrefix.prefix.getStart match {
+      case ipv4: Ipv4Address => IPv4PrefixAnnouncePdu(ipv4, prefixLength, maxLength, rtrPrefix.asn)
+      case ipv6: Ipv6Address => IPv6PrefixAnnouncePdu(ipv6, prefixLength, maxLength, rtrPrefix.asn)
+    }
+  }
+
+  def prefixWithdrawal(rtrPrefix: RtrPrefix): Pdu = {
+    val prefixLength = rtrPrefix.prefix.getPrefixLength.toByte
+    val maxLength = rtrPrefix.effectiveMaxPrefixLength.toByte
+    rtrPrefix.prefix.getStart match {
+      case ipv4: Ipv4Address => IPv4PrefixWithdrawPdu(ipv4, prefixLength, maxLength, rtrPrefix.asn)
+      case ipv6: Ipv6Address => IPv6PrefixWithdrawPdu(ipv6, prefixLength, maxLength, rtrPrefix.asn)
+    }
+  }
+
+  /**
+   * Same bytes as writing the prefixAnnouncement PDU, without creating it.
+   */
+  def writePrefixAnnouncement(buffer: ChannelBuffer, rtrPrefix: RtrPrefix): Unit = {
+    val prefixLength = rtrPrefix.prefix.getPrefixLength.toByte
+    val maxLength = rtrPrefix.effectiveMaxPrefixLength.toByte
+    rtrPrefix.prefix.getStart match {
+      case ipv4: Ipv4Address =>
+        writeHeader(buffer, SupportedProtocol, PduTypes.IPv4Prefix, 0, IPv4PrefixAnnouncePduLength)
+        writeIPv4PrefixPduPayload(buffer, AnnounceFlag, ipv4, prefixLength, maxLength, rtrPrefix.asn)
+      case ipv6: Ipv6Address =>
+        writeHeader(buffer, SupportedProtocol, PduTypes.IPv6Prefix, 0, IPv6PrefixAnnouncePduLength)
+        writeIPv6PrefixPduPayload(buffer, AnnounceFlag, ipv6, prefixLength, maxLength, rtrPrefix.asn)
+    }
+  }
+
+  private def writeHeader(buffer: ChannelBuffer, protocolVersion: Byte, pduType: Byte, headerShort: Short, length: Int): Unit = {
+    buffer.writeByte(protocolVersion)
+    buffer.writeByte(pduType)
+    buffer.writeShort(headerShort)
+    buffer.writeInt(length)
   }
 
   def fromByteArray(buffer: ChannelBuffer): Either[BadData, Pdu] = try {
@@ -237,18 +303,6 @@ object Pdus {
       Left(BadData(ErrorPdu.CorruptData, buffer.array()))
   }
 
-  private def convertToPrependedByteArray(value: BigInteger, bytesNeeded: Int): Array[Byte] = {
-    var valueBytes = value.toByteArray
-
-    // sometimes we get extra zero bytes in front... strange... what am I missing? Sign bit?
-
-    if (valueBytes.size > 1 && valueBytes.head == 0) valueBytes = valueBytes.drop(1)
-
-    var extraBytesNeeded = bytesNeeded - valueBytes.length
-    var prependBytes = new Array[Byte](extraBytesNeeded)
-    prependBytes ++ valueBytes
-  }
-
   private def writeErrorPduPayload(buffer: ChannelBuffer, errorPdu: ErrorPdu, causingPdu: Array[Byte]): Unit = {
     buffer.writeInt(causingPdu.length)
     buffer.writeBytes(causingPdu)
@@ -256,22 +310,24 @@ object Pdus {
     buffer.writeBytes(errorPdu.errorTextBytes)
   }
 
-  private def writeIPv4PrefixAnnouncePduPayload(buffer: ChannelBuffer, prefix: Ipv4Address, length: Byte, maxLength: Byte, asn: Asn): Unit = {
-    buffer.writeByte(1)
+  private def writeIPv4PrefixPduPayload(buffer: ChannelBuffer, flags: Byte, prefix: Ipv4Address, length: Byte, maxLength: Byte, asn: Asn): Unit = {
+    buffer.writeByte(flags)
     buffer.writeByte(length)
     buffer.writeByte(maxLength)
     buffer.writeByte(0)
-    buffer.writeBytes(convertToPrependedByteArray(prefix.getValue, 4))
-    buffer.writeBytes(convertToPrependedByteArray(asn.getValue, 4))
+    buffer.writeInt(prefix.getValue.intValue)
+    buffer.writeInt(asn.getValue.intValue)
   }
 
-  private def writeIPv6PrefixAnnouncePduPayload(buffer: ChannelBuffer, prefix: Ipv6Address, length: Byte, maxLength: Byte, asn: Asn): Unit = {
-    buffer.writeByte(1)
+  private def writeIPv6PrefixPduPayload(buffer: ChannelBuffer, flags: Byte, prefix: Ipv6Address, length: Byte, maxLength: Byte, asn: Asn): Unit = {
+    buffer.writeByte(flags)
     buffer.writeByte(length)
     buffer.writeByte(maxLength)
     buffer.writeByte(0)
-    buffer.writeBytes(convertToPrependedByteArray(prefix.getValue, 16))
-    buffer.writeBytes(convertToPrependedByteArray(asn.getValue, 4))
+    val value = prefix.getValue
+    buffer.writeLong(value.shiftRight(64).longValue)
+    buffer.writeLong(value.longValue)
+    buffer.writeInt(asn.getValue.intValue)
   }
 
   private def parseSerialNotifyPdu(buffer: ChannelBuffer, sessionId: Pdu.SessionId): Right[Nothing, SerialNotifyPdu] = {
@@ -304,21 +360,21 @@ object Pdus {
 
   private def parseIPv4PrefixPdu(buffer: ChannelBuffer): Either[BadData, Pdu] = {
     buffer.readByte() match {
-      case 1 =>
+      case flags if flags == AnnounceFlag || flags == WithdrawFlag =>
         val length = buffer.readByte()
         val maxLenght = buffer.readByte()
         buffer.skipBytes(1)
         val prefix = new Ipv4Address(buffer.readUnsignedInt())
         val asn = new Asn(buffer.readUnsignedInt())
-        Right(IPv4PrefixAnnouncePdu(prefix, length, maxLenght, asn))
+        if (flags == AnnounceFlag) Right(IPv4PrefixAnnouncePdu(prefix, length, maxLenght, asn))
+        else Right(IPv4PrefixWithdrawPdu(prefix, length, maxLenght, asn))
       case _ =>
-        // TODO: Support withdrawals
         Left(BadData(ErrorPdu.UnsupportedPduType, buffer.array))
     }
   }
   private def parseIPv6PrefixPdu(buffer: ChannelBuffer): Either[BadData, Pdu] = {
     buffer.readByte() match {
-      case 1 =>
+      case flags if flags == AnnounceFlag || flags == WithdrawFlag =>
         val length = buffer.readByte()
         val maxLenght = buffer.readByte()
         buffer.skipBytes(1)
@@ -328,9 +384,9 @@ object Pdus {
 
         buffer.skipBytes(16)
         val asn = new Asn(buffer.readUnsignedInt())
-        Right(IPv6PrefixAnnouncePdu(prefix, length, maxLenght, asn))
+        if (flags == AnnounceFlag) Right(IPv6PrefixAnnouncePdu(prefix, length, maxLenght, asn))
+        else Right(IPv6PrefixWithdrawPdu(prefix, length, maxLenght, asn))
       case _ =>
-        // TODO: Support withdrawals
         Left(BadData(ErrorPdu.UnsupportedPduType, buffer.array))
     }
   }
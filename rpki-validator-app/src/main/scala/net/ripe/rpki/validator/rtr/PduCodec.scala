@@ -56,23 +56,26 @@ class PduEncoder extends OneToOneEncoder {
   val logger = Logger("RTR")
 
   override def encode(context: ChannelHandlerContext, channel: Channel, msg: Object): Object = msg match {
-    case responsePdus: Seq[_] =>
-      val pdus = responsePdus.collect { case pdu: Pdu => pdu }
-
-      val length = pdus.foldLeft(0) { _ + _.length }
-      val buffer = ChannelBuffers.buffer(ByteOrder.BIG_ENDIAN, length)
+    case response: ResetResponse =>
+      // Logging every prefix pdu of a full reset response is only useful when debugging
+      logger.info(RtrPduLogEntry(channel.getRemoteAddress, Right(response.cacheResponse), Server))
+      if (logger.isDebugEnabled) {
+        response.snapshot.prefixes.foreach { prefix => logger.debug(RtrPduLogEntry(channel.getRemoteAddress, Right(Pdus.prefixAnnouncement(prefix)), Server)) }
+      } else {
+        logger.info(channel.getRemoteAddress + " <- " + response.snapshot.prefixes.size + " prefix announcements")
+      }
+      logger.info(RtrPduLogEntry(channel.getRemoteAddress, Right(response.endOfData), Server))
+      new ResetResponseInput(response)
 
-      for (pdu <- pdus) {
-        buffer.writeBytes(Pdus.encode(pdu))
+    case PduResponse(pdus) =>
+      encodePdus(channel, pdus)
 
-        // Hardcoded to "server" for now -> only the server sends lists of pdus
-        logger.info(RtrPduLogEntry(channel.getRemoteAddress, Right(pdu), Server))
-      }
-      buffer
+    case responsePdus: Seq[_] =>
+      encodePdus(channel, responsePdus.collect { case pdu: Pdu => pdu })
 
     case pdu: Pdu =>
       val buffer = ChannelBuffers.buffer(ByteOrder.BIG_ENDIAN, pdu.length)
-      buffer.writeBytes(Pdus.encode(pdu))
+      Pdus.write(buffer, pdu)
       logger.info(RtrPduLogEntry(channel.getRemoteAddress, Right(pdu), Server))
       buffer
 
@@ -81,6 +84,19 @@ class PduEncoder extends OneToOneEncoder {
       buffer.writeBytes(bytes)
       buffer
   }
+
+  private def encodePdus(channel: Channel, pdus: Seq[Pdu]) = {
+    val length = pdus.foldLeft(0) { _ + _.length }
+    val buffer = ChannelBuffers.buffer(ByteOrder.BIG_ENDIAN, length)
+
+    for (pdu <- pdus) {
+      Pdus.write(buffer, pdu)
+
+      // Hardcoded to "server" for now -> only the server sends lists of pdus
+      logger.info(RtrPduLogEntry(channel.getRemoteAddress, Right(pdu), Server))
+    }
+    buffer
+  }
 }
 
 sealed trait Sender
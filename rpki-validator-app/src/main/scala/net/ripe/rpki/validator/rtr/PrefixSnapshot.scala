@@ -0,0 +1,145 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package rtr
+
+import java.nio.ByteOrder
+import org.jboss.netty.buffer.ChannelBuffer
+import org.jboss.netty.buffer.ChannelBuffers
+import net.ripe.ipresource.Ipv4Address
+import models.RtrPrefix
+
+/**
+ * The prefix announcement PDUs of a cache serial, encoded once (when first needed) and shared read-only by all sessions.
+ *
+ * Prefixes are reduced to what is sent to routers (asn, prefix and max length), so the same prefix from different
+ * trust anchors is announced only once.
+ */
+class PrefixSnapshot(val serial: Long, val prefixSet: Set[RtrPrefix]) {
+  val announcements: Set[RtrPrefix] = prefixSet.map(PrefixSnapshot.announcement)
+
+  val prefixes: IndexedSeq[RtrPrefix] = announcements.toIndexedSeq
+
+  private[this] lazy val encoded: Array[Byte] = {
+    val length = prefixes.foldLeft(0) { (length, prefix) => length + PrefixSnapshot.announcementLength(prefix) }
+    val buffer = ChannelBuffers.buffer(ByteOrder.BIG_ENDIAN, length)
+    prefixes.foreach(Pdus.writePrefixAnnouncement(buffer, _))
+    buffer.array
+  }
+
+  def encodedLength = encoded.length
+
+  /**
+   * Wraps the shared bytes without copying. Every caller gets its own buffer (and reader index), the bytes must not be
+   * modified.
+   */
+  def encodedPdus: ChannelBuffer = ChannelBuffers.wrappedBuffer(encoded)
+}
+
+object PrefixSnapshot {
+  private def announcement(prefix: RtrPrefix) = RtrPrefix(prefix.asn, prefix.prefix, Some(prefix.effectiveMaxPrefixLength))
+
+  private def announcementLength(prefix: RtrPrefix) = prefix.prefix.getStart match {
+    case _: Ipv4Address => Pdus.IPv4PrefixAnnouncePduLength
+    case _ => Pdus.IPv6PrefixAnnouncePduLength
+  }
+}
+
+/**
+ * The changes between two serials. Applying a delta after another gives the delta between the first and last serial.
+ */
+case class PrefixDelta(fromSerial: Long, toSerial: Long, announced: Set[RtrPrefix], withdrawn: Set[RtrPrefix]) {
+  def andThen(next: PrefixDelta) = {
+    require(next.fromSerial == toSerial, "deltas are not consecutive")
+    PrefixDelta(fromSerial, next.toSerial,
+      announced = (announced -- next.withdrawn) ++ (next.announced -- withdrawn),
+      withdrawn = (withdrawn -- next.announced) ++ (next.withdrawn -- announced))
+  }
+
+  def size = announced.size + withdrawn.size
+
+  def pdus: Seq[Pdu] = withdrawn.toSeq.map(Pdus.prefixWithdrawal) ++ announced.toSeq.map(Pdus.prefixAnnouncement)
+}
+
+object PrefixDelta {
+  def apply(from: PrefixSnapshot, to: PrefixSnapshot): PrefixDelta =
+    PrefixDelta(from.serial, to.serial, announced = to.announcements -- from.announcements, withdrawn = from.announcements -- to.announcements)
+}
+
+/**
+ * Keeps the snapshot of the current cache serial, it is only rebuilt when the serial or the prefixes change. The deltas
+ * between the last maxDeltas serials are kept to answer serial queries.
+ *
+ * Only serials that were handed out to routers (through a snapshot) are kept, intermediate serials nobody asked for are
+ * merged into a single delta.
+ */
+class PrefixSnapshots(getCurrentCacheSerial: () => Int, getCurrentRtrPrefixes: () => Set[RtrPrefix], maxDeltas: Int = PrefixSnapshots.DefaultMaxDeltas) {
+  private[this] var snapshot: Option[PrefixSnapshot] = None
+  private[this] var deltas = Vector.empty[PrefixDelta]
+
+  def current: PrefixSnapshot = synchronized {
+    val serial = getCurrentCacheSerial()
+    val prefixes = getCurrentRtrPrefixes()
+    snapshot match {
+      case Some(current) if current.serial == serial && current.prefixSet == prefixes =>
+        current
+      case previous =>
+        val built = new PrefixSnapshot(serial, prefixes)
+        deltas = previous match {
+          case Some(previous) if previous.serial < serial =>
+            (deltas :+ PrefixDelta(previous, built)) takeRight maxDeltas
+          case _ =>
+            // The serial did not increase, so routers may have other prefixes for it: they need a reset
+            Vector.empty
+        }
+        snapshot = Some(built)
+        built
+    }
+  }
+
+  /**
+   * The changes since the given serial up to the current serial, None when the serial is unknown or too old.
+   */
+  def deltaSince(serial: Long): Option[PrefixDelta] = synchronized {
+    val latest = current
+    if (serial == latest.serial) {
+      Some(PrefixDelta(serial, serial, Set.empty, Set.empty))
+    } else {
+      deltas.indexWhere(_.fromSerial == serial) match {
+        case -1 => None
+        case index => Some(deltas.drop(index).reduceLeft(_ andThen _))
+      }
+    }
+  }
+}
+
+object PrefixSnapshots {
+  val DefaultMaxDeltas = 100
+}
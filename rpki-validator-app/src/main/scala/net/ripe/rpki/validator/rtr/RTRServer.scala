@@ -36,6 +36,7 @@ import java.util.concurrent.TimeUnit
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder
 import org.jboss.netty.channel._
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory
+import org.jboss.netty.handler.stream.ChunkedWriteHandler
 import org.jboss.netty.handler.timeout.ReadTimeoutHandler
 import org.jboss.netty.util.Timer
 import org.jboss.netty.util.HashedWheelTimer
@@ -94,6 +95,7 @@ class RTRServer(port: Int, noCloseOnError: Boolean, noNotify: Boolean, getCurren
             /*lengthFieldLength*/ 4,
             /*lengthAdjustment*/ -8,
             /*initialBytesToStrip*/ 0),
+          new ChunkedWriteHandler,
           new PduEncoder,
           new PduDecoder,
           serverHandler)
@@ -149,13 +151,13 @@ class RTRServerHandler(noCloseOnError: Boolean = false, clients: RtrSessions[Soc
 
     // decode and process
     val requestPdu = event.getMessage.asInstanceOf[Either[BadData, Pdu]]
-    val responsePdus: Seq[Pdu] = clients.responseForRequest(clientAddress, requestPdu)
+    val response: RtrResponse = clients.responseForRequest(clientAddress, requestPdu)
 
     // respond
-    val channelFuture = event.getChannel.write(responsePdus)
+    val channelFuture = event.getChannel.write(response)
 
     if (!noCloseOnError) {
-      responsePdus.last match {
+      response.lastPdu match {
         case ErrorPdu(errorCode, _, _) if (ErrorPdu.isFatal(errorCode)) =>
           channelFuture.addListener(ChannelFutureListener.CLOSE)
         case _ =>
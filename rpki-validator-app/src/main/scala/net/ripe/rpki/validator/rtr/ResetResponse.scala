@@ -0,0 +1,79 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package rtr
+
+import org.jboss.netty.buffer.ChannelBuffers
+import org.jboss.netty.handler.stream.ChunkedInput
+
+/**
+ * Response to a reset query, with the prefix announcements of a shared snapshot. The PduEncoder streams the
+ * pre-encoded snapshot with a ResetResponseInput, so no announcement PDUs are created.
+ */
+class ResetResponse(sessionId: Pdu.SessionId, val snapshot: PrefixSnapshot) extends RtrResponse {
+  val cacheResponse = CacheResponsePdu(sessionId = sessionId)
+  val endOfData = EndOfDataPdu(sessionId = sessionId, serial = snapshot.serial)
+
+  override def lastPdu = endOfData
+}
+
+/**
+ * Writes the response as slices of the shared snapshot, so nothing is copied or encoded per client. The
+ * ChunkedWriteHandler only asks for the next chunk when the channel is writable.
+ */
+class ResetResponseInput(response: ResetResponse, chunkSize: Int = ResetResponseInput.DefaultChunkSize) extends ChunkedInput {
+  private[this] val encodedPdus = response.snapshot.encodedPdus
+  private[this] var cacheResponseWritten = false
+  private[this] var endOfDataWritten = false
+
+  override def hasNextChunk = !endOfDataWritten
+
+  override def isEndOfInput = endOfDataWritten
+
+  override def nextChunk(): AnyRef = {
+    if (!cacheResponseWritten) {
+      cacheResponseWritten = true
+      ChannelBuffers.wrappedBuffer(Pdus.encode(response.cacheResponse))
+    } else if (encodedPdus.readable) {
+      encodedPdus.readSlice(encodedPdus.readableBytes min chunkSize)
+    } else if (!endOfDataWritten) {
+      endOfDataWritten = true
+      ChannelBuffers.wrappedBuffer(Pdus.encode(response.endOfData))
+    } else {
+      null
+    }
+  }
+
+  override def close() {}
+}
+
+object ResetResponseInput {
+  val DefaultChunkSize = 64 * 1024
+}
@@ -29,8 +29,6 @@
  */
 package net.ripe.rpki.validator.rtr
 
-import net.ripe.ipresource.{Ipv6Address, Ipv4Address, Asn, IpRange}
-import net.ripe.rpki.validator.models.RtrPrefix
 import java.net.InetSocketAddress
 import net.ripe.rpki.validator.lib.ValueAndTime
 import org.jboss.netty.handler.codec.frame.{TooLongFrameException, CorruptedFrameException}
@@ -38,7 +36,7 @@ import org.jboss.netty.handler.timeout.ReadTimeoutException
 
 class RtrSessionHandler[T] (remoteAddress: T,
                         getCurrentCacheSerial: () => Int,
-                        getCurrentRtrPrefixes: () => Set[RtrPrefix],
+                        prefixSnapshots: PrefixSnapshots,
                         getCurrentSessionId: () => Pdu.SessionId) {
 
   // assume we only get InetSocketAddress; other types will thow exception
@@ -49,13 +47,13 @@ class RtrSessionHandler[T] (remoteAddress: T,
   def disconnect() { sessionData.connected(false)}
   def serialNotify(pdu: Pdu) { sessionData.lastPduSent = pdu }
 
-  def processRequest(request: Either[BadData, Pdu]): Seq[Pdu] = {
+  def processRequest(request: Either[BadData, Pdu]): RtrResponse = {
     request match {
       case Left(BadData(errorCode, content)) =>
         handleBadData(errorCode, content)
       case Right(pdu) =>
         val result = processRequestPdu(pdu)
-        sessionData.lastPduSent = result.last
+        sessionData.lastPduSent = result.lastPdu
         result
     }
   }
@@ -72,14 +70,14 @@ class RtrSessionHandler[T] (remoteAddress: T,
     result
   }
 
-  private def handleBadData(errorCode: Int, content: Array[Byte]): List[Pdu] = {
+  private def handleBadData(errorCode: Int, content: Array[Byte]): RtrResponse = {
     sessionData.lastPduReceived = "Bad data (error code: %d)".format(errorCode)
     val pdu = ErrorPdu(errorCode, content, "")
     sessionData.lastPduSent = pdu
-    List(pdu)
+    PduResponse(List(pdu))
   }
 
-  private def processRequestPdu(pdu: Pdu) = {
+  private def processRequestPdu(pdu: Pdu): RtrResponse = {
     pdu match {
       case ResetQueryPdu() =>
         sessionData.lastPduReceived = "ResetQuery"
@@ -89,44 +87,31 @@ class RtrSessionHandler[T] (remoteAddress: T,
         processSerialQuery(sessionId, serial)
       case _ =>
         sessionData.lastPduReceived = "Invalid Request"
-        List(ErrorPdu(ErrorPdu.InvalidRequest, Array.empty, ""))
+        PduResponse(List(ErrorPdu(ErrorPdu.InvalidRequest, Array.empty, "")))
     }
   }
 
 
 
-  private def processResetQuery: Seq[Pdu] = {
+  private def processResetQuery: RtrResponse = {
     getCurrentCacheSerial.apply() match {
-      case 0 => List(ErrorPdu(ErrorPdu.NoDataAvailable, Array.empty, ""))
+      case 0 => PduResponse(List(ErrorPdu(ErrorPdu.NoDataAvailable, Array.empty, "")))
       case _ =>
-        var responsePdus: Vector[Pdu] = Vector.empty
-        responsePdus = responsePdus :+ CacheResponsePdu(sessionId = getCurrentSessionId.apply())
-
-        getCurrentRtrPrefixes().foreach { rtrPrefix =>
-
-          val prefix: IpRange = rtrPrefix.prefix
-          val prefixLength: Int = prefix.getPrefixLength
-          val maxLength: Int = rtrPrefix.maxPrefixLength.getOrElse(prefixLength)
-          val asn: Asn = rtrPrefix.asn
-
-          prefix.getStart match {
-            case ipv4: Ipv4Address =>
-              responsePdus = responsePdus :+ IPv4PrefixAnnouncePdu(ipv4, prefixLength.toByte, maxLength.toByte, asn)
-            case ipv6: Ipv6Address =>
-              responsePdus = responsePdus :+ IPv6PrefixAnnouncePdu(ipv6, prefixLength.toByte, maxLength.toByte, asn)
-            case _ => assert(false)
-          }
-        }
-        responsePdus :+ EndOfDataPdu(sessionId = getCurrentSessionId.apply(), serial = getCurrentCacheSerial.apply())
+        new ResetResponse(sessionId = getCurrentSessionId(), snapshot = prefixSnapshots.current)
     }
   }
 
 
-  private def processSerialQuery(sessionId: Short, serial: Long) = {
-    if (sessionId == getCurrentSessionId.apply() && serial == getCurrentCacheSerial.apply()) {
-      List(CacheResponsePdu(sessionId = sessionId), EndOfDataPdu(sessionId = sessionId, serial = serial))
+  private def processSerialQuery(sessionId: Short, serial: Long): RtrResponse = {
+    if (sessionId != getCurrentSessionId.apply()) {
+      PduResponse(List(CacheResetPdu()))
     } else {
-      List(CacheResetPdu())
+      prefixSnapshots.deltaSince(serial) match {
+        case Some(delta) =>
+          PduResponse((CacheResponsePdu(sessionId = sessionId) +: delta.pdus) :+ EndOfDataPdu(sessionId = sessionId, serial = delta.toSerial))
+        case None =>
+          PduResponse(List(CacheResetPdu()))
+      }
     }
   }
 }
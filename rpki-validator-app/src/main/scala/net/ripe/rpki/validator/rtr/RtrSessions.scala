@@ -42,10 +42,12 @@ class RtrSessions[T] (
 
   private val handlers = mutable.HashMap[T, RtrSessionHandler[T]]()
 
+  private val prefixSnapshots = new PrefixSnapshots(getCurrentCacheSerial, getCurrentRtrPrefixes)
+
   def allClientData = handlers.values.map(_.sessionData)
 
   def connect(id: T) {
-    val handler = handlers.getOrElseUpdate(id, new RtrSessionHandler[T](id, getCurrentCacheSerial, getCurrentRtrPrefixes, getCurrentSessionId))
+    val handler = handlers.getOrElseUpdate(id, new RtrSessionHandler[T](id, getCurrentCacheSerial, prefixSnapshots, getCurrentSessionId))
     handler.connect()
   }
 
@@ -0,0 +1,116 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package store
+
+import java.util.concurrent.atomic.AtomicLong
+import akka.util.ByteString
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject
+import net.ripe.rpki.commons.validation.ValidationCheck
+import statistics.Metric
+
+/**
+ * Memory bounded LRU cache of decoded repository objects, keyed by the hash of their encoded content. Since the key is
+ * the content hash, entries never become stale and the cache can be shared by all trust anchors.
+ *
+ * The weight of an entry is an estimate of the heap taken by the decoded object, see `estimatedWeight`, so the
+ * maximum applies to the heap rather than to the encoded objects.
+ */
+class DecodedObjectCache(maxBytes: Long) {
+  import DecodedObjectCache._
+
+  private[this] val entries = new java.util.LinkedHashMap[ByteString, CachedObject](1024, 0.75f, true)
+  private[this] var bytes = 0L
+
+  private[this] val hits = new AtomicLong
+  private[this] val misses = new AtomicLong
+  private[this] val evictions = new AtomicLong
+
+  def get(hash: ByteString): Option[CachedObject] = {
+    val cached = entries.synchronized { Option(entries.get(hash)) }
+    (if (cached.isDefined) hits else misses).incrementAndGet()
+    cached
+  }
+
+  def put(hash: ByteString, cached: CachedObject): Unit = {
+    if (cached.weight <= maxBytes) entries.synchronized {
+      val previous = entries.put(hash, cached)
+      if (previous != null) bytes -= previous.weight
+      bytes += cached.weight
+      evict()
+    }
+  }
+
+  private[this] def evict() {
+    val iterator = entries.values.iterator
+    while (bytes > maxBytes && iterator.hasNext) {
+      bytes -= iterator.next.weight
+      iterator.remove()
+      evictions.incrementAndGet()
+    }
+  }
+
+  def size: Int = entries.synchronized { entries.size }
+
+  def weight: Long = entries.synchronized { bytes }
+
+  def hitCount: Long = hits.get
+
+  def missCount: Long = misses.get
+
+  def evictionCount: Long = evictions.get
+
+  def metrics(now: Long): Seq[Metric] = Vector(
+    Metric("object.cache.decoded.hits", hitCount.toString, now),
+    Metric("object.cache.decoded.misses", missCount.toString, now),
+    Metric("object.cache.decoded.evictions", evictionCount.toString, now),
+    Metric("object.cache.decoded.size", size.toString, now),
+    Metric("object.cache.decoded.bytes", weight.toString, now))
+
+  override def toString = "size: %d, bytes: %d, hits: %d, misses: %d, evictions: %d".format(size, weight, hitCount, missCount, evictionCount)
+}
+
+object DecodedObjectCache {
+  val DefaultMaxBytes = 64L * 1024 * 1024
+
+  /**
+   * A decoded object keeps its encoded form, and the certificate it contains keeps another copy along with the parsed
+   * ASN.1 structures, so it takes a multiple of its encoded size. This factor is an estimate, not a measurement.
+   */
+  val DecodedSizeFactor = 4
+
+  def estimatedWeight(encodedLength: Int): Int = encodedLength * DecodedSizeFactor
+
+  /**
+   * A decoded object together with the (passed) checks that were recorded while decoding it, so these can be
+   * reported again when the object is served from the cache.
+   */
+  case class CachedObject(repositoryObject: CertificateRepositoryObject, checks: Seq[ValidationCheck], weight: Int)
+}
@@ -31,14 +31,20 @@ package net.ripe.rpki.validator
 package store
 
 import java.net.URI
+import java.sql.PreparedStatement
 import java.sql.ResultSet
-import org.apache.commons.codec.binary.Base64
 import org.apache.commons.dbcp.BasicDataSource
 import org.joda.time.DateTime
-import org.springframework.dao.DuplicateKeyException
 import org.springframework.dao.EmptyResultDataAccessException
+import org.springframework.jdbc.core.BatchPreparedStatementSetter
 import org.springframework.jdbc.core.RowMapper
 import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.SingleColumnRowMapper
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.TransactionStatus
+import org.springframework.transaction.support.TransactionCallbackWithoutResult
+import org.springframework.transaction.support.TransactionTemplate
+import scala.collection.JavaConverters._
 import com.googlecode.flyway.core.Flyway
 import akka.util.ByteString
 import javax.sql.DataSource
@@ -46,32 +52,49 @@ import models.StoredRepositoryObject
 import org.joda.time.DateTimeZone
 
 /**
- * Used to store/retrieve consistent sets of rpki objects seen for certificate authorities
+ * Used to store/retrieve consistent sets of rpki objects seen for certificate authorities. Hashes and objects are
+ * stored as binary columns, the hash being the primary key.
  */
 class RepositoryObjectStore(datasource: DataSource) {
 
   val template: JdbcTemplate = new JdbcTemplate(datasource)
 
+  private val transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(datasource))
+
   def put(retrievedObject: StoredRepositoryObject): Unit = {
-    val updateOrder: java.lang.Long = template.queryForLong("SELECT NEXTVAL('update_order_seq')")
-    try {
-      template.update("insert into retrieved_objects (hash, uri, encoded_object, expires, update_order) values (?, ?, ?, ?, ?)",
-        Base64.encodeBase64String(retrievedObject.hash.toArray),
-        retrievedObject.uri.toString,
-        Base64.encodeBase64String(retrievedObject.binaryObject.toArray),
-        new java.sql.Timestamp(retrievedObject.expires.getMillis),
-        updateOrder)
-    } catch {
-      case e: DuplicateKeyException =>
-        // Object already exists, update the last seen time only.
-        template.update("update retrieved_objects set update_order = ? where hash = ?",
-          updateOrder,
-          Base64.encodeBase64String(retrievedObject.hash.toArray))
-    }
+    put(Seq(retrievedObject))
   }
 
+  /**
+   * Stores all objects in a single transaction using one batch of MERGE statements. Objects that are already stored
+   * (same hash) get the new URI and update order. The update order values for the whole batch are allocated with a
+   * single query.
+   */
   def put(retrievedObjects: Seq[StoredRepositoryObject]): Unit = {
-    retrievedObjects.foreach(put(_))
+    val objects = retrievedObjects.toIndexedSeq
+    if (objects.nonEmpty) {
+      transactionTemplate.execute(new TransactionCallbackWithoutResult {
+        override def doInTransactionWithoutResult(status: TransactionStatus) {
+          val updateOrders = allocateUpdateOrders(objects.size)
+          template.batchUpdate("merge into retrieved_objects (hash, uri, encoded_object, expires, update_order) key (hash) values (?, ?, ?, ?, ?)", new BatchPreparedStatementSetter {
+            override def getBatchSize = objects.size
+            override def setValues(ps: PreparedStatement, i: Int) {
+              val retrievedObject = objects(i)
+              ps.setBytes(1, retrievedObject.hash.toArray)
+              ps.setString(2, retrievedObject.uri.toString)
+              ps.setBytes(3, retrievedObject.binaryObject.toArray)
+              ps.setTimestamp(4, new java.sql.Timestamp(retrievedObject.expires.getMillis))
+              ps.setLong(5, updateOrders(i))
+            }
+          })
+        }
+      })
+    }
+  }
+
+  private def allocateUpdateOrders(count: Int): IndexedSeq[Long] = {
+    val values = template.query("SELECT NEXTVAL('update_order_seq') FROM SYSTEM_RANGE(1, " + count + ")", new SingleColumnRowMapper(classOf[java.lang.Long]))
+    values.asScala.map(_.longValue).sorted.toIndexedSeq
   }
 
   def purgeExpired(maxStaleDays: Int = 0): Unit = {
@@ -89,10 +112,25 @@ class RepositoryObjectStore(datasource: DataSource) {
     getOptionalResult(selectString, selectArgs)
   }
 
+  /**
+   * Like getLatestByUrl, but only the hash, so the encoded object need not be read when it is already decoded.
+   */
+  def getLatestHashByUrl(url: URI): Option[ByteString] = {
+    val hashes = template.query("select hash from retrieved_objects where uri = ? order by update_order desc limit 1", Array[Object](url.toString), new SingleColumnRowMapper(classOf[Array[Byte]]))
+    hashes.asScala.headOption.map(ByteString(_))
+  }
+
+  /**
+   * Like getByHash, but only checks that the object is stored, without reading it.
+   */
+  def contains(hash: Array[Byte]): Boolean = {
+    val found = template.query("select 1 from retrieved_objects where hash = ? limit 1", Array[Object](hash), new SingleColumnRowMapper(classOf[java.lang.Integer]))
+    !found.isEmpty
+  }
+
   def getByHash(hash: Array[Byte]) = {
-    val encodedHash = Base64.encodeBase64String(hash)
     val selectString = "select * from retrieved_objects where hash = ?"
-    val selectArgs = Array[Object](encodedHash)
+    val selectArgs = Array[Object](hash)
     getOptionalResult(selectString, selectArgs)
   }
 
@@ -107,9 +145,9 @@ class RepositoryObjectStore(datasource: DataSource) {
   private class StoredObjectMapper extends RowMapper[StoredRepositoryObject] {
     override def mapRow(rs: ResultSet, rowNum: Int) = {
       StoredRepositoryObject(
-        hash = ByteString(Base64.decodeBase64(rs.getString("hash"))),
+        hash = ByteString(rs.getBytes("hash")),
         uri = URI.create(rs.getString("uri")),
-        binaryObject = ByteString(Base64.decodeBase64(rs.getString("encoded_object"))),
+        binaryObject = ByteString(rs.getBytes("encoded_object")),
         expires = new DateTime(rs.getTimestamp("expires")).withZone(DateTimeZone.UTC))
     }
   }
@@ -31,14 +31,16 @@ package net.ripe.rpki.validator
 package views
 
 import lib.NumberResources._
-import bgp.preview.BgpValidatedAnnouncement
+import bgp.preview.{BgpValidatedAnnouncement, ValidatedAnnouncements}
 import net.ripe.ipresource.IpRange
 import net.ripe.ipresource.Asn
 import scala.xml.Xhtml
+import net.ripe.rpki.validator.models.RouteValidity
 import net.ripe.rpki.validator.models.RouteValidity._
 import net.ripe.rpki.validator.models.RouteValidity.RouteValidity
 
 abstract class BgpPreviewTableData(validatedAnnouncements: IndexedSeq[BgpValidatedAnnouncement]) extends DataTableJsonView[BgpValidatedAnnouncement] {
+  import BgpPreviewTableData._
 
   private object RouteValidityOrdering extends Ordering[RouteValidity] {
     override def compare(x: RouteValidity, y: RouteValidity) = x.toString compareTo y.toString
@@ -92,8 +94,50 @@ abstract class BgpPreviewTableData(validatedAnnouncements: IndexedSeq[BgpValidat
           searchString.isEmpty ||
             announcement.asn.toString.contains(searchString) ||
             announcement.prefix.toString.contains(searchString) ||
-            announcement.validity.toString.equalsIgnoreCase(searchString) ||
-            searchString.equalsIgnoreCase("invalid") && (announcement.validity.equals(InvalidAsn) || announcement.validity.equals(InvalidLength))
+            matchesValidity(announcement.validity, searchString)
+      }
+    }
+  }
+
+  private def matchesValidity(validity: RouteValidity, searchString: String) =
+    validity.toString.equalsIgnoreCase(searchString) ||
+      searchString.equalsIgnoreCase("invalid") && (validity.equals(InvalidAsn) || validity.equals(InvalidLength))
+
+  /**
+   * Announcements stored in columns are indexed and filtered on the columns, so only the announcements on the requested
+   * page are materialized.
+   */
+  override protected def buildIndex(records: IndexedSeq[BgpValidatedAnnouncement]) = {
+    records match {
+      case columns: ValidatedAnnouncements =>
+        val announcements = columns.announcements
+        val resources = new ResourceIndex(columns.length, announcements.asnValueAt, announcements.isIpv6At, announcements.highAt, announcements.lowAt, announcements.prefixLengthAt)
+        new DataTableIndex[BgpValidatedAnnouncement](columns, {
+          case 0 => sortByKey(columns.length, announcements.asnValueAt)
+          case 1 => resources.byPrefix
+          case 2 => sortByKey(columns.length, index => ValidityRank(columns.validityAt(index).id))
+          case column => sys.error("unknown sort column " + column)
+        }, resources.search)
+      case _ =>
+        super.buildIndex(records)
+    }
+  }
+
+  override protected def indexFilter(records: IndexedSeq[BgpValidatedAnnouncement], searchCriterium: Any) = {
+    records match {
+      case columns: ValidatedAnnouncements if searchCriterium != "" => Some(columnFilter(columns, searchCriterium))
+      case _ => super.indexFilter(records, searchCriterium)
+    }
+  }
+
+  private def columnFilter(columns: ValidatedAnnouncements, searchCriterium: Any): Int => Boolean = {
+    searchCriterium match {
+      case range: IpRange => columns.overlapping(range)
+      case asn: Asn => columns.originatedBy(asn)
+      case searchString: String => { index =>
+          columns.announcements.asnAt(index).toString.contains(searchString) ||
+            columns.announcements(index).prefix.toString.contains(searchString) ||
+            matchesValidity(columns.validityAt(index), searchString)
       }
     }
   }
@@ -109,3 +153,25 @@ abstract class BgpPreviewTableData(validatedAnnouncements: IndexedSeq[BgpValidat
 
   override def getAllRecords() = validatedAnnouncements
 }
+
+object BgpPreviewTableData {
+
+  /**
+   * Sorts the indexes on a key of at most 32 bits, packed together with the index in a long so a primitive sort can be
+   * used.
+   */
+  private def sortByKey(count: Int, key: Int => Long): Array[Int] = {
+    val packed = Array.tabulate(count)(index => key(index) << 31 | index)
+    java.util.Arrays.sort(packed)
+    packed.map(p => (p & Int.MaxValue).toInt)
+  }
+
+  /**
+   * Position of each validity, by id, when sorted on name like `RouteValidityOrdering`.
+   */
+  private val ValidityRank: Array[Long] = {
+    val rank = new Array[Long](RouteValidity.maxId)
+    for ((validity, position) <- RouteValidity.values.toSeq.sortBy(_.toString).zipWithIndex) rank(validity.id) = position
+    rank
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package views
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/**
+ * Indexes over one version of the records of a data table, so a page can be selected without sorting all records on
+ * every request. The order of each column is computed on first use and kept until the data changes.
+ *
+ * @param sortColumn computes the indexes of the records in ascending order of a column
+ * @param searchIndex finds the indexes of the records matching a search criterium, or `None` if the criterium is not
+ *                    indexed and all records have to be scanned
+ */
+class DataTableIndex[R](val records: IndexedSeq[R], sortColumn: Int => Array[Int], searchIndex: Any => Option[Array[Int]] = _ => None) {
+
+  private val sortedColumns = mutable.Map.empty[Int, Array[Int]]
+  private val rankedColumns = mutable.Map.empty[Int, Array[Int]]
+
+  def size = records.size
+
+  def search(searchCriterium: Any): Option[Array[Int]] = searchIndex(searchCriterium)
+
+  /**
+   * @return the indexes of the records in ascending order of the column.
+   */
+  def sorted(column: Int): Array[Int] = sortedColumns.synchronized {
+    sortedColumns.getOrElseUpdate(column, sortColumn(column))
+  }
+
+  /**
+   * @return the position of each record in ascending order of the column.
+   */
+  def ranks(column: Int): Array[Int] = rankedColumns.synchronized {
+    rankedColumns.getOrElseUpdate(column, {
+      val order = sorted(column)
+      val ranks = new Array[Int](order.length)
+      for (position <- 0 until order.length) ranks(order(position)) = position
+      ranks
+    })
+  }
+
+  /**
+   * Walks the records in column order to count the records matching the predicate and collect the requested page.
+   * Without a predicate the page is taken directly from the column order.
+   *
+   * @return the number of matching records and the indexes of the records on the page.
+   */
+  def scan(column: Int, descending: Boolean, matches: Option[Int => Boolean], start: Int, length: Int): (Int, Array[Int]) = {
+    val order = sorted(column)
+    val end = start + (length max 0)
+    def at(position: Int) = order(if (descending) order.length - 1 - position else position)
+
+    matches match {
+      case None =>
+        (order.length, (start until (end min order.length)).map(at).toArray)
+      case Some(predicate) =>
+        val page = Array.newBuilder[Int]
+        var count = 0
+        for (position <- 0 until order.length) {
+          val index = at(position)
+          if (predicate(index)) {
+            if (count >= start && count < end) page += index
+            count += 1
+          }
+        }
+        (count, page.result())
+    }
+  }
+
+  /**
+   * Selects the requested page from the found records by their position in column order, keeping only the first
+   * records of the page in a bounded heap instead of sorting all found records.
+   *
+   * @return the indexes of the records on the page.
+   */
+  def select(found: Array[Int], column: Int, descending: Boolean, start: Int, length: Int): Array[Int] = {
+    val order = sorted(column)
+    val ranks = this.ranks(column)
+    def position(rank: Int) = if (descending) order.length - 1 - rank else rank
+
+    val positions = DataTableIndex.smallest(found.map(index => position(ranks(index))), start + (length max 0))
+    positions.drop(start).map(p => order(position(p))).toArray
+  }
+}
+
+object DataTableIndex {
+
+  /**
+   * Sorts the indexes of the records with the ordering. The sort is stable, like sorting the records themselves.
+   */
+  def sortBy[R](records: IndexedSeq[R], ordering: Ordering[R]): Array[Int] = {
+    records.indices.sortBy(records)(ordering).toArray
+  }
+
+  /**
+   * @return the smallest `count` values in ascending order.
+   */
+  def smallest[A](values: Seq[A], count: Int)(implicit ordering: Ordering[A]): Seq[A] = {
+    if (count >= values.size) {
+      values.sorted
+    } else if (count <= 0) {
+      Seq.empty
+    } else {
+      val heap = new java.util.PriorityQueue[A](count, ordering.reverse)
+      for (value <- values) {
+        if (heap.size < count) {
+          heap.add(value)
+        } else if (ordering.lt(value, heap.peek)) {
+          heap.poll()
+          heap.add(value)
+        }
+      }
+      heap.asScala.toSeq.sorted
+    }
+  }
+
+  /**
+   * Keeps the index of the latest version of the data, identified by reference.
+   */
+  class Latest[R] {
+    @volatile private var latest: Option[(AnyRef, DataTableIndex[R])] = None
+
+    def apply(version: AnyRef)(build: => DataTableIndex[R]): DataTableIndex[R] = latest match {
+      case Some((current, index)) if current eq version =>
+        index
+      case _ =>
+        val index = build
+        latest = Some((version, index))
+        index
+    }
+  }
+}
@@ -41,6 +41,11 @@ trait DataTableJsonView[R <: Any] {
   protected def ordering(sortColumn: Int): Ordering[R]
   protected def getValuesForRecord(record: R): List[String]
 
+  /**
+   * The index for the current version of the records, or `None` to filter and sort all records on every request.
+   */
+  protected def getIndex(): Option[DataTableIndex[R]] = None
+
   private val iDisplayStart = getParam("iDisplayStart").toInt
   private val iDisplayLength = getParam("iDisplayLength").toInt
   private val sSearch = getParam("sSearch").trim().toUpperCase
@@ -51,18 +56,70 @@ trait DataTableJsonView[R <: Any] {
   private def searchCriterium = parseIpRange(sSearch).toOption orElse parseAsn(sSearch).toOption getOrElse sSearch
 
   def renderJson: String = {
-    val allRecords = getAllRecords()
-    val filteredRecords = filterRecords(allRecords, searchCriterium)
-    val sortedRecords = sortRecords(filteredRecords, sortCol)
-    val displayRecords = paginate(sortedRecords)
+    getIndex() match {
+      case Some(index) =>
+        val criterium = searchCriterium
+        val (displayCount, page) = index.search(criterium) match {
+          case Some(found) =>
+            (found.length, index.select(found, sortCol, sortOrder == "desc", iDisplayStart, iDisplayLength))
+          case None =>
+            index.scan(sortCol, sortOrder == "desc", indexFilter(index.records, criterium), iDisplayStart, iDisplayLength)
+        }
+        renderPage(index.size, displayCount, page.toIndexedSeq.map(index.records))
+      case None =>
+        val allRecords = getAllRecords()
+        val filteredRecords = filterRecords(allRecords, searchCriterium)
+        renderPage(allRecords.size, filteredRecords.size, selectPage(filteredRecords))
+    }
+  }
 
+  private def renderPage(totalCount: Int, displayCount: Int, displayRecords: IndexedSeq[R]): String = {
     compact(render(JObject(List(
       JField("sEcho", JInt(getParam("sEcho").toInt)),
-      JField("iTotalRecords", JInt(allRecords.size)),
-      JField("iTotalDisplayRecords", JInt(filteredRecords.size)),
+      JField("iTotalRecords", JInt(totalCount)),
+      JField("iTotalDisplayRecords", JInt(displayCount)),
       JField("aaData", makeJArray(displayRecords))))))
   }
 
+  /**
+   * Builds the index over all records, with the order of each column taken from `ordering`. Tables that are searched
+   * by resources add a search index.
+   */
+  protected def buildIndex(records: IndexedSeq[R]): DataTableIndex[R] = {
+    new DataTableIndex(records, column => DataTableIndex.sortBy(records, ordering(column)))
+  }
+
+  /**
+   * @return a predicate on the index of a record for the search criterium, or `None` if all records match.
+   */
+  protected def indexFilter(records: IndexedSeq[R], searchCriterium: Any): Option[Int => Boolean] = {
+    searchCriterium match {
+      case "" => None
+      case _ =>
+        val matches = filter(searchCriterium)
+        Some(index => matches(records(index)))
+    }
+  }
+
+  /**
+   * Selects the requested page without sorting the records after it.
+   */
+  private def selectPage(records: IndexedSeq[R]): IndexedSeq[R] = {
+    val end = iDisplayStart + (iDisplayLength max 0)
+    if (end >= records.size) {
+      paginate(sortRecords(records, sortCol))
+    } else {
+      val recordOrdering = order(ordering(sortCol))
+      val positionOrdering = new Ordering[Int] {
+        override def compare(x: Int, y: Int) = {
+          val rc = recordOrdering.compare(records(x), records(y))
+          if (rc != 0) rc else x compare y
+        }
+      }
+      DataTableIndex.smallest(records.indices, end)(positionOrdering).drop(iDisplayStart).map(records).toIndexedSeq
+    }
+  }
+
   private def paginate(records: IndexedSeq[R]) = {
     records.drop(iDisplayStart).take(iDisplayLength)
   }
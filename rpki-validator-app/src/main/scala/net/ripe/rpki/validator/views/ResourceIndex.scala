@@ -0,0 +1,153 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package views
+
+import java.util.Arrays
+import bgp.preview.AddressBits
+import net.ripe.ipresource.{Asn, IpRange}
+
+/**
+ * Search index over records that have an origin ASN and a prefix, for tables that are searched by ASN or by
+ * overlapping IP range. The records are accessed by index through primitive columns.
+ */
+class ResourceIndex(size: Int, asnAt: Int => Long, isIpv6At: Int => Boolean, highAt: Int => Long, lowAt: Int => Long, prefixLengthAt: Int => Int) {
+
+  /**
+   * The indexes of the records in prefix order: IPv4 before IPv6, on start address and then from less to more specific.
+   */
+  val byPrefix: Array[Int] = {
+    def unsigned(bits: Long) = bits ^ Long.MinValue
+    val ordering = new Ordering[Int] {
+      override def compare(x: Int, y: Int) = {
+        if (isIpv6At(x) != isIpv6At(y)) isIpv6At(x) compare isIpv6At(y)
+        else if (highAt(x) != highAt(y)) unsigned(highAt(x)) compare unsigned(highAt(y))
+        else if (lowAt(x) != lowAt(y)) unsigned(lowAt(x)) compare unsigned(lowAt(y))
+        else prefixLengthAt(x) compare prefixLengthAt(y)
+      }
+    }
+    (0 until size).sorted(ordering).toArray
+  }
+
+  /**
+   * The ASN of each record packed together with its index, in ascending order.
+   */
+  private val byAsn: Array[Long] = {
+    val packed = Array.tabulate(size)(index => asnAt(index) << 31 | index)
+    Arrays.sort(packed)
+    packed
+  }
+
+  def search(searchCriterium: Any): Option[Array[Int]] = searchCriterium match {
+    case asn: Asn => Some(originatedBy(asn))
+    case range: IpRange => Some(overlapping(range))
+    case _ => None
+  }
+
+  def originatedBy(asn: Asn): Array[Int] = {
+    val value = asn.longValue
+    val found = Array.newBuilder[Int]
+    var position = firstPosition(byAsn.length, p => (byAsn(p) >>> 31) < value)
+    while (position < byAsn.length && (byAsn(position) >>> 31) == value) {
+      found += (byAsn(position) & Int.MaxValue).toInt
+      position += 1
+    }
+    found.result()
+  }
+
+  /**
+   * Finds the records with a prefix that starts within the range, followed by the less specific records that start
+   * before the range and contain its start. The latter can only start at the start of the range truncated to their
+   * prefix length, so each prefix length is a single lookup.
+   */
+  def overlapping(range: IpRange): Array[Int] = {
+    val ipv6 = AddressBits.isIpv6(range.getStart)
+    val startHigh = AddressBits.high(range.getStart)
+    val startLow = AddressBits.low(range.getStart)
+    val endHigh = AddressBits.high(range.getEnd)
+    val endLow = AddressBits.low(range.getEnd)
+
+    val found = Array.newBuilder[Int]
+    var position = firstPosition(size, p => compare(byPrefix(p), ipv6, startHigh, startLow, 0) < 0)
+    while (position < size && compare(byPrefix(position), ipv6, endHigh, endLow, Int.MaxValue) <= 0) {
+      found += byPrefix(position)
+      position += 1
+    }
+
+    for (length <- 0 until (if (ipv6) 128 else 32)) {
+      val high = startHigh & ~AddressBits.hostMask(64 - length)
+      val low = startLow & ~AddressBits.hostMask(128 - length)
+      if (high != startHigh || low != startLow) {
+        position = firstPosition(size, p => compare(byPrefix(p), ipv6, high, low, length) < 0)
+        while (position < size && compare(byPrefix(position), ipv6, high, low, length) == 0) {
+          found += byPrefix(position)
+          position += 1
+        }
+      }
+    }
+    found.result()
+  }
+
+  /**
+   * @return the first position for which `before` is false, given that it is true for all positions before it.
+   */
+  private def firstPosition(length: Int, before: Int => Boolean): Int = {
+    var from = 0
+    var to = length
+    while (from < to) {
+      val middle = (from + to) >>> 1
+      if (before(middle)) from = middle + 1 else to = middle
+    }
+    from
+  }
+
+  private def compare(index: Int, ipv6: Boolean, high: Long, low: Long, prefixLength: Int): Int = {
+    if (isIpv6At(index) != ipv6) isIpv6At(index) compare ipv6
+    else if (highAt(index) != high) (highAt(index) ^ Long.MinValue) compare (high ^ Long.MinValue)
+    else if (lowAt(index) != low) (lowAt(index) ^ Long.MinValue) compare (low ^ Long.MinValue)
+    else prefixLengthAt(index) compare prefixLength
+  }
+}
+
+object ResourceIndex {
+
+  /**
+   * Builds the index for records with an IP prefix, converting the prefixes to primitive columns first.
+   */
+  def apply(size: Int, asnAt: Int => Asn, prefixAt: Int => IpRange): ResourceIndex = {
+    val asns = Array.tabulate(size)(asnAt(_).longValue)
+    val prefixes = Array.tabulate(size)(prefixAt)
+    val ipv6 = prefixes.map(prefix => AddressBits.isIpv6(prefix.getStart))
+    val highs = prefixes.map(prefix => AddressBits.high(prefix.getStart))
+    val lows = prefixes.map(prefix => AddressBits.low(prefix.getStart))
+    val prefixLengths = prefixes.map(_.getPrefixLength)
+    new ResourceIndex(size, asns(_), ipv6(_), highs(_), lows(_), prefixLengths(_))
+  }
+}
@@ -65,6 +65,11 @@ abstract class RoaTableData(validatedObjects: ValidatedObjects) extends DataTabl
     }
   }
 
+  override protected def buildIndex(records: IndexedSeq[RtrPrefix]) = {
+    val resources = ResourceIndex(records.size, records(_).asn, records(_).prefix)
+    new DataTableIndex(records, column => DataTableIndex.sortBy(records, ordering(column)), resources.search)
+  }
+
   override def getValuesForRecord(record: RtrPrefix) = {
     List(record.asn.getValue.toString, record.prefix.toString, record.effectiveMaxPrefixLength.toString,
       record.trustAnchorLocator.map(_.getCaName).getOrElse(""))
@@ -34,7 +34,7 @@ import java.net.URI
 import grizzled.slf4j.Logging
 import net.ripe.rpki.commons.validation.{ValidationMessage, ValidationCheck}
 
-abstract class ValidationDetailsTableData (records: IndexedSeq[ValidatedObjectDetail]) extends DataTableJsonView[ValidatedObjectDetail] with Logging {
+abstract class ValidationDetailsTableData (records: => IndexedSeq[ValidatedObjectDetail]) extends DataTableJsonView[ValidatedObjectDetail] with Logging {
   
   override def getAllRecords() = records
 
@@ -256,4 +256,56 @@ class BgpPrefixOriginValidationControllerTest extends ScalatraFunSuite with Shou
                        |}""".stripMargin)
     }
   }
-}
\ No newline at end of file
+
+  test("should reflect a changed set of VRPs") {
+    testVrpObjects = Set((65001, "10.0.0.0/8"))
+    get(s"$basePath/AS65001/10.0.0.0/8") {
+      body should include("\"state\":\"Valid\"")
+    }
+
+    testVrpObjects = Set((65002, "10.0.0.0/8"))
+    get(s"$basePath/AS65001/10.0.0.0/8") {
+      body should include("\"state\":\"Invalid\"")
+    }
+  }
+
+  test("should validate a batch of routes") {
+    import net.liftweb.json._
+
+    testVrpObjects = Set((65001, "10.0.0.0/8", 20), (65002, "192.168.0.0/16"))
+
+    post(basePath, """{"routes": [
+                     |  {"asn": "AS65001", "prefix": "10.0.0.0/16"},
+                     |  {"asn": "AS65001", "prefix": "10.0.0.0/24"},
+                     |  {"asn": "AS65001", "prefix": "192.168.0.0/16"},
+                     |  {"asn": "AS65001", "prefix": "2001:db8::/32"}]}""".stripMargin.getBytes("UTF-8"), Map("Content-Type" -> "application/json")) {
+      status should be(200)
+      header("Content-Type") should be("text/json;charset=UTF-8")
+      val validatedRoutes = (parse(body) \ "validated_routes").children
+      validatedRoutes.map(route => (route \ "route" \ "prefix", route \ "validity" \ "state")) should be(List(
+        (JString("10.0.0.0/16"), JString("Valid")),
+        (JString("10.0.0.0/24"), JString("Invalid")),
+        (JString("192.168.0.0/16"), JString("Invalid")),
+        (JString("2001:db8::/32"), JString("NotFound"))))
+    }
+  }
+
+  test("should return BadRequest for a malformed batch of routes") {
+    post(basePath, "not json".getBytes("UTF-8")) {
+      status should be(400)
+      body should include("request body is not valid JSON")
+    }
+    post(basePath, """{"route": []}""".getBytes("UTF-8")) {
+      status should be(400)
+      body should include("request body must contain a \\\"routes\\\" array")
+    }
+    post(basePath, """{"routes": [{"asn": "AS65001"}]}""".getBytes("UTF-8")) {
+      status should be(400)
+      body should include("each route must have an")
+    }
+    post(basePath, """{"routes": [{"asn": "AS65001", "prefix": "10.0.0.0/33"}]}""".getBytes("UTF-8")) {
+      status should be(400)
+      body should include("'10.0.0.0/33' is not a valid IPv4 or IPv6 prefix")
+    }
+  }
+}
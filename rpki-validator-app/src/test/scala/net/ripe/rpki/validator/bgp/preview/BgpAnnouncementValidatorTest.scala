@@ -105,6 +105,40 @@ class BgpAnnouncementValidatorTest extends FunSuite with BeforeAndAfterAll with
     subject.validatedAnnouncements.map(x=> (x.asn, x.prefix, x.validity)) should be(Seq((65001: Asn, "10.0.1.0/24": IpRange, InvalidLength)))
   }
 
+  test("should revalidate announcements covered by added or removed RTR prefixes") {
+    val announcements = Seq[BgpAnnouncement]((65001, "10.0.1.0/24"), (65002, "10.0.2.0/24"), (65003, "192.168.0.0/16"))
+    val prefixes = Seq[RtrPrefix]((65001, "10.0.0.0/16", 24), (65003, "192.168.0.0/16"), (65005, "172.16.0.0/12"), (65006, "2001:db8::/32"))
+    subject.startUpdate(announcements, prefixes)
+
+    subject.startUpdate(announcements, prefixes.tail :+ ((65002, "10.0.2.0/24"): RtrPrefix))
+
+    subject.validatedAnnouncements.map(_.validity) should be(Seq(Unknown, Valid, Valid))
+  }
+
+  test("should validate new announcements and keep the results of known announcements") {
+    val prefixes = Seq[RtrPrefix]((65001, "10.0.0.0/16", 24), (65003, "192.168.0.0/16"))
+    subject.startUpdate(Seq[BgpAnnouncement]((65001, "10.0.1.0/24"), (65003, "192.168.0.0/16")), prefixes)
+
+    subject.startUpdate(Seq[BgpAnnouncement]((65001, "10.0.1.0/24"), (65002, "10.0.2.0/24"), (65004, "172.16.0.0/12")), prefixes)
+
+    subject.validatedAnnouncements.map(x => (x.asn, x.prefix, x.validity)) should be(Seq(
+      (65001: Asn, "10.0.1.0/24": IpRange, Valid),
+      (65002: Asn, "10.0.2.0/24": IpRange, InvalidAsn),
+      (65004: Asn, "172.16.0.0/12": IpRange, Unknown)))
+  }
+
+  test("should only revalidate the announcements covered by changed RTR prefixes") {
+    val announcements = (1 to 20).map(i => (65000 + i, "10.0." + i + ".0/24"): BgpAnnouncement)
+    val prefixes = (1 to 20).map(i => (65000 + i, "10.0." + i + ".0/24"): RtrPrefix)
+    subject.startUpdate(announcements, prefixes)
+    subject.lastRevalidatedCount should be(20)
+
+    subject.startUpdate(announcements, prefixes.drop(2) :+ ((65099, "10.0.3.0/24"): RtrPrefix))
+
+    subject.lastRevalidatedCount should be(3)
+    subject.validatedAnnouncements.take(4).map(_.validity) should be(Seq(Unknown, Unknown, Valid, Valid))
+  }
+
   test("should fail to construct BgpValidatedAnnouncement if invalidsLength contains a VRP that refers to a different ASN") {
     val announcement = (65001, "10.0.1.0/24"): BgpAnnouncement
     val invalidsAsn = Seq[RtrPrefix]((65002, "10.0.1.0/24"))
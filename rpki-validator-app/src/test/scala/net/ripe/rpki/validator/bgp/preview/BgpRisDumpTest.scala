@@ -68,12 +68,42 @@ class BgpRisDumpTest extends FunSuite with ShouldMatchers {
     entry should equal(None)
   }
 
+  test("should parse IPv6 notations") {
+    for (prefix <- Seq("::/0", "2001:db8::/32", "2001:db8:0:0:1::/80", "1:2:3:4:5:6:7:8/128", "1:2:3:4:5:6:7::/112", "::ffff:10.0.0.0/104", "FE80::/10")) {
+      BgpRisDump.parseLine("65000\t" + prefix + "\t10").map(_.prefix) should equal(Some(IpRange.parse(prefix)))
+    }
+  }
+
+  test("should skip malformed addresses") {
+    for (prefix <- Seq("10.0.0/8", "10.0.0.256/32", "10.0.0.0/33", "1:2:3:4:5:6:7:8:9/128", "1::2::3/128", "2001:db8:/32", "12345::/16", "::/129")) {
+      BgpRisDump.parseLine("65000\t" + prefix + "\t10") should equal(None)
+    }
+  }
+
   test("should parse file") {
     val inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("ris/riswhoisdump-example.IPv4")
 
-    val entries = BgpRisDump.parse(inputStream).right.get
-    entries.size should equal (42 * 2) /// and don't ask why!
-    entries should contain (new BgpRisEntry(origin = new Asn(45528), prefix = IpRange.parse("1.22.120.0/24"), visibility = 105))
+    val announcements = BgpRisDump.parse(inputStream).right.get
+    announcements.size should equal (74) // 84 entries, of which some are duplicate or seen by too few peers
+    announcements should contain (BgpAnnouncement(new Asn(45528), IpRange.parse("1.22.120.0/24")))
+  }
+
+  test("should only keep distinct announcements seen by enough peers") {
+    val dump = "1\t10.0.0.0/8\t100\n1\t10.0.0.0/8\t50\n2\t10.0.0.0/8\t4\n3\t2001:db8::/32\t5\r\n4 192.168.0.0/16 6"
+    val announcements = BgpRisDump.parse(new java.io.ByteArrayInputStream(dump.getBytes("US-ASCII"))).right.get
+
+    announcements should equal(Seq(
+      BgpAnnouncement(new Asn(1), IpRange.parse("10.0.0.0/8")),
+      BgpAnnouncement(new Asn(3), IpRange.parse("2001:db8::/32")),
+      BgpAnnouncement(new Asn(4), IpRange.parse("192.168.0.0/16"))))
+  }
+
+  test("should parse lines that span read buffers") {
+    val lines = (0 until 20000).map(i => (i + 1) + "\t" + (i >> 8) + "." + (i & 0xff) + ".0.0/16\t" + (5 + i % 100))
+    val announcements = BgpRisDump.parse(new java.io.ByteArrayInputStream(lines.mkString("\n").getBytes("US-ASCII"))).right.get
+
+    announcements should have size (20000)
+    announcements(19999) should equal(BgpAnnouncement(new Asn(20000), IpRange.parse("78.31.0.0/16")))
   }
 
 }
@@ -0,0 +1,111 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import scala.util.Random
+import net.ripe.rpki.validator.lib.NumberResources._
+import net.ripe.rpki.validator.models.{RouteValidity, RtrPrefix}
+import net.ripe.ipresource.{Asn, IpRange}
+
+/**
+ * Compares route origin validation using the finger tree of VRPs with the prefix trie: time to build the index, time
+ * to validate all announcements and the heap allocated while validating.
+ *
+ * Run with: scala -cp <test classpath> net.ripe.rpki.validator.bgp.preview.RtrPrefixTrieBenchmark [vrpCount] [announcementCount]
+ */
+object RtrPrefixTrieBenchmark extends App {
+
+  val vrpCount = args.headOption.map(_.toInt).getOrElse(150000)
+  val announcementCount = args.drop(1).headOption.map(_.toInt).getOrElse(800000)
+  val random = new Random(42)
+
+  val vrps = Vector.fill(vrpCount) {
+    val length = 8 + random.nextInt(17)
+    RtrPrefix(new Asn(random.nextInt(50000)), randomIpv4Prefix(length), Some(length + random.nextInt(4)))
+  }
+  val announcements = Vector.fill(announcementCount)(BgpAnnouncement(new Asn(random.nextInt(50000)), randomIpv4Prefix(16 + random.nextInt(9))))
+
+  val (tree, treeBuild) = measure(NumberResourceIntervalTree(vrps: _*))
+  val (trie, trieBuild) = measure(RtrPrefixTrie(vrps))
+
+  val treeValidation = measureValidation(announcement => BgpAnnouncementValidatorWithTree.validate(announcement, tree).validity)
+  val trieValidation = measureValidation(trie.validity(_))
+  val trieDetailedValidation = measureValidation(trie.validate(_).validity)
+
+  println("%d VRPs, %d announcements".format(vrpCount, announcementCount))
+  println("finger tree:            build %6d ms, validate %6d ms, %8d MB allocated".format(treeBuild, treeValidation._1, treeValidation._2))
+  println("prefix trie:            build %6d ms, validate %6d ms, %8d MB allocated".format(trieBuild, trieValidation._1, trieValidation._2))
+  println("prefix trie (detailed):                  validate %6d ms, %8d MB allocated".format(trieDetailedValidation._1, trieDetailedValidation._2))
+
+  /**
+   * The validation as done before the prefix trie, kept here for comparison.
+   */
+  object BgpAnnouncementValidatorWithTree {
+    def validate(announcement: BgpAnnouncement, prefixTree: NumberResourceIntervalTree[RtrPrefix]): BgpValidatedAnnouncement = {
+      val matchingPrefixes = prefixTree.findExactAndAllLessSpecific(announcement.interval)
+      val groupedByValidity = matchingPrefixes.groupBy {
+        case prefix if prefix.asn != announcement.asn => RouteValidity.InvalidAsn
+        case prefix if prefix.maxPrefixLength.getOrElse(prefix.prefix.getPrefixLength) < announcement.prefix.getPrefixLength => RouteValidity.InvalidLength
+        case _ => RouteValidity.Valid
+      }
+      BgpValidatedAnnouncement(announcement,
+        groupedByValidity.getOrElse(RouteValidity.Valid, Seq.empty),
+        groupedByValidity.getOrElse(RouteValidity.InvalidAsn, Seq.empty),
+        groupedByValidity.getOrElse(RouteValidity.InvalidLength, Seq.empty))
+    }
+  }
+
+  private def randomIpv4Prefix(length: Int): IpRange = {
+    val address = random.nextInt() & (-1 << (32 - length))
+    IpRange.parse("%d.%d.%d.%d/%d".format((address >>> 24) & 0xff, (address >>> 16) & 0xff, (address >>> 8) & 0xff, address & 0xff, length))
+  }
+
+  private def measure[T](f: => T): (T, Long) = {
+    val started = System.nanoTime
+    val result = f
+    (result, (System.nanoTime - started) / 1000000)
+  }
+
+  /**
+   * @return elapsed milliseconds and allocated megabytes of the calling thread, after a warm-up round.
+   */
+  private def measureValidation(validate: BgpAnnouncement => RouteValidity.RouteValidity): (Long, Long) = {
+    val threads = java.lang.management.ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+    val threadId = Thread.currentThread.getId
+    announcements.take(announcementCount / 10).foreach(validate)
+
+    val allocatedBefore = threads.getThreadAllocatedBytes(threadId)
+    val started = System.nanoTime
+    announcements.foreach(validate)
+    val elapsed = (System.nanoTime - started) / 1000000
+    (elapsed, (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / (1024 * 1024))
+  }
+}
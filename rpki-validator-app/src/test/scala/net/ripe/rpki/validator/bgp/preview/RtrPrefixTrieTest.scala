@@ -0,0 +1,106 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import scala.util.Random
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.rpki.validator.lib.NumberResources._
+import net.ripe.rpki.validator.models.RtrPrefix
+import net.ripe.rpki.validator.models.RouteValidity._
+import net.ripe.ipresource.{Asn, IpRange}
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class RtrPrefixTrieTest extends FunSuite with ShouldMatchers {
+
+  import scala.language.implicitConversions
+  implicit def LongToAsn(asn: Long) = new Asn(asn)
+  implicit def StringToIpRange(prefix: String) = IpRange.parse(prefix)
+
+  val prefixes = Seq(
+    RtrPrefix(65001, "10.0.0.0/8", Some(16)),
+    RtrPrefix(65002, "10.1.0.0/16"),
+    RtrPrefix(65001, "10.1.2.0/24"),
+    RtrPrefix(65003, "2001:db8::/32", Some(48)),
+    RtrPrefix(65004, "0.0.0.0/0"))
+
+  val subject = RtrPrefixTrie(prefixes)
+
+  test("should be empty without VRPs") {
+    RtrPrefixTrie.empty should be('empty)
+    RtrPrefixTrie.empty.validity(BgpAnnouncement(65001, "10.0.0.0/8")) should be(Unknown)
+  }
+
+  test("should determine validity of IPv4 announcements") {
+    subject.validity(BgpAnnouncement(65001, "10.1.2.0/24")) should be(Valid)
+    subject.validity(BgpAnnouncement(65001, "10.2.0.0/16")) should be(Valid)
+    subject.validity(BgpAnnouncement(65001, "10.2.3.0/24")) should be(InvalidLength)
+    subject.validity(BgpAnnouncement(65002, "10.2.0.0/16")) should be(InvalidAsn)
+    subject.validity(BgpAnnouncement(65004, "192.168.0.0/16")) should be(Valid)
+  }
+
+  test("should determine validity of IPv6 announcements") {
+    subject.validity(BgpAnnouncement(65003, "2001:db8:1::/48")) should be(Valid)
+    subject.validity(BgpAnnouncement(65003, "2001:db8:1:1::/64")) should be(InvalidLength)
+    subject.validity(BgpAnnouncement(65001, "2001:db8::/32")) should be(InvalidAsn)
+    subject.validity(BgpAnnouncement(65003, "2001:db9::/32")) should be(Unknown)
+  }
+
+  test("should collect covering VRPs from least to most specific") {
+    subject.validate(BgpAnnouncement(65001, "10.1.2.0/24")) should equal(BgpValidatedAnnouncement(BgpAnnouncement(65001, "10.1.2.0/24"),
+      valids = Seq(prefixes(2)),
+      invalidsAsn = Seq(prefixes(4), prefixes(1)),
+      invalidsLength = Seq(prefixes(0))))
+  }
+
+  test("should agree with the interval tree on random VRPs and announcements") {
+    val random = new Random(42)
+    def randomPrefix(length: Int) = {
+      val address = random.nextInt() & (-1 << (32 - length))
+      IpRange.parse("%d.%d.%d.%d/%d".format((address >>> 24) & 0xff, (address >>> 16) & 0xff, (address >>> 8) & 0xff, address & 0xff, length))
+    }
+    val vrps = Seq.fill(2000) {
+      val length = 1 + random.nextInt(24)
+      RtrPrefix(random.nextInt(10), randomPrefix(length), Some(length + random.nextInt(4)))
+    }
+    val trie = RtrPrefixTrie(vrps)
+    val tree = NumberResourceIntervalTree(vrps: _*)
+
+    for (_ <- 1 to 2000) {
+      val announcement = BgpAnnouncement(random.nextInt(10), randomPrefix(8 + random.nextInt(25)))
+      val expected = tree.findExactAndAllLessSpecific(announcement.interval)
+      val validated = trie.validate(announcement)
+
+      (validated.valids ++ validated.invalidsAsn ++ validated.invalidsLength).toSet should equal(expected.toSet)
+      trie.validity(announcement) should equal(validated.validity)
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package bgp.preview
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.rpki.validator.lib.NumberResources._
+import net.ripe.rpki.validator.models.RtrPrefix
+import net.ripe.rpki.validator.models.RouteValidity._
+import net.ripe.ipresource.{Asn, IpRange}
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ValidatedAnnouncementsTest extends FunSuite with ShouldMatchers {
+
+  import scala.language.implicitConversions
+  implicit def LongToAsn(asn: Long) = new Asn(asn)
+  implicit def StringToIpRange(prefix: String) = IpRange.parse(prefix)
+
+  val prefixTrie = RtrPrefixTrie(Seq(
+    RtrPrefix(65001, "10.0.0.0/8", Some(16)),
+    RtrPrefix(65002, "10.1.0.0/16"),
+    RtrPrefix(65003, "2001:db8::/32", Some(48))))
+
+  val announcements = BgpAnnouncements(Seq(
+    BgpAnnouncement(65001, "10.2.0.0/16"),
+    BgpAnnouncement(65001, "10.1.2.0/24"),
+    BgpAnnouncement(65002, "10.1.0.0/16"),
+    BgpAnnouncement(65001, "192.168.0.0/16"),
+    BgpAnnouncement(65003, "2001:db8:1::/48")))
+
+  val subject = ValidatedAnnouncements.validate(announcements, prefixTrie)
+
+  test("should store the same results as validating each announcement") {
+    subject should have length (announcements.length)
+    subject.map(_.validity) should equal(Seq(Valid, InvalidLength, Valid, Unknown, Valid))
+    subject should equal(announcements.map(prefixTrie.validate))
+  }
+
+  test("should store the same results when validating in chunks") {
+    for (chunkSize <- 1 to announcements.length) {
+      val result = ValidatedAnnouncements.validate(announcements, prefixTrie, chunkSize = chunkSize)
+
+      result should equal(subject)
+      (0 until result.length).map(result.coveringVrps) should equal((0 until subject.length).map(subject.coveringVrps))
+    }
+  }
+
+  test("should carry forward the results of unaffected announcements to a new trie") {
+    val added = RtrPrefix(65009, "192.168.0.0/16")
+    val newTrie = RtrPrefixTrie(added +: (0 until prefixTrie.size).map(prefixTrie.vrp))
+
+    val result = subject.revalidate(announcements, newTrie, i => if (i == 3) -1 else i)
+
+    result should equal(announcements.map(newTrie.validate))
+    result.validityAt(3) should be(InvalidAsn)
+    result.coveringVrps(1) should equal(subject.coveringVrps(1))
+  }
+
+  test("should not search the trie for announcements with a previous result") {
+    val newTrie = RtrPrefixTrie(RtrPrefix(65009, "10.0.0.0/8") +: (0 until prefixTrie.size).map(prefixTrie.vrp))
+
+    val result = subject.revalidate(announcements, newTrie, i => if (i == 0) 0 else -1)
+
+    result.coveringVrps(0) should equal(Seq(RtrPrefix(65001, "10.0.0.0/8", Some(16))))
+    result.coveringVrps(3) should equal(Seq.empty)
+    result.coveringVrps(2) should have length (3)
+  }
+
+  test("should select announcements overlapping a range") {
+    val overlapping = subject.overlapping("10.1.0.0/16")
+
+    (0 until subject.length).filter(overlapping) should equal(Seq(1, 2))
+  }
+
+  test("should select announcements by origin ASN") {
+    val originated = subject.originatedBy(65001)
+
+    (0 until subject.length).filter(originated) should equal(Seq(0, 1, 3))
+  }
+}
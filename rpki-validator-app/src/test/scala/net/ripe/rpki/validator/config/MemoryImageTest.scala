@@ -35,6 +35,7 @@ import scala.Predef._
 import net.ripe.rpki.validator.models._
 import net.ripe.rpki.validator.testing.TestingObjectMother._
 import net.ripe.rpki.validator.lib.UserPreferences
+import org.joda.time.DateTime
 
 @org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
 class MemoryImageTest extends FunSuite with BeforeAndAfterAll with BeforeAndAfter with ShouldMatchers {
@@ -121,4 +122,34 @@ class MemoryImageTest extends FunSuite with BeforeAndAfterAll with BeforeAndAfte
     distinctRoaPrefixes should contain (ASN2_TO_ROA_PREFIX_V4_1)
     distinctRoaPrefixes should contain (ASN3_TO_WHITELIST1)
   }
+
+  test("Should update distinct ROA prefixes incrementally") {
+    val enabledTrustAnchors = new TrustAnchors(Seq(TrustAnchor(locator = TAL, status = Idle(new DateTime, None), enabled = true)))
+    def recomputed(image: MemoryImage) = image.copy().getDistinctRtrPrefixes
+
+    val updates = Seq[MemoryImage => MemoryImage](
+      _.updateValidatedObjects(TAL, ROAS.all(TAL)),
+      _.addWhitelistEntry(ASN1_TO_ROA_PREFIX_V6_1),
+      _.addFilter(new IgnoreFilter(ROA_PREFIX_V6_1.getPrefix)),
+      _.addFilter(new IgnoreFilter(ROA_PREFIX_V4_1.getPrefix)),
+      _.removeWhitelistEntry(ASN1_TO_ROA_PREFIX_V6_1),
+      _.removeFilter(new IgnoreFilter(ROA_PREFIX_V4_1.getPrefix)),
+      _.updateValidatedObjects(TAL, ROAS.all(TAL).take(1)),
+      _.removeFilter(new IgnoreFilter(ROA_PREFIX_V6_1.getPrefix)),
+      _.updateTrustAnchorState(TAL, false))
+
+    var image = new MemoryImage(Filters(), WHITELIST, enabledTrustAnchors, ValidatedObjects(enabledTrustAnchors))
+    image.getDistinctRtrPrefixes should equal(Set(ASN3_TO_WHITELIST1))
+    for (update <- updates) {
+      image = update(image)
+      image.getDistinctRtrPrefixes should equal(recomputed(image))
+    }
+    image.getDistinctRtrPrefixes should equal(Set(ASN3_TO_WHITELIST1))
+  }
+
+  test("Should reuse distinct ROA prefixes when only the trust anchor status changes") {
+    subject = new MemoryImage(Filters(), WHITELIST, trustAnchors, ROAS)
+
+    subject.startProcessingTrustAnchor(TAL, "test").getDistinctRtrPrefixes should be theSameInstanceAs (subject.getDistinctRtrPrefixes)
+  }
 }
@@ -0,0 +1,136 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package config
+
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.joda.time.DateTime
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.ipresource.{Asn, IpRange}
+import models._
+import testing.TestingObjectMother._
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ValidatedStateSnapshotTest extends FunSuite with ShouldMatchers {
+
+  val Now = new DateTime(2013, 6, 1, 12, 0, 0, 0)
+
+  val RtrPrefixes = Set(
+    RtrPrefix(Asn.parse("AS65530"), IpRange.parse("10.0.0.0/8"), None),
+    RtrPrefix(Asn.parse("AS4200000000"), IpRange.parse("192.168.0.0/16"), Some(24)),
+    RtrPrefix(Asn.parse("AS65531"), IpRange.parse("2001:db8::/32"), Some(48)),
+    RtrPrefix(Asn.parse("AS0"), IpRange.parse("0.0.0.0/0"), None))
+
+  val Snapshot = ValidatedStateSnapshot(42, Now, Seq(TrustAnchorSnapshot(TAL.getCertificateLocation, Some(Now.minusHours(1)), RtrPrefixes)))
+
+  def tempFile() = {
+    val file = File.createTempFile("test-rpki", ".snapshot")
+    file.deleteOnExit()
+    file.delete()
+    file
+  }
+
+  test("should write and read snapshot") {
+    val file = tempFile()
+
+    ValidatedStateSnapshot.read(file, Now) should equal(None)
+
+    ValidatedStateSnapshot.write(Snapshot, file)
+    ValidatedStateSnapshot.read(file, Now.plusHours(1)) should equal(Some(Snapshot))
+  }
+
+  test("should write and read maximum lengths and prefixes of 128 bits") {
+    val file = tempFile()
+    val prefixes = Set(
+      RtrPrefix(Asn.parse("AS65532"), IpRange.parse("2001:db8::/32"), Some(128)),
+      RtrPrefix(Asn.parse("AS65533"), IpRange.parse("2001:db8::1/128"), None),
+      RtrPrefix(Asn.parse("AS65534"), IpRange.parse("2001:db8::2/128"), Some(128)))
+    val snapshot = ValidatedStateSnapshot(42, Now, Seq(TrustAnchorSnapshot(TAL.getCertificateLocation, None, prefixes)))
+
+    ValidatedStateSnapshot.write(snapshot, file)
+    ValidatedStateSnapshot.read(file, Now) should equal(Some(snapshot))
+  }
+
+  test("should ignore snapshot older than the maximum age") {
+    val file = tempFile()
+    ValidatedStateSnapshot.write(Snapshot, file)
+
+    ValidatedStateSnapshot.read(file, Now.plus(ValidatedStateSnapshot.MaximumAge).plusMinutes(1)) should equal(None)
+  }
+
+  test("should ignore file that is not a snapshot") {
+    val file = tempFile()
+    FileUtils.writeStringToFile(file, "not a snapshot", "UTF-8")
+
+    ValidatedStateSnapshot.read(file, Now) should equal(None)
+  }
+
+  test("should ignore truncated snapshot") {
+    val file = tempFile()
+    ValidatedStateSnapshot.write(Snapshot, file)
+    val bytes = FileUtils.readFileToByteArray(file)
+    FileUtils.writeByteArrayToFile(file, bytes.take(bytes.length - 3))
+
+    ValidatedStateSnapshot.read(file, Now) should equal(None)
+  }
+
+  test("should take validated prefixes of enabled trust anchors from memory image") {
+    val trustAnchors = new TrustAnchors(Seq(TrustAnchor(TAL, Idle(Now), lastUpdated = Some(Now))))
+    val roas = ROAS
+    val image = MemoryImage(Filters(), Whitelist(), trustAnchors, roas, version = 7)
+
+    val snapshot = ValidatedStateSnapshot(image, Now)
+
+    snapshot.version should equal(7)
+    snapshot.trustAnchors should equal(Seq(TrustAnchorSnapshot(TAL.getCertificateLocation, Some(Now), roas.rtrPrefixes(TAL))))
+    ValidatedStateSnapshot(MemoryImage(Filters(), Whitelist(), new TrustAnchors(trustAnchors.all.map(_.copy(enabled = false))), roas), Now).trustAnchors should be('empty)
+  }
+
+  test("should restore validated prefixes of enabled trust anchors") {
+    val trustAnchors = new TrustAnchors(Seq(TrustAnchor(TAL, Idle(Now))))
+    val image = MemoryImage(Filters(Set(IgnoreFilter(IpRange.parse("192.168.0.0/16")))), Whitelist(), trustAnchors, ValidatedObjects(trustAnchors))
+
+    val restored = Snapshot.restore(image)
+
+    restored.version should equal(42)
+    restored.trustAnchors.all.head.lastUpdated should equal(Some(Now.minusHours(1)))
+    restored.validatedObjects.rtrPrefixes(TAL) should equal(RtrPrefixes.map(_.copy(trustAnchorLocator = Some(TAL))))
+    restored.getDistinctRtrPrefixes.map(_.prefix) should equal(Set("10.0.0.0/8", "2001:db8::/32").map(IpRange.parse))
+  }
+
+  test("should not restore prefixes of disabled trust anchors") {
+    val trustAnchors = new TrustAnchors(Seq(TrustAnchor(TAL, Idle(Now), enabled = false)))
+    val image = MemoryImage(Filters(), Whitelist(), trustAnchors, ValidatedObjects(new TrustAnchors(Seq.empty)))
+
+    Snapshot.restore(image) should be theSameInstanceAs (image)
+  }
+}
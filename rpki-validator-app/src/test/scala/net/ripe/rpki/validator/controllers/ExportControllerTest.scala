@@ -45,9 +45,7 @@ class ExportControllerTest extends ControllerTestCase {
   val TEST_PREFIXES = Set[RtrPrefix](PREFIX1, PREFIX2)
   
   override def controller = new ControllerFilter with ExportController {
-    override def getRtrPrefixes: Set[RtrPrefix] = {
-      TEST_PREFIXES
-    }
+    override def getVersionedRtrPrefixes = (42, TEST_PREFIXES)
   }
   
   test("Should make CSV with max lengths filled out") {
@@ -77,4 +75,25 @@ class ExportControllerTest extends ControllerTestCase {
     }
   }
 
-}
\ No newline at end of file
+  test("Should not export again when the client has the current version") {
+    val etag = get("/export.csv") {
+      header("ETag")
+    }
+
+    get("/export.csv", headers = Map("If-None-Match" -> etag)) {
+      status should equal(304)
+      body should equal("")
+    }
+    get("/export.json", headers = Map("If-None-Match" -> etag)) {
+      status should equal(200)
+    }
+  }
+
+  test("Should compress exports when the client accepts gzip") {
+    get("/export.json", headers = Map("Accept-Encoding" -> "gzip, deflate")) {
+      status should equal(200)
+      header("Content-Encoding") should equal("gzip")
+      header("ETag") should endWith("-gzip\"")
+    }
+  }
+}
@@ -32,6 +32,7 @@ package net.ripe.rpki.validator.fetchers
 import org.scalatest.FunSuite
 import org.scalatest.matchers.ShouldMatchers
 import net.ripe.rpki.validator.store.DataSources
+import net.ripe.rpki.validator.store.DecodedObjectCache
 import net.ripe.rpki.validator.store.RepositoryObjectStore
 import net.ripe.rpki.commons.rsync.Rsync
 import net.ripe.rpki.validator.util.UriToFileMapper
@@ -241,6 +242,34 @@ class ConsistentObjectFetcherTest extends FunSuite with ShouldMatchers with Befo
     validationResult.getFailures(new ValidationLocation(mftUri)) should have size 1
   }
 
+  test("Should serve decoded objects from the object cache") {
+    val rsyncFetcher = new TestRemoteObjectFetcher(Map.empty)
+    val objectCache = new DecodedObjectCache(DecodedObjectCache.DefaultMaxBytes)
+    val subject = new ConsistentObjectFetcher(remoteObjectFetcher = rsyncFetcher, store = store, objectCache = objectCache)
+
+    store.put(StoredRepositoryObject(uri = roaUri, repositoryObject = roa))
+    val decoded = subject.fetch(roaUri, mft.getFileContentSpecification(roaFileName), ValidationResult.withLocation(roaUri))
+
+    val validationResult = ValidationResult.withLocation(roaUri)
+    subject.fetch(roaUri, mft.getFileContentSpecification(roaFileName), validationResult) should be theSameInstanceAs (decoded)
+    validationResult.hasFailures should be(false)
+    objectCache.hitCount should equal(1)
+    objectCache.missCount should equal(1)
+  }
+
+  test("Should not serve cached objects that are no longer in the store") {
+    val rsyncFetcher = new TestRemoteObjectFetcher(Map.empty)
+    val subject = new ConsistentObjectFetcher(remoteObjectFetcher = rsyncFetcher, store = store, objectCache = new DecodedObjectCache(DecodedObjectCache.DefaultMaxBytes))
+
+    store.put(StoredRepositoryObject(uri = roaUri, repositoryObject = roa))
+    subject.fetch(roaUri, mft.getFileContentSpecification(roaFileName), ValidationResult.withLocation(roaUri)) should equal(roa)
+    store.clear
+
+    val validationResult = ValidationResult.withLocation(roaUri)
+    subject.fetch(roaUri, mft.getFileContentSpecification(roaFileName), validationResult) should equal(null)
+    validationResult.getResult(new ValidationLocation(roaUri), VALIDATOR_REPOSITORY_OBJECT_NOT_IN_CACHE).getStatus should equal(ValidationStatus.ERROR)
+  }
+
 }
 
 class TestRemoteObjectFetcher(entries: Map[URI, CertificateRepositoryObject]) extends RemoteObjectFetcher(new RsyncRpkiRepositoryObjectFetcher(new Rsync, new UriToFileMapper(new File(System.getProperty("java.io.tmpdir"))))) {
@@ -30,7 +30,8 @@
 package net.ripe.rpki.validator.fetchers
 
 import java.net.URI
-import org.mockito.Mockito.verify
+import org.mockito.Mockito.{never, verify, when}
+import net.ripe.rpki.commons.validation.ValidationResult
 import org.scalatest.{BeforeAndAfter, FunSuite}
 import org.scalatest.matchers.ShouldMatchers
 import org.scalatest.mock.MockitoSugar
@@ -53,4 +54,37 @@ class RemoteObjectFetcherTest extends FunSuite with ShouldMatchers with BeforeAn
     subject.fetch(uri, null, null)
     verify(mockRsyncFetcher).fetch(uri, null, null)
   }
+
+  test("Should prefetch publication point available over RRDP without rsync") {
+    val rsyncFetcher = mock[RsyncRpkiRepositoryObjectFetcher]
+    val rrdpFetcher = mock[RrdpRpkiRepositoryObjectFetcher]
+    val result = ValidationResult.withLocation(uri)
+    when(rrdpFetcher.synchronize(uri, result)).thenReturn(true)
+
+    new RemoteObjectFetcher(rsyncFetcher, Some(rrdpFetcher)).prefetch(uri, result)
+
+    verify(rsyncFetcher, never).prefetch(uri, result)
+  }
+
+  test("Should prefetch using rsync when RRDP is not available") {
+    val rsyncFetcher = mock[RsyncRpkiRepositoryObjectFetcher]
+    val rrdpFetcher = mock[RrdpRpkiRepositoryObjectFetcher]
+    val result = ValidationResult.withLocation(uri)
+    when(rrdpFetcher.synchronize(uri, result)).thenReturn(false)
+
+    new RemoteObjectFetcher(rsyncFetcher, Some(rrdpFetcher)).prefetch(uri, result)
+
+    verify(rsyncFetcher).prefetch(uri, result)
+  }
+
+  test("Should fetch objects of synchronized RRDP publication points from RRDP") {
+    val rsyncFetcher = mock[RsyncRpkiRepositoryObjectFetcher]
+    val rrdpFetcher = mock[RrdpRpkiRepositoryObjectFetcher]
+    when(rrdpFetcher.isSynchronized(uri)).thenReturn(true)
+
+    new RemoteObjectFetcher(rsyncFetcher, Some(rrdpFetcher)).fetch(uri, null, null)
+
+    verify(rrdpFetcher).fetch(uri, null, null)
+    verify(rsyncFetcher, never).fetch(uri, null, null)
+  }
 }
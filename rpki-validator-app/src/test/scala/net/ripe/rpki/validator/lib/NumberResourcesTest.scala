@@ -71,6 +71,16 @@ class NumberResourcesTest extends FunSpec with ShouldMatchers {
     it("should not contain 127/8") {
       Range_10_8.contains(Range_127_8) should be(false)
     }
+    it("should overlap 10/9 in both directions") {
+      Range_10_8.overlaps(Range_10_9) should be(true)
+      Range_10_9.overlaps(Range_10_8) should be(true)
+    }
+    it("should not overlap 127/8") {
+      Range_10_8.overlaps(Range_127_8) should be(false)
+    }
+    it("should not overlap an IPv6 range") {
+      Range_10_8.overlaps(StringToInterval("::/0")) should be(false)
+    }
   }
 
   describe("Empty NumberResourceIntervalTree") {
@@ -152,5 +162,39 @@ class NumberResourcesTest extends FunSpec with ShouldMatchers {
     it("should find containing match") {
       subject.findExactAndAllLessSpecific("0/31") should equal(prefixes)
     }
+    it("should find more specific matches as overlapping") {
+      subject.findOverlapping("0/28") should equal(prefixes)
+    }
+    it("should only find 0/0 overlapping the upper half") {
+      subject.findOverlapping("128/1") should equal(Seq(prefixes(0)))
+    }
+  }
+
+  describe("Overlap queries on NumberResourceIntervalTree") {
+    val prefixes = (1 to 100) map { i =>
+      RtrPrefix(i, IpRange.parse(i + "/8"), None)
+    }
+    val subject = NumberResourceIntervalTree(prefixes: _*)
+    it("should find more specific range") {
+      subject.findOverlapping("42.1/16") should (have size (1) and contain(RtrPrefix(42, "42/8", None)))
+    }
+    it("should find all less specific entries of a covering range") {
+      subject.findOverlapping("32/3") should equal(prefixes.filter(p => p.asn.longValue >= 32 && p.asn.longValue <= 63))
+    }
+    it("should find entries that cross the range boundaries") {
+      subject.findOverlapping("9.255.255.255-11.0.0.0") should equal(prefixes.slice(8, 11))
+    }
+    it("should not find range outside") {
+      subject.findOverlapping("200/8") should be('empty)
+      subject.findOverlapping("2001:db8::/32") should be('empty)
+    }
+    it("should tell whether any entry overlaps") {
+      subject.existsOverlapping("42.1/16") should be(true)
+      subject.existsOverlapping("9.255.255.255-11.0.0.0") should be(true)
+      subject.existsOverlapping("0/0") should be(true)
+      subject.existsOverlapping("200/8") should be(false)
+      subject.existsOverlapping("2001:db8::/32") should be(false)
+      NumberResourceIntervalTree.empty[RtrPrefix].existsOverlapping("0/0") should be(false)
+    }
   }
 }
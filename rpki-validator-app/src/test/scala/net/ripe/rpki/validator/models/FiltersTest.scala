@@ -0,0 +1,71 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package models
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.ipresource.{Asn, IpRange}
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class FiltersTest extends FunSuite with ShouldMatchers {
+
+  private def prefix(asn: Long, range: String) = RtrPrefix(new Asn(asn), IpRange.parse(range))
+  private def filters(ranges: String*) = Filters(ranges.map(range => IgnoreFilter(IpRange.parse(range))).toSet)
+
+  val prefixes = Seq(prefix(1, "10.0.0.0/8"), prefix(2, "10.1.0.0/16"), prefix(3, "192.168.0.0/16"), prefix(4, "2001:db8::/32"))
+
+  test("should keep all prefixes without filters") {
+    Filters().filter(prefixes) should equal(prefixes)
+  }
+
+  test("should remove prefixes that are more specific than a filter") {
+    filters("10.0.0.0/8").filter(prefixes) should equal(Seq(prefixes(2), prefixes(3)))
+  }
+
+  test("should remove prefixes that are less specific than a filter") {
+    filters("10.1.2.0/24").filter(prefixes) should equal(Seq(prefixes(2), prefixes(3)))
+  }
+
+  test("should match filters per address family") {
+    filters("2001:db8:1::/48", "192.168.1.1/32").filter(prefixes) should equal(Seq(prefixes(0), prefixes(1)))
+  }
+
+  test("should agree with matching every filter") {
+    val subject = filters("10.1.128.0/17", "172.16.0.0/12", "2001:db8:ffff::/48", "0.0.0.0/32")
+    subject.filter(prefixes) should equal(prefixes.filterNot(p => subject.entries.exists(_.shouldIgnore(p))))
+  }
+
+  test("should index added filters") {
+    val subject = Filters().addFilter(IgnoreFilter(IpRange.parse("192.168.0.0/24")))
+    subject.filter(prefixes) should equal(Seq(prefixes(0), prefixes(1), prefixes(3)))
+    subject.removeFilter(IgnoreFilter(IpRange.parse("192.168.0.0/24"))).filter(prefixes) should equal(prefixes)
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package models
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.joda.time.DateTime
+import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext
+import statistics.InconsistentRepositoryCheckingTest._
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ValidatedPublicationPointsTest extends FunSuite with ShouldMatchers {
+
+  val context = new CertificateRepositoryObjectValidationContext(TA_CER_URI, TA_CER_OBJECT)
+  val entries = Map(TA_CER_URI -> TA_CER_VALIDATED_OBJECT, TA_CRL_URI -> TA_CRL_VALIDATED_OBJECT)
+
+  test("should remember publication point with only valid entries") {
+    val publicationPoint = ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries)
+
+    publicationPoint should be('defined)
+    publicationPoint.get.validUntil should equal(TA_CER_VALIDITY.getNotValidAfter)
+    publicationPoint.get.isUnchanged(context, TA_MFT_OBJECT, new DateTime) should be(true)
+  }
+
+  test("should not remember publication point with invalid entries") {
+    ValidatedPublicationPoint(context, INCONSISTENT_TA_MFT_OBJECT, entries + (TA_MISSING_CER_URI -> MISSING_CER_VALIDATED_OBJECT)) should be(None)
+  }
+
+  test("should detect changed manifest") {
+    val publicationPoint = ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries).get
+
+    publicationPoint.isUnchanged(context, INCONSISTENT_TA_MFT_OBJECT, new DateTime) should be(false)
+  }
+
+  test("should detect expired entries") {
+    val publicationPoint = ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries).get
+
+    publicationPoint.isUnchanged(context, TA_MFT_OBJECT, TA_CER_VALIDITY.getNotValidAfter) should be(false)
+  }
+
+  test("should detect changed issuing certificate location") {
+    val publicationPoint = ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries).get
+    val otherContext = new CertificateRepositoryObjectValidationContext(TA_UNKNOWN_CER_URI, TA_CER_OBJECT)
+
+    publicationPoint.isUnchanged(otherContext, TA_MFT_OBJECT, new DateTime) should be(false)
+  }
+
+  test("should return child contexts for object issuing certificates") {
+    val publicationPoint = ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries).get
+
+    publicationPoint.childContexts(context).map(_.getCertificate) should equal(Seq(TA_CER_OBJECT))
+  }
+
+  test("should forget publication points not seen in the last run") {
+    val subject = new ValidatedPublicationPoints
+    subject.update(TA_MFT_URI, ValidatedPublicationPoint(context, TA_MFT_OBJECT, entries))
+
+    subject.retain(Set(TA_MFT_URI))
+    subject.size should equal(1)
+
+    subject.retain(Set.empty)
+    subject.get(TA_MFT_URI) should be(None)
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package models
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+import org.scalatest.{BeforeAndAfter, FunSuite}
+import org.scalatest.matchers.ShouldMatchers
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ValidationExecutorTest extends FunSuite with ShouldMatchers with BeforeAndAfter {
+
+  var subject: ValidationExecutor = _
+
+  before {
+    subject = new ValidationExecutor(1)
+  }
+
+  after {
+    subject.shutdown()
+  }
+
+  test("should queue a trust anchor only once while it is waiting") {
+    val running = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    val runs = new AtomicInteger
+    val done = new CountDownLatch(3)
+
+    subject.submit("blocker") { running.countDown(); release.await(); done.countDown() } should be(true)
+    running.await(5, TimeUnit.SECONDS) should be(true)
+
+    subject.submit("ta") { runs.incrementAndGet(); done.countDown() } should be(true)
+    subject.submit("ta") { runs.incrementAndGet(); done.countDown() } should be(false)
+    subject.submit("other") { done.countDown() } should be(true)
+    subject.queueDepth should equal(2)
+
+    release.countDown()
+    done.await(5, TimeUnit.SECONDS) should be(true)
+    runs.get should equal(1)
+  }
+
+  test("should continue after a failed validation") {
+    val done = new CountDownLatch(1)
+
+    subject.submit("failing") { throw new RuntimeException("test") }
+    subject.submit("next") { done.countDown() }
+
+    done.await(5, TimeUnit.SECONDS) should be(true)
+  }
+
+  test("should report queue and wait time metrics") {
+    val done = new CountDownLatch(1)
+    subject.submit("ta") { done.countDown() }
+    done.await(5, TimeUnit.SECONDS)
+
+    val metrics = subject.metrics(0L).map(metric => metric.name -> metric.value).toMap
+    metrics("validation.executor.parallelism") should equal("1")
+    metrics("validation.executor.started") should equal("1")
+    metrics should contain key ("validation.executor.wait.max.ms")
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package models
+
+import scala.util.Random
+import akka.actor.ActorSystem
+import org.scalatest.{BeforeAndAfterAll, FunSuite}
+import org.scalatest.matchers.ShouldMatchers
+import org.joda.time.DateTime
+import scalaz.{Failure, Success}
+import statistics.InconsistentRepositoryCheckingTest._
+import testing.TestingObjectMother._
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ValidationSchedulerTest extends FunSuite with ShouldMatchers with BeforeAndAfterAll {
+  import ValidationScheduler._
+
+  val objects = Seq(TA_CER_VALIDATED_OBJECT, TA_CRL_VALIDATED_OBJECT, TA_MFT_VALIDATED_OBJECT)
+  val expiry = TA_CER_VALIDITY.getNotValidAfter
+  val random = new Random(42)
+
+  val actorSystem = ActorSystem()
+  import actorSystem.dispatcher
+
+  override def afterAll() {
+    actorSystem.shutdown()
+  }
+
+  def shouldBeWithin(actual: DateTime, from: DateTime, jitter: Long) {
+    actual.getMillis should (be >= from.getMillis and be <= from.getMillis + jitter)
+  }
+
+  test("should find the earliest expiry of the validated objects") {
+    earliestExpiry(new DateTime, objects) should equal(Some(expiry))
+  }
+
+  test("should ignore objects that are already stale") {
+    earliestExpiry(expiry.plusMinutes(1), objects) should equal(None)
+  }
+
+  test("should validate again when the first object becomes stale") {
+    val now = new DateTime
+
+    shouldBeWithin(nextUpdateAfterSuccess(now, objects, random), expiry, MaximumJitter.toMillis)
+  }
+
+  test("should validate again after the maximum interval when no object becomes stale sooner") {
+    val now = new DateTime
+
+    shouldBeWithin(nextUpdateAfterSuccess(now, Seq.empty, random), now.plus(MaximumInterval.toMillis), MaximumJitter.toMillis)
+  }
+
+  test("should wait at least the minimum interval") {
+    val now = expiry.minusMinutes(1)
+
+    shouldBeWithin(nextUpdateAfterSuccess(now, objects, random), now.plus(MinimumInterval.toMillis), MaximumJitter.toMillis)
+  }
+
+  test("should back off exponentially after consecutive failures") {
+    val now = new DateTime
+
+    shouldBeWithin(nextUpdateAfterFailure(now, 1, random), now.plus(InitialBackoff.toMillis), MaximumJitter.toMillis)
+    shouldBeWithin(nextUpdateAfterFailure(now, 2, random), now.plus(2 * InitialBackoff.toMillis), MaximumJitter.toMillis)
+    shouldBeWithin(nextUpdateAfterFailure(now, 100, random), now.plus(MaximumBackoff.toMillis), MaximumJitter.toMillis)
+  }
+
+  test("should count consecutive failures of a trust anchor") {
+    val trustAnchor = TrustAnchor(TAL, Idle(new DateTime))
+
+    val failed = trustAnchor.finishProcessing(Failure("error")).finishProcessing(Failure("error"))
+    failed.consecutiveFailures should equal(2)
+
+    failed.finishProcessing(Success(Map.empty)).consecutiveFailures should equal(0)
+  }
+
+  test("should not schedule disabled trust anchors until they are enabled") {
+    val nextUpdate = new DateTime().plusDays(1)
+    val disabled = TrustAnchor(TAL, Idle(nextUpdate), enabled = false)
+    val subject = new ValidationScheduler(actorSystem.scheduler, _ => ())
+
+    subject.scheduleNextValidation(disabled)
+    subject.pending should be('empty)
+
+    subject.scheduleNextValidation(disabled.copy(enabled = true))
+    subject.pending should equal(Map(disabled.name -> nextUpdate))
+  }
+
+  test("should not schedule running trust anchors") {
+    val subject = new ValidationScheduler(actorSystem.scheduler, _ => ())
+
+    subject.scheduleNextValidation(TrustAnchor(TAL, Running("validating")))
+    subject.pending should be('empty)
+  }
+}
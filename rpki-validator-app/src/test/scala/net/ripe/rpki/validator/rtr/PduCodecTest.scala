@@ -37,6 +37,9 @@ import org.jboss.netty.buffer.ChannelBuffer
 import org.jboss.netty.buffer.BigEndianHeapChannelBuffer
 import org.scalatest.mock.MockitoSugar
 import org.jboss.netty.channel._
+import net.ripe.ipresource.Asn
+import net.ripe.ipresource.IpRange
+import net.ripe.rpki.validator.models.RtrPrefix
 
 @RunWith(classOf[JUnitRunner])
 class PduCodecTest extends FunSuite with ShouldMatchers with MockitoSugar {
@@ -63,5 +66,60 @@ class PduCodecTest extends FunSuite with ShouldMatchers with MockitoSugar {
         fail("not an error pdu")
     }
   }
-  
+
+  val prefixes = Set(
+    RtrPrefix(new Asn(65000), IpRange.parse("10.0.0.0/8"), Some(16)),
+    RtrPrefix(new Asn(4294967295L), IpRange.parse("2001:db8::/32")),
+    RtrPrefix(new Asn(65001), IpRange.parse("192.168.0.0/16")))
+
+  test("should stream reset response in chunks with the same bytes as encoding all pdus") {
+    val response = new ResetResponse(sessionId = 42, snapshot = new PrefixSnapshot(7, prefixes))
+
+    val encoded = new PduEncoder().encode(null, mock[Channel], response)
+    assert(encoded.isInstanceOf[ResetResponseInput])
+
+    val input = new ResetResponseInput(response, chunkSize = 30)
+    var chunks = Vector.empty[ChannelBuffer]
+    while (input.hasNextChunk) {
+      chunks :+= input.nextChunk().asInstanceOf[ChannelBuffer]
+    }
+
+    input.isEndOfInput should be(true)
+    chunks.size should be > 3
+    val pdus = (response.cacheResponse +: response.snapshot.prefixes.map(Pdus.prefixAnnouncement)) :+ response.endOfData
+    chunks.flatMap(readableBytes) should equal(pdus.flatMap(Pdus.encode))
+    response.lastPdu should equal(EndOfDataPdu(sessionId = 42, serial = 7))
+  }
+
+  test("should encode the pdus of a response in one buffer") {
+    val pdus = Seq(CacheResponsePdu(sessionId = 42), EndOfDataPdu(sessionId = 42, serial = 7))
+
+    val encoded = new PduEncoder().encode(null, mock[Channel], PduResponse(pdus)).asInstanceOf[ChannelBuffer]
+
+    readableBytes(encoded).toSeq should equal(pdus.flatMap(Pdus.encode))
+  }
+
+  test("should share the prefix snapshot until the serial or prefixes change") {
+    var serial = 1
+    var currentPrefixes = prefixes
+    val snapshots = new PrefixSnapshots(() => serial, () => currentPrefixes)
+
+    val snapshot = snapshots.current
+    snapshots.current should be theSameInstanceAs (snapshot)
+
+    currentPrefixes = prefixes.tail
+    val changed = snapshots.current
+    changed should not be theSameInstanceAs (snapshot)
+    changed.prefixes should have size 2
+
+    serial = 2
+    snapshots.current.serial should equal(2)
+  }
+
+  private def readableBytes(buffer: ChannelBuffer) = {
+    val bytes = new Array[Byte](buffer.readableBytes)
+    buffer.getBytes(buffer.readerIndex, bytes)
+    bytes
+  }
+
 }
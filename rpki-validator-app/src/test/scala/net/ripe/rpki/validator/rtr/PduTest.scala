@@ -145,6 +145,38 @@ class PduTest extends FunSuite with ShouldMatchers {
     }
   }
 
+  test("should convert ipv4 prefix withdraw pdu to byte array and back") {
+    val ipv4PrefixPdu = new IPv4PrefixWithdrawPdu(Ipv4Address.parse("10.0.0.0"), 8, 10, Asn.parse("65535"))
+    val expectedBytes = Array[Byte](
+      0x0, 0x4, 0x0, 0x0,
+      0x0, 0x0, 0x0, 0x14,
+      0x0, 0x8, 0xa, 0x0,
+      0xa, 0x0, 0x0, 0x0,
+      0x0, 0x0, 255.toByte, 255.toByte)
+    val bytes = Pdus.encode(ipv4PrefixPdu)
+
+    bytes should equal(expectedBytes)
+
+    Pdus.fromByteArray(new BigEndianHeapChannelBuffer(bytes)) match {
+      case Right(decodedPdu: IPv4PrefixWithdrawPdu) =>
+        decodedPdu should equal(ipv4PrefixPdu)
+      case _ => fail("Got back a wrong response")
+    }
+  }
+
+  test("should convert ipv6 prefix withdraw pdu to byte array and back") {
+    val ipv6PrefixPdu = new IPv6PrefixWithdrawPdu(Ipv6Address.parse("fc00::"), 7, 10, Asn.parse("65535"))
+    val bytes = Pdus.encode(ipv6PrefixPdu)
+
+    bytes(8) should equal(0x0)
+
+    Pdus.fromByteArray(new BigEndianHeapChannelBuffer(bytes)) match {
+      case Right(decodedPdu: IPv6PrefixWithdrawPdu) =>
+        decodedPdu should equal(ipv6PrefixPdu)
+      case _ => fail("Got back a wrong response")
+    }
+  }
+
   test("should handle asn: 0, see GRE-314 bugreport") {
     val ipv4PrefixPdu = new IPv4PrefixAnnouncePdu(Ipv4Address.parse("10.0.0.0"), 8, 10, Asn.parse("0"))
     val expectedBytes = Array[Byte](
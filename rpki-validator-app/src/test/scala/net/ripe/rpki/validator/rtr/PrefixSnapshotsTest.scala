@@ -0,0 +1,120 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.rtr
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import net.ripe.ipresource.Asn
+import net.ripe.ipresource.IpRange
+import net.ripe.rpki.validator.models.RtrPrefix
+
+@RunWith(classOf[JUnitRunner])
+class PrefixSnapshotsTest extends FunSuite with ShouldMatchers {
+
+  val prefix1 = RtrPrefix(new Asn(65000), IpRange.parse("10.0.0.0/8"), Some(8))
+  val prefix2 = RtrPrefix(new Asn(65001), IpRange.parse("2001:db8::/32"), Some(32))
+  val prefix3 = RtrPrefix(new Asn(65002), IpRange.parse("192.168.0.0/16"), Some(16))
+
+  var serial = 1
+  var prefixes = Set(prefix1, prefix2)
+
+  def subject(maxDeltas: Int = PrefixSnapshots.DefaultMaxDeltas) = new PrefixSnapshots(() => serial, () => prefixes, maxDeltas)
+
+  test("Should announce the same prefix only once") {
+    val withoutMaxLength = RtrPrefix(prefix1.asn, prefix1.prefix)
+
+    new PrefixSnapshot(1, Set(prefix1, withoutMaxLength)).prefixes should equal(IndexedSeq(prefix1))
+  }
+
+  test("Should give an empty delta for the current serial") {
+    serial = 1
+    prefixes = Set(prefix1, prefix2)
+    val snapshots = subject()
+
+    snapshots.deltaSince(1) should equal(Some(PrefixDelta(1, 1, Set.empty, Set.empty)))
+  }
+
+  test("Should combine the deltas since a serial") {
+    serial = 1
+    prefixes = Set(prefix1, prefix2)
+    val snapshots = subject()
+    snapshots.current
+
+    serial = 2
+    prefixes = Set(prefix1, prefix3)
+    snapshots.current
+
+    serial = 3
+    prefixes = Set(prefix2, prefix3)
+
+    snapshots.deltaSince(1) should equal(Some(PrefixDelta(1, 3, announced = Set(prefix3), withdrawn = Set(prefix1))))
+    snapshots.deltaSince(2) should equal(Some(PrefixDelta(2, 3, announced = Set(prefix2), withdrawn = Set(prefix1))))
+  }
+
+  test("Should not know serials that are too old") {
+    serial = 1
+    prefixes = Set(prefix1)
+    val snapshots = subject(maxDeltas = 1)
+    snapshots.current
+
+    serial = 2
+    prefixes = Set(prefix2)
+    snapshots.current
+
+    serial = 3
+    prefixes = Set(prefix3)
+
+    snapshots.deltaSince(1) should equal(None)
+    snapshots.deltaSince(2) should be('defined)
+  }
+
+  test("Should forget deltas when the prefixes change without a new serial") {
+    serial = 1
+    prefixes = Set(prefix1)
+    val snapshots = subject()
+    snapshots.current
+
+    serial = 2
+    prefixes = Set(prefix2)
+    snapshots.current
+
+    prefixes = Set(prefix3)
+
+    snapshots.deltaSince(1) should equal(None)
+  }
+
+  test("Should withdraw before announcing") {
+    val delta = PrefixDelta(1, 2, announced = Set(prefix3), withdrawn = Set(prefix1))
+
+    delta.pdus should equal(Seq(Pdus.prefixWithdrawal(prefix1), Pdus.prefixAnnouncement(prefix3)))
+  }
+}
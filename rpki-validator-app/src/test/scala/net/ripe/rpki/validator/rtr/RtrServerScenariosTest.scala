@@ -207,12 +207,32 @@ class RtrServerScenariosTest extends FunSuite with BeforeAndAfterAll with Before
       case _ => fail("Should get serial notify")
     }
 
-    // Send serial, should get reset response (we don't support incremental updates yet)
+    // Send serial, should get incremental response: the same ROAs, so only a new serial
     client.sendPdu(SerialQueryPdu(sessionId = sessionId, serial = lastSerial))
 
-    var responsePdusAfterNewRoas = client.getResponse(expectedNumber = 1)
-    responsePdusAfterNewRoas.size should equal(1)
-    responsePdusAfterNewRoas.head match {
+    var responsePdusAfterNewRoas = client.getResponse(expectedNumber = 2)
+    responsePdusAfterNewRoas.size should equal(2)
+
+    iter = responsePdusAfterNewRoas.iterator
+    iter.next() match {
+      case CacheResponsePdu(responseSessionId) => responseSessionId should equal(sessionId)
+      case _ => fail("Should get cache response")
+    }
+
+    iter.next() match {
+      case EndOfDataPdu(responseSessionId, serial) =>
+        responseSessionId should equal(sessionId)
+        serial should equal(cache.single.get.version)
+      case _ => fail("Expected end of data")
+    }
+    client should be ('connected)
+
+    // Send unknown serial, should get reset response
+    client.sendPdu(SerialQueryPdu(sessionId = sessionId, serial = lastSerial + 100))
+
+    var responsePdusForUnknownSerial = client.getResponse(expectedNumber = 1)
+    responsePdusForUnknownSerial.size should equal(1)
+    responsePdusForUnknownSerial.head match {
       case CacheResetPdu() => // No content to check, we're good
       case _ => fail("Should get cache reset response")
     }
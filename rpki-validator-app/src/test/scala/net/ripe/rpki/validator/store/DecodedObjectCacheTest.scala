@@ -0,0 +1,91 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package store
+
+import akka.util.ByteString
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.rpki.commons.crypto.cms.roa.RoaCmsTest
+import DecodedObjectCache.CachedObject
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class DecodedObjectCacheTest extends FunSuite with ShouldMatchers {
+
+  val roa = RoaCmsTest.getRoaCms
+
+  def hash(n: Int) = ByteString(Array[Byte](n.toByte))
+
+  def cached(weight: Int) = CachedObject(roa, Seq.empty, weight)
+
+  test("Should count hits and misses") {
+    val subject = new DecodedObjectCache(1000)
+    subject.put(hash(1), cached(10))
+
+    subject.get(hash(1)).map(_.repositoryObject) should equal(Some(roa))
+    subject.get(hash(2)) should equal(None)
+
+    subject.hitCount should equal(1)
+    subject.missCount should equal(1)
+  }
+
+  test("Should evict least recently used objects when exceeding the maximum size") {
+    val subject = new DecodedObjectCache(100)
+    subject.put(hash(1), cached(40))
+    subject.put(hash(2), cached(40))
+    subject.get(hash(1))
+
+    subject.put(hash(3), cached(40))
+
+    subject.get(hash(1)) should be('defined)
+    subject.get(hash(2)) should equal(None)
+    subject.get(hash(3)) should be('defined)
+    subject.size should equal(2)
+    subject.weight should equal(80)
+    subject.evictionCount should equal(1)
+  }
+
+  test("Should not cache objects larger than the maximum size") {
+    val subject = new DecodedObjectCache(100)
+    subject.put(hash(1), cached(101))
+
+    subject.size should equal(0)
+    subject.weight should equal(0)
+  }
+
+  test("Should replace the weight of an object that is stored again") {
+    val subject = new DecodedObjectCache(100)
+    subject.put(hash(1), cached(40))
+    subject.put(hash(1), cached(50))
+
+    subject.size should equal(1)
+    subject.weight should equal(50)
+  }
+}
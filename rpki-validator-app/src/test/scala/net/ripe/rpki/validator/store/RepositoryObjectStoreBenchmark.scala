@@ -0,0 +1,139 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package store
+
+import java.io.File
+import java.net.URI
+import scala.util.Random
+import akka.util.ByteString
+import org.apache.commons.codec.binary.Base64
+import org.apache.commons.dbcp.BasicDataSource
+import org.apache.commons.io.{FileUtils, IOUtils}
+import org.joda.time.DateTime
+import org.springframework.jdbc.core.JdbcTemplate
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms
+import models.StoredRepositoryObject
+
+/**
+ * Compares the Base64 VARCHAR schema (V3) with the binary schema (V4) of the object store: lookup latency by hash and
+ * database file size. The V4 database is produced by running the V4 migration on the V3 database, which also
+ * exercises the in-place data migration.
+ *
+ * Run with: scala -cp <test classpath> net.ripe.rpki.validator.store.RepositoryObjectStoreBenchmark [objectCount] [lookupCount]
+ */
+object RepositoryObjectStoreBenchmark extends App {
+
+  val objectCount = args.headOption.map(_.toInt).getOrElse(40000)
+  val lookupCount = args.drop(1).headOption.map(_.toInt).getOrElse(20000)
+  val random = new Random(42)
+
+  val baseDirectory = new File(System.getProperty("java.io.tmpdir"), "rpki-object-store-benchmark")
+  FileUtils.deleteQuietly(baseDirectory)
+  val databaseName = new File(baseDirectory, "rpki-objects").getAbsolutePath
+  val databaseFile = new File(databaseName + ".h2.db")
+
+  val objects = Vector.fill(objectCount) {
+    val size = 1000 + random.nextInt(3000)
+    val content = new Array[Byte](size)
+    random.nextBytes(content)
+    StoredRepositoryObject(hash = ByteString(ManifestCms.hashContents(content)), uri = URI.create("rsync://host/repository/" + random.nextLong.abs + ".roa"), binaryObject = ByteString(content), expires = new DateTime().plusDays(1))
+  }
+  val lookups = Vector.fill(lookupCount)(objects(random.nextInt(objects.size)).hash.toArray)
+
+  withTemplate { template =>
+    template.execute("""CREATE TABLE retrieved_objects (
+      hash CHARACTER VARYING(2000) NOT NULL PRIMARY KEY,
+      uri CHARACTER VARYING(2000) NOT NULL,
+      encoded_object CHARACTER VARYING NOT NULL,
+      expires TIMESTAMP NOT NULL,
+      update_order BIGINT NOT NULL)""")
+    template.execute("CREATE INDEX uri_idx ON retrieved_objects(uri, update_order)")
+    for ((o, i) <- objects.zipWithIndex) {
+      template.update("insert into retrieved_objects (hash, uri, encoded_object, expires, update_order) values (?, ?, ?, ?, ?)",
+        Base64.encodeBase64String(o.hash.toArray), o.uri.toString, Base64.encodeBase64String(o.binaryObject.toArray), new java.sql.Timestamp(o.expires.getMillis), java.lang.Long.valueOf(i))
+    }
+  }
+  val sizeBefore = databaseFile.length
+
+  val latencyBefore = withTemplate { template =>
+    measureLookups { hash =>
+      val encoded = template.queryForObject("select encoded_object from retrieved_objects where hash = ?", Array[Object](Base64.encodeBase64String(hash)), classOf[String])
+      Base64.decodeBase64(encoded)
+    }
+  }
+
+  withTemplate { template =>
+    val started = System.nanoTime
+    migrationStatements.foreach(statement => template.execute(statement))
+    println("V4 migration of %d objects took %d ms".format(objectCount, (System.nanoTime - started) / 1000000))
+  }
+  val sizeAfter = databaseFile.length
+
+  val latencyAfter = withTemplate { template =>
+    val store = new RepositoryObjectStore(template.getDataSource)
+    measureLookups { hash => store.getByHash(hash).get.binaryObject }
+  }
+
+  println("%d objects, %d lookups by hash".format(objectCount, lookupCount))
+  println("Base64 VARCHAR (V3): %8d bytes on disk, %6.1f us per lookup".format(sizeBefore, latencyBefore))
+  println("Binary (V4):         %8d bytes on disk, %6.1f us per lookup".format(sizeAfter, latencyAfter))
+  FileUtils.deleteQuietly(baseDirectory)
+
+  private def withTemplate[T](f: JdbcTemplate => T): T = {
+    val dataSource = new BasicDataSource
+    dataSource.setUrl("jdbc:h2:" + databaseName)
+    dataSource.setDriverClassName("org.h2.Driver")
+    dataSource.setDefaultAutoCommit(true)
+    val template = new JdbcTemplate(dataSource)
+    try {
+      f(template)
+    } finally {
+      template.execute("SHUTDOWN COMPACT")
+      dataSource.close()
+    }
+  }
+
+  /**
+   * @return mean latency in microseconds, after a warm-up round.
+   */
+  private def measureLookups(lookup: Array[Byte] => Any): Double = {
+    lookups.take(lookupCount / 10).foreach(lookup)
+    val started = System.nanoTime
+    lookups.foreach(lookup)
+    (System.nanoTime - started) / 1000.0 / lookupCount
+  }
+
+  private def migrationStatements: Seq[String] = {
+    val script = IOUtils.toString(getClass.getResourceAsStream("/db/objectstore/migration/V4__binary_hash_and_object.sql"), "UTF-8")
+    val withoutComments = script.split("\n").filterNot(_.trim.startsWith("--")).mkString("\n")
+    withoutComments.split(";").map(_.trim).filter(_.nonEmpty).toSeq
+  }
+}
@@ -96,4 +96,22 @@ class RepositoryObjectStoreTest extends FunSuite with BeforeAndAfter with Should
     store.getByHash(ROA_RETRIEVED_OBJECT.hash.toArray) should equal(Some(ROA_RETRIEVED_OBJECT))
   }
 
-}
\ No newline at end of file
+  test("Should store a batch of objects with increasing update order") {
+    val mft_uri = URI.create("rsync://some.host/batch/mft.mft")
+    val now = new DateTime
+    val manifests = (0 until 3).map { i =>
+      DateTimeUtils.setCurrentMillisFixed(now.plusDays(i).getMillis)
+      StoredRepositoryObject(uri = mft_uri, repositoryObject = ManifestCmsTest.getRootManifestCms)
+    }
+
+    store.put(manifests)
+
+    store.getLatestByUrl(mft_uri) should equal(Some(manifests.last))
+    manifests.foreach { manifest => store.getByHash(manifest.hash.toArray) should equal(Some(manifest)) }
+  }
+
+  test("Should store an empty batch") {
+    store.put(Seq.empty)
+  }
+
+}
@@ -56,7 +56,7 @@ abstract class FeatureSpecification extends ScalatraFeatureSpec with ShouldMatch
     override protected def removeWhitelistEntry(entry: RtrPrefix) = sys.error("TODO")
     override protected def bgpRisDumps = sys.error("TODO")
     override protected def validatedAnnouncements = sys.error("TODO")
-    override protected def getRtrPrefixes = sys.error("TODO")
+    override protected def getVersionedRtrPrefixes = sys.error("TODO")
     override protected def sessionData = sys.error("TBD")
     override lazy val trustAnchors = sys.error("TBD")
     override lazy val validatedObjects = sys.error("TBD")
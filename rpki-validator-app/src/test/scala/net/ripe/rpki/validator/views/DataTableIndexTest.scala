@@ -0,0 +1,88 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package views
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class DataTableIndexTest extends FunSuite with ShouldMatchers {
+
+  val records = IndexedSeq("delta", "alpha", "echo", "charlie", "bravo")
+
+  val subject = new DataTableIndex[String](records, {
+    case 0 => DataTableIndex.sortBy(records, Ordering.String)
+    case 1 => DataTableIndex.sortBy(records, Ordering.String.reverse)
+  })
+
+  test("should sort each column once") {
+    subject.sorted(0).map(records) should equal(Array("alpha", "bravo", "charlie", "delta", "echo"))
+    subject.sorted(0) should be theSameInstanceAs (subject.sorted(0))
+    subject.ranks(0) should equal(Array(3, 0, 4, 2, 1))
+  }
+
+  test("should take the page from the column order without a filter") {
+    val (count, page) = subject.scan(0, false, None, 1, 2)
+
+    count should equal(5)
+    page should equal(Array(4, 3))
+    subject.scan(0, true, None, 0, 2)._2 should equal(Array(2, 0))
+    subject.scan(1, false, None, 4, 10)._2 should equal(Array(1))
+  }
+
+  test("should count all matching records while taking the page") {
+    val (count, page) = subject.scan(0, false, Some(records(_).contains("a")), 1, 2)
+
+    count should equal(4)
+    page.map(records) should equal(Array("bravo", "charlie"))
+  }
+
+  test("should select the page from found records by column order") {
+    subject.select(Array(0, 2, 3), 0, false, 0, 2).map(records) should equal(Array("charlie", "delta"))
+    subject.select(Array(0, 2, 3), 0, true, 1, 5).map(records) should equal(Array("delta", "charlie"))
+  }
+
+  test("should select the smallest values") {
+    DataTableIndex.smallest(Seq(5, 3, 9, 1, 7), 2) should equal(Seq(1, 3))
+    DataTableIndex.smallest(Seq(5, 3, 9), 5) should equal(Seq(3, 5, 9))
+    DataTableIndex.smallest(Seq(5, 3, 9), 0) should be('empty)
+  }
+
+  test("should keep the index of the latest version") {
+    val latest = new DataTableIndex.Latest[String]
+    val version1 = new Object
+    val version2 = new Object
+
+    val index = latest(version1)(subject)
+    latest(version1)(sys.error("should not rebuild")) should be theSameInstanceAs (index)
+    latest(version2)(new DataTableIndex[String](IndexedSeq.empty, _ => Array.empty)) should not be theSameInstanceAs (index)
+  }
+}
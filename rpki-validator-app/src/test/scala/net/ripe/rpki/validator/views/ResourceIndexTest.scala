@@ -0,0 +1,85 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator
+package views
+
+import scala.util.Random
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.ripe.ipresource.{Asn, IpRange}
+
+@org.junit.runner.RunWith(classOf[org.scalatest.junit.JUnitRunner])
+class ResourceIndexTest extends FunSuite with ShouldMatchers {
+
+  val records = IndexedSeq(
+    (new Asn(65001), IpRange.parse("10.0.0.0/8")),
+    (new Asn(65002), IpRange.parse("10.1.0.0/16")),
+    (new Asn(65001), IpRange.parse("10.1.2.0/24")),
+    (new Asn(65003), IpRange.parse("192.168.0.0/16")),
+    (new Asn(65001), IpRange.parse("2001:db8::/32")),
+    (new Asn(65003), IpRange.parse("0.0.0.0/0")))
+
+  val subject = ResourceIndex(records.size, records(_)._1, records(_)._2)
+
+  test("should order prefixes by family, start and length") {
+    subject.byPrefix should equal(Array(5, 0, 1, 2, 3, 4))
+  }
+
+  test("should find records by ASN") {
+    subject.originatedBy(new Asn(65001)).sorted should equal(Array(0, 2, 4))
+    subject.originatedBy(new Asn(65004)) should be('empty)
+  }
+
+  test("should find records overlapping a range") {
+    subject.overlapping(IpRange.parse("10.1.0.0/16")).sorted should equal(Array(0, 1, 2, 5))
+    subject.overlapping(IpRange.parse("10.1.2.128-10.2.0.0")).sorted should equal(Array(0, 1, 2, 5))
+    subject.overlapping(IpRange.parse("2001:db8:1::/48")).sorted should equal(Array(4))
+  }
+
+  test("should only search by ASN and IP range") {
+    subject.search(new Asn(65002)).map(_.toSeq) should equal(Some(Seq(1)))
+    subject.search("10.1") should equal(None)
+  }
+
+  test("should agree with overlap checks on random prefixes") {
+    val random = new Random(42)
+    def randomPrefix() = {
+      val length = 1 + random.nextInt(24)
+      val address = random.nextInt() & (-1 << (32 - length))
+      IpRange.parse("%d.%d.%d.%d/%d".format((address >>> 24) & 0xff, (address >>> 16) & 0xff, (address >>> 8) & 0xff, address & 0xff, length))
+    }
+    val prefixes = IndexedSeq.fill(1000)(randomPrefix())
+    val index = ResourceIndex(prefixes.size, _ => new Asn(65001), prefixes)
+
+    for (range <- Seq.fill(100)(randomPrefix())) {
+      index.overlapping(range).sorted should equal(prefixes.indices.filter(prefixes(_).overlaps(range)).toArray)
+    }
+  }
+}
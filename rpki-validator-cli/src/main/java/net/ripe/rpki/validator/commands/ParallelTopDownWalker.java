@@ -0,0 +1,144 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.commands;
+
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
+import net.ripe.rpki.validator.fetchers.CertificateRepositoryObjectFetcher;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Walks the repository like the {@link TopDownWalker}, but processes every publication point (prefetch, manifest
+ * and manifest entries) as a separate task on the given executor. Child CA certificates discovered while processing
+ * a publication point are submitted as new tasks.
+ *
+ * Every task uses its own {@link ValidationResult}, because a validation result keeps track of a current location
+ * and can not be shared between threads. Listeners registered with the fetcher therefore see exactly the same
+ * checks per location as with the serial walker. The fetcher and its listeners must be thread-safe.
+ */
+public class ParallelTopDownWalker {
+
+    private final CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher;
+    private final ExecutorService executor;
+    private final Set<X509ResourceCertificate> added = TopDownWalkerWorkQueue.newConcurrentCertificateSet();
+    private final Queue<CertificateRepositoryObjectValidationContext> trustAnchors = new LinkedList<CertificateRepositoryObjectValidationContext>();
+    private PublicationPointCache publicationPointCache;
+
+    /**
+     * @param executor the executor used to process publication points. It is not shut down by this walker.
+     */
+    public ParallelTopDownWalker(CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher, ExecutorService executor) {
+        Validate.notNull(certificateRepositoryObjectFetcher);
+        Validate.notNull(executor);
+        this.certificateRepositoryObjectFetcher = certificateRepositoryObjectFetcher;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the cache used to skip publication points that did not change since an earlier walk.
+     */
+    public void setPublicationPointCache(PublicationPointCache publicationPointCache) {
+        this.publicationPointCache = publicationPointCache;
+    }
+
+    public void addTrustAnchor(CertificateRepositoryObjectValidationContext trustAnchor) {
+        Validate.isTrue(trustAnchor.getCertificate().isObjectIssuer(), "trust anchor must be an object issuer");
+        Validate.isTrue(trustAnchor.getCertificate() instanceof X509ResourceCertificate, "Top down walker can only handle resource certs");
+        if (added.add((X509ResourceCertificate) trustAnchor.getCertificate())) {
+            trustAnchors.add(trustAnchor);
+        }
+    }
+
+    /**
+     * Processes all added trust anchors and their descendants, and returns when all publication points are done.
+     */
+    public void execute() {
+        CompletionService<List<CertificateRepositoryObjectValidationContext>> completionService = new ExecutorCompletionService<List<CertificateRepositoryObjectValidationContext>>(executor);
+        int pending = 0;
+        while (!trustAnchors.isEmpty()) {
+            completionService.submit(new PublicationPointTask(trustAnchors.remove()));
+            pending++;
+        }
+
+        while (pending > 0) {
+            List<CertificateRepositoryObjectValidationContext> children = takeCompleted(completionService);
+            pending--;
+            for (CertificateRepositoryObjectValidationContext child : children) {
+                completionService.submit(new PublicationPointTask(child));
+                pending++;
+            }
+        }
+    }
+
+    private List<CertificateRepositoryObjectValidationContext> takeCompleted(CompletionService<List<CertificateRepositoryObjectValidationContext>> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for publication point validation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("publication point validation failed", e.getCause());
+        }
+    }
+
+    private class PublicationPointTask implements Callable<List<CertificateRepositoryObjectValidationContext>> {
+        private final CertificateRepositoryObjectValidationContext context;
+
+        PublicationPointTask(CertificateRepositoryObjectValidationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public List<CertificateRepositoryObjectValidationContext> call() {
+            Queue<CertificateRepositoryObjectValidationContext> children = new LinkedList<CertificateRepositoryObjectValidationContext>();
+            ValidationResult validationResult = ValidationResult.withLocation(context.getRepositoryURI());
+            TopDownWalker walker = new TopDownWalker(new TopDownWalkerWorkQueue(children, added), certificateRepositoryObjectFetcher, validationResult);
+            walker.setPublicationPointCache(publicationPointCache);
+            walker.prefetch(context);
+            walker.processManifest(context);
+            return new ArrayList<CertificateRepositoryObjectValidationContext>(children);
+        }
+    }
+}
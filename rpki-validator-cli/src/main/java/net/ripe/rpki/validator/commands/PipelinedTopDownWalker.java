@@ -0,0 +1,183 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.commands;
+
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
+import net.ripe.rpki.validator.fetchers.CertificateRepositoryObjectFetcher;
+import org.apache.commons.lang.Validate;
+
+import java.net.URI;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks the repository like the {@link TopDownWalker}, but splits the work into two stages: an I/O stage that
+ * prefetches publication points on a pool of threads, and a validation stage that processes the manifests and objects
+ * of prefetched publication points on the calling thread. At most <code>lookAhead</code> publication points are
+ * prefetched ahead of the validation stage.
+ *
+ * The busy time of both stages is measured, so the look-ahead can be tuned using {@link #getIoUtilisation()} and
+ * {@link #getValidationUtilisation()}. The fetcher must support concurrent prefetching.
+ */
+public class PipelinedTopDownWalker {
+
+    private final CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher;
+    private final int lookAhead;
+    private final Queue<CertificateRepositoryObjectValidationContext> discovered = new LinkedList<CertificateRepositoryObjectValidationContext>();
+    private final TopDownWalker walker;
+
+    private final AtomicLong ioBusyNanos = new AtomicLong();
+    private long validationBusyNanos;
+    private long elapsedNanos;
+
+    /**
+     * @param lookAhead the maximum number of publication points that are prefetched, or waiting for validation, at
+     *                  any time. This is also the number of I/O threads.
+     */
+    public PipelinedTopDownWalker(CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher, int lookAhead) {
+        Validate.notNull(certificateRepositoryObjectFetcher);
+        Validate.isTrue(lookAhead > 0, "look-ahead must be positive");
+        this.certificateRepositoryObjectFetcher = certificateRepositoryObjectFetcher;
+        this.lookAhead = lookAhead;
+        this.walker = new TopDownWalker(discovered, certificateRepositoryObjectFetcher, ValidationResult.withLocation("n/a"));
+    }
+
+    /**
+     * Sets the cache used to skip publication points that did not change since an earlier walk.
+     */
+    public void setPublicationPointCache(PublicationPointCache publicationPointCache) {
+        walker.setPublicationPointCache(publicationPointCache);
+    }
+
+    public void addTrustAnchor(CertificateRepositoryObjectValidationContext trustAnchor) {
+        walker.addTrustAnchor(trustAnchor);
+    }
+
+    public void execute() {
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(lookAhead);
+        try {
+            execute(new ExecutorCompletionService<CertificateRepositoryObjectValidationContext>(ioExecutor));
+        } finally {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    private void execute(CompletionService<CertificateRepositoryObjectValidationContext> prefetched) {
+        long startedAt = System.nanoTime();
+        Queue<CertificateRepositoryObjectValidationContext> pending = new LinkedList<CertificateRepositoryObjectValidationContext>();
+        int inPipeline = 0;
+        while (true) {
+            pending.addAll(discovered);
+            discovered.clear();
+            while (inPipeline < lookAhead && !pending.isEmpty()) {
+                prefetched.submit(new PrefetchTask(pending.remove()));
+                inPipeline++;
+            }
+            if (inPipeline == 0) {
+                break;
+            }
+
+            CertificateRepositoryObjectValidationContext context = takePrefetched(prefetched);
+            inPipeline--;
+
+            long validationStartedAt = System.nanoTime();
+            walker.processManifest(context);
+            validationBusyNanos += System.nanoTime() - validationStartedAt;
+        }
+        elapsedNanos += System.nanoTime() - startedAt;
+    }
+
+    private CertificateRepositoryObjectValidationContext takePrefetched(CompletionService<CertificateRepositoryObjectValidationContext> prefetched) {
+        try {
+            return prefetched.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for prefetch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("prefetch failed", e.getCause());
+        }
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return the fraction of the available I/O thread time spent prefetching.
+     */
+    public double getIoUtilisation() {
+        return elapsedNanos == 0 ? 0 : (double) ioBusyNanos.get() / ((double) elapsedNanos * lookAhead);
+    }
+
+    /**
+     * @return the fraction of time the validation stage was busy, as opposed to waiting for prefetched publication
+     *         points.
+     */
+    public double getValidationUtilisation() {
+        return elapsedNanos == 0 ? 0 : (double) validationBusyNanos / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("elapsed %d ms, I/O utilisation %.2f, validation utilisation %.2f, look-ahead %d", getElapsedMillis(), getIoUtilisation(), getValidationUtilisation(), lookAhead);
+    }
+
+    private class PrefetchTask implements Callable<CertificateRepositoryObjectValidationContext> {
+        private final CertificateRepositoryObjectValidationContext context;
+
+        PrefetchTask(CertificateRepositoryObjectValidationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public CertificateRepositoryObjectValidationContext call() {
+            long startedAt = System.nanoTime();
+            try {
+                URI repositoryURI = context.getRepositoryURI();
+                certificateRepositoryObjectFetcher.prefetch(repositoryURI, ValidationResult.withLocation(repositoryURI));
+                return context;
+            } finally {
+                ioBusyNanos.addAndGet(System.nanoTime() - startedAt);
+            }
+        }
+    }
+}
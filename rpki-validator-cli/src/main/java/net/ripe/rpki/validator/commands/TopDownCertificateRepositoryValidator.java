@@ -34,6 +34,7 @@ import net.ripe.rpki.validator.fetchers.CertificateRepositoryObjectFetcher;
 import net.ripe.rpki.validator.fetchers.NotifyingCertificateRepositoryObjectFetcher;
 import net.ripe.rpki.validator.fetchers.RpkiRepositoryObjectFetcherAdapter;
 import net.ripe.rpki.validator.fetchers.RsyncRpkiRepositoryObjectFetcher;
+import net.ripe.rpki.validator.fetchers.RsyncScheduler;
 import net.ripe.rpki.validator.fetchers.ValidatingCertificateRepositoryObjectFetcher;
 import net.ripe.rpki.validator.output.ObjectFetcherResultLogger;
 import net.ripe.rpki.validator.output.ValidatedObjectWriter;
@@ -48,7 +49,10 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
-import net.ripe.rpki.commons.rsync.Rsync;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import net.ripe.rpki.commons.validation.ValidationLocation;
 import net.ripe.rpki.commons.validation.ValidationResult;
 import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
@@ -71,6 +75,10 @@ public class TopDownCertificateRepositoryValidator {
 
     static final String UNVALIDATED_DIRECTORY_NAME = "unvalidated";
 
+    static final int RSYNC_MAX_CONCURRENT = 8;
+
+    static final int RSYNC_MAX_CONCURRENT_PER_HOST = 4;
+
     private List<CertificateRepositoryObjectValidationContext> trustAnchors;
 
     private List<URI> prefetchUris = new ArrayList<URI>();
@@ -87,6 +95,8 @@ public class TopDownCertificateRepositoryValidator {
 
     private CertificateRepositoryObjectFetcher fetcher;
 
+    private RsyncScheduler rsyncScheduler;
+
     private ValidationSummaryCollector validationSummaryCollector;
 
     public TopDownCertificateRepositoryValidator(List<CertificateRepositoryObjectValidationContext> trustAnchors, File outputDirectory) {
@@ -117,7 +127,8 @@ public class TopDownCertificateRepositoryValidator {
     }
 
     private CachingCertificateRepositoryObjectFetcher createCertificateRepositoryObjectFetcher() {
-        CertificateRepositoryObjectFetcher rsyncFetcher = new RpkiRepositoryObjectFetcherAdapter(new RsyncRpkiRepositoryObjectFetcher(new Rsync(), new UriToFileMapper(getUnvalidatedOutputDirectory())));
+        rsyncScheduler = new RsyncScheduler(RSYNC_MAX_CONCURRENT, RSYNC_MAX_CONCURRENT_PER_HOST, 0);
+        CertificateRepositoryObjectFetcher rsyncFetcher = new RpkiRepositoryObjectFetcherAdapter(new RsyncRpkiRepositoryObjectFetcher(rsyncScheduler, new UriToFileMapper(getUnvalidatedOutputDirectory())));
 
         ValidatingCertificateRepositoryObjectFetcher validatingFetcher = new ValidatingCertificateRepositoryObjectFetcher(rsyncFetcher);
 
@@ -179,10 +190,45 @@ public class TopDownCertificateRepositoryValidator {
     }
 
 
+    /**
+     * Prefetches all URIs concurrently, the rsync scheduler limits the number of rsync processes.
+     */
     private void doPrefetching() {
-        for (URI prefetchUri : prefetchUris) {
-            LOG.info("prefetching " + prefetchUri);
-            fetcher.prefetch(prefetchUri, ValidationResult.withLocation(prefetchUri));
+        if (prefetchUris.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(prefetchUris.size(), RSYNC_MAX_CONCURRENT));
+        try {
+            List<Future<?>> prefetches = new ArrayList<Future<?>>();
+            for (final URI prefetchUri : prefetchUris) {
+                prefetches.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        LOG.info("prefetching " + prefetchUri);
+                        fetcher.prefetch(prefetchUri, ValidationResult.withLocation(prefetchUri));
+                    }
+                }));
+            }
+            for (Future<?> prefetch : prefetches) {
+                awaitPrefetch(prefetch);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("prefetching done, rsync queue wait " + rsyncScheduler.getQueueWaitTime() + " ms, transfer " + rsyncScheduler.getTransferTime() + " ms");
+    }
+
+    private void awaitPrefetch(Future<?> prefetch) {
+        try {
+            prefetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while prefetching", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("prefetching failed", e.getCause());
         }
     }
 
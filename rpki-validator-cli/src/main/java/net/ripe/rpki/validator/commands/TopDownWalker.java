@@ -40,6 +40,7 @@ import org.apache.commons.lang.Validate;
 
 import java.net.URI;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 public class TopDownWalker {
@@ -47,6 +48,7 @@ public class TopDownWalker {
     private final CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher;
     private final TopDownWalkerWorkQueue workQueue;
     private final ValidationResult validationResult;
+    private PublicationPointCache publicationPointCache;
 
     public TopDownWalker(CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher) {
         this(new LinkedList<CertificateRepositoryObjectValidationContext>(), certificateRepositoryObjectFetcher, ValidationResult.withLocation("n/a"));
@@ -60,11 +62,25 @@ public class TopDownWalker {
      * Convenience constructor for unit testing, allowing injection of the work queue
      */
     TopDownWalker(Queue<CertificateRepositoryObjectValidationContext> workQueue, CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher, ValidationResult validationResult) {
+        this(new TopDownWalkerWorkQueue(workQueue), certificateRepositoryObjectFetcher, validationResult);
+    }
+
+    /**
+     * Used by the {@link ParallelTopDownWalker} to share the set of already processed certificates between walkers.
+     */
+    TopDownWalker(TopDownWalkerWorkQueue workQueue, CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher, ValidationResult validationResult) {
         this.certificateRepositoryObjectFetcher = certificateRepositoryObjectFetcher;
-        this.workQueue = new TopDownWalkerWorkQueue(workQueue);
+        this.workQueue = workQueue;
         this.validationResult = validationResult;
     }
 
+    /**
+     * Sets the cache used to skip publication points that did not change since an earlier walk.
+     */
+    public void setPublicationPointCache(PublicationPointCache publicationPointCache) {
+        this.publicationPointCache = publicationPointCache;
+    }
+
     public void addTrustAnchor(CertificateRepositoryObjectValidationContext trustAnchor) {
         Validate.isTrue(trustAnchor.getCertificate().isObjectIssuer(), "trust anchor must be an object issuer");
         workQueue.add(trustAnchor);
@@ -87,8 +103,21 @@ public class TopDownWalker {
     void processManifest(CertificateRepositoryObjectValidationContext context) {
         URI manifestURI = context.getManifestURI();
         ManifestCms manifestCms = fetchManifest(manifestURI, context);
-        if (manifestCms != null) {
+        if (manifestCms == null) {
+            return;
+        }
+        if (publicationPointCache == null) {
+            processManifestFiles(context, manifestCms);
+            return;
+        }
+        List<CertificateRepositoryObjectValidationContext> children = publicationPointCache.reuse(context, manifestCms);
+        if (children != null) {
+            for (CertificateRepositoryObjectValidationContext child : children) {
+                workQueue.add(child);
+            }
+        } else {
             processManifestFiles(context, manifestCms);
+            publicationPointCache.processed(context, manifestCms);
         }
     }
 
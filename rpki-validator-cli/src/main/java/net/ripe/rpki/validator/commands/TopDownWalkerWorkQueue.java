@@ -33,13 +33,16 @@ import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
 import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
 import org.apache.commons.lang.Validate;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A queue that keeps track of all certificates ever added and never allows the same certificate to be added twice.
+ * The set of added certificates is thread-safe and can be shared between several queues, so that the
+ * {@link ParallelTopDownWalker} never processes the same certificate twice.
  */
 public class TopDownWalkerWorkQueue {
 
@@ -51,10 +54,18 @@ public class TopDownWalkerWorkQueue {
     }
 
     public TopDownWalkerWorkQueue(Queue<CertificateRepositoryObjectValidationContext> queue) {
-        this.added = new HashSet<X509ResourceCertificate>();
+        this(queue, newConcurrentCertificateSet());
+    }
+
+    TopDownWalkerWorkQueue(Queue<CertificateRepositoryObjectValidationContext> queue, Set<X509ResourceCertificate> added) {
+        this.added = added;
         this.queue = queue;
     }
 
+    static Set<X509ResourceCertificate> newConcurrentCertificateSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<X509ResourceCertificate, Boolean>());
+    }
+
     public void add(CertificateRepositoryObjectValidationContext context) {
         Validate.isTrue(context.getCertificate() instanceof X509ResourceCertificate, "Top down walker can only handle resource certs");
         if (added.add((X509ResourceCertificate) context.getCertificate())) {
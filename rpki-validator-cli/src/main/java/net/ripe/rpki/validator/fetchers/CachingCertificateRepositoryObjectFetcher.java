@@ -37,49 +37,71 @@ import net.ripe.rpki.commons.validation.ValidationResult;
 import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
 
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Caches the results from fetching objects using another {@link CertificateRepositoryObjectFetcher}.
+ *
+ * Manifests and CRLs are kept in a separate cache from all other objects, so that they stay cached preferentially when
+ * the (much more numerous) leaf objects such as ROAs are evicted. Both caches are safe for use by concurrent walkers.
+ * Failed manifest and CRL fetches are remembered in the publication point cache.
  */
 public class CachingCertificateRepositoryObjectFetcher implements CertificateRepositoryObjectFetcher {
 
-    private final Map<URI, CertificateRepositoryObject> objectCache = new HashMap<URI, CertificateRepositoryObject>();
-    private final Map<URI, ManifestCms> manifestCache = new HashMap<URI, ManifestCms>();
-    private final Map<URI, X509Crl> crlCache = new HashMap<URI, X509Crl>();
+    private final CertificateRepositoryObjectCache publicationPointCache;
+    private final CertificateRepositoryObjectCache objectCache;
 
     private final CertificateRepositoryObjectFetcher fetcher;
 
     public CachingCertificateRepositoryObjectFetcher(CertificateRepositoryObjectFetcher fetcher) {
+        this(fetcher, CertificateRepositoryObjectCache.unbounded(), CertificateRepositoryObjectCache.unbounded());
+    }
+
+    /**
+     * @param publicationPointCache cache for manifests and CRLs
+     * @param objectCache cache for all other objects (and failed fetches)
+     */
+    public CachingCertificateRepositoryObjectFetcher(CertificateRepositoryObjectFetcher fetcher, CertificateRepositoryObjectCache publicationPointCache, CertificateRepositoryObjectCache objectCache) {
         this.fetcher = fetcher;
+        this.publicationPointCache = publicationPointCache;
+        this.objectCache = objectCache;
+    }
+
+    public CertificateRepositoryObjectCache getPublicationPointCache() {
+        return publicationPointCache;
+    }
+
+    public CertificateRepositoryObjectCache getObjectCache() {
+        return objectCache;
     }
 
     @Override
     public X509Crl getCrl(URI uri, CertificateRepositoryObjectValidationContext context, ValidationResult result) {
-        if (crlCache.containsKey(uri)) {
-            return crlCache.get(uri);
+        CertificateRepositoryObjectCache.Entry entry = lookup(uri, publicationPointCache, objectCache);
+        if (entry != null) {
+            return entry.getObject() instanceof X509Crl ? (X509Crl) entry.getObject() : null;
         }
         X509Crl crl = fetcher.getCrl(uri, context, result);
-        updateCache(uri, crl);
+        publicationPointCache.put(uri, crl);
         return crl;
     }
 
     @Override
     public ManifestCms getManifest(URI uri, CertificateRepositoryObjectValidationContext context, ValidationResult result) {
-        if (manifestCache.containsKey(uri)) {
-            return manifestCache.get(uri);
+        CertificateRepositoryObjectCache.Entry entry = lookup(uri, publicationPointCache, objectCache);
+        if (entry != null) {
+            return entry.getObject() instanceof ManifestCms ? (ManifestCms) entry.getObject() : null;
         }
         ManifestCms manifest = fetcher.getManifest(uri, context, result);
-        updateCache(uri, manifest);
+        publicationPointCache.put(uri, manifest);
         return manifest;
     }
 
     @Override
     public CertificateRepositoryObject getObject(URI uri, CertificateRepositoryObjectValidationContext context,
             Specification<byte[]> fileContentSpecification, ValidationResult result) {
-        if (objectCache.containsKey(uri)) {
-            return objectCache.get(uri);
+        CertificateRepositoryObjectCache.Entry entry = lookup(uri, objectCache, publicationPointCache);
+        if (entry != null) {
+            return entry.getObject();
         }
         CertificateRepositoryObject object = fetcher.getObject(uri, context, fileContentSpecification, result);
         updateCache(uri, object);
@@ -92,17 +114,19 @@ public class CachingCertificateRepositoryObjectFetcher implements CertificateRep
     }
 
     public void updateCache(URI uri, CertificateRepositoryObject object) {
-        objectCache.put(uri, object);
-        if (object instanceof X509Crl) {
-            crlCache.put(uri, (X509Crl) object);
-            manifestCache.put(uri, null);
-        } else if (object instanceof ManifestCms) {
-            manifestCache.put(uri, (ManifestCms) object);
-            crlCache.put(uri, null);
+        if (object instanceof X509Crl || object instanceof ManifestCms) {
+            publicationPointCache.put(uri, object);
         } else {
-            manifestCache.put(uri, null);
-            crlCache.put(uri, null);
+            objectCache.put(uri, object);
         }
     }
 
+    /**
+     * Looks up the URI in the cache expected to hold it, falling back to the other cache only when it holds the URI, so
+     * that every lookup is counted exactly once (and misses in the expected cache).
+     */
+    private static CertificateRepositoryObjectCache.Entry lookup(URI uri, CertificateRepositoryObjectCache expected, CertificateRepositoryObjectCache other) {
+        return !expected.contains(uri) && other.contains(uri) ? other.get(uri) : expected.get(uri);
+    }
+
 }
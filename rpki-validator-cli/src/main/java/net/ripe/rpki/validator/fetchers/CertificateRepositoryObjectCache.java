@@ -0,0 +1,204 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import org.apache.commons.lang.Validate;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, size-bounded LRU cache of fetched objects. The cache is split into independently locked segments
+ * (selected by URI hash) so that concurrent walkers rarely contend. Both the number of entries and the total size of
+ * the encoded objects are limited; when either limit is exceeded the least recently used entries of the segment are
+ * evicted.
+ *
+ * A <code>null</code> object can be cached to remember failed fetches.
+ */
+public class CertificateRepositoryObjectCache {
+
+    /**
+     * Weight used for cached fetch failures.
+     */
+    static final long NULL_OBJECT_WEIGHT = 64;
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public static CertificateRepositoryObjectCache unbounded() {
+        return new CertificateRepositoryObjectCache(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public CertificateRepositoryObjectCache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, DEFAULT_SEGMENTS);
+    }
+
+    CertificateRepositoryObjectCache(int maxEntries, long maxBytes, int segmentCount) {
+        Validate.isTrue(maxEntries > 0, "maximum number of entries must be positive");
+        Validate.isTrue(maxBytes > 0, "maximum size must be positive");
+        Validate.isTrue(segmentCount > 0, "number of segments must be positive");
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            segments[i] = new Segment(Math.max(1, maxEntries / segmentCount), Math.max(1, maxBytes / segmentCount));
+        }
+    }
+
+    /**
+     * @return the cached entry, or <code>null</code> when the URI is not cached.
+     */
+    public Entry get(URI uri) {
+        Entry entry = segmentFor(uri).get(uri);
+        if (entry == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(URI uri, CertificateRepositoryObject object) {
+        segmentFor(uri).put(uri, new Entry(object));
+    }
+
+    /**
+     * Unlike {@link #get(URI)}, does not count as a hit or miss.
+     */
+    public boolean contains(URI uri) {
+        return segmentFor(uri).get(uri) != null;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int size() {
+        int result = 0;
+        for (Segment segment : segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the total size in bytes of the cached encoded objects.
+     */
+    public long weight() {
+        long result = 0;
+        for (Segment segment : segments) {
+            result += segment.weight();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + size() + ", bytes=" + weight() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount();
+    }
+
+    private Segment segmentFor(URI uri) {
+        int hash = uri.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    public static final class Entry {
+        private final CertificateRepositoryObject object;
+        private final long weight;
+
+        Entry(CertificateRepositoryObject object) {
+            this.object = object;
+            this.weight = object == null ? NULL_OBJECT_WEIGHT : object.getEncoded().length;
+        }
+
+        public CertificateRepositoryObject getObject() {
+            return object;
+        }
+    }
+
+    private final class Segment {
+        private final int maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true);
+        private long weight;
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Entry get(URI uri) {
+            return entries.get(uri);
+        }
+
+        synchronized void put(URI uri, Entry entry) {
+            Entry previous = entries.put(uri, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            evictIfNeeded();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        private void evictIfNeeded() {
+            Iterator<Map.Entry<URI, Entry>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || weight > maxBytes) && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                weight -= eldest.weight;
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+}
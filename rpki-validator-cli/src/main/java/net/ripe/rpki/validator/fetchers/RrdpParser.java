@@ -0,0 +1,233 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming parser for the RRDP notification, snapshot and delta files (RFC 8182). Published objects are passed to the
+ * handler as they are parsed, so snapshots are never kept in memory as a whole.
+ */
+class RrdpParser {
+
+    static final String NAMESPACE = "http://www.ripe.net/rpki/rrdp";
+
+    interface Handler {
+        /**
+         * @param hash the hash of the object that is replaced, or <code>null</code> for a new object.
+         */
+        void publish(URI uri, String hash, byte[] contents) throws IOException;
+
+        /**
+         * @param hash the hash of the object that is withdrawn.
+         */
+        void withdraw(URI uri, String hash) throws IOException;
+    }
+
+    static final class Reference {
+        final URI uri;
+        final String hash;
+
+        Reference(URI uri, String hash) {
+            this.uri = uri;
+            this.hash = hash;
+        }
+    }
+
+    static final class Notification {
+        final String sessionId;
+        final long serial;
+        final Reference snapshot;
+        final SortedMap<Long, Reference> deltas;
+
+        Notification(String sessionId, long serial, Reference snapshot, SortedMap<Long, Reference> deltas) {
+            this.sessionId = sessionId;
+            this.serial = serial;
+            this.snapshot = snapshot;
+            this.deltas = deltas;
+        }
+
+        /**
+         * @return the deltas to apply, in order, to a local copy with the session and serial, or <code>null</code> when
+         *         the snapshot must be used instead.
+         */
+        List<Reference> deltasSince(String sessionId, long serial) {
+            if (!this.sessionId.equals(sessionId) || serial < 0 || serial > this.serial) {
+                return null;
+            }
+            List<Reference> result = new ArrayList<Reference>();
+            for (long i = serial + 1; i <= this.serial; ++i) {
+                Reference delta = deltas.get(i);
+                if (delta == null) {
+                    return null;
+                }
+                result.add(delta);
+            }
+            return result;
+        }
+    }
+
+    static Notification parseNotification(InputStream in) throws IOException {
+        final String[] sessionId = new String[1];
+        final long[] serial = new long[1];
+        final Reference[] snapshot = new Reference[1];
+        final SortedMap<Long, Reference> deltas = new TreeMap<Long, Reference>();
+        parse(in, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                checkNamespace(uri);
+                if ("notification".equals(localName)) {
+                    sessionId[0] = required(attributes, "session_id");
+                    serial[0] = serial(attributes);
+                } else if ("snapshot".equals(localName)) {
+                    snapshot[0] = reference(attributes);
+                } else if ("delta".equals(localName)) {
+                    deltas.put(serial(attributes), reference(attributes));
+                } else {
+                    throw new SAXException("unexpected element " + localName);
+                }
+            }
+        });
+        if (sessionId[0] == null || snapshot[0] == null) {
+            throw new IOException("Notification file without session or snapshot");
+        }
+        return new Notification(sessionId[0], serial[0], snapshot[0], deltas);
+    }
+
+    /**
+     * Parses a snapshot or delta file, which must have the expected session and serial.
+     */
+    static void parse(InputStream in, final String rootElement, final String sessionId, final long serial, final Handler handler) throws IOException {
+        parse(in, new DefaultHandler() {
+            private URI publishUri;
+            private String publishHash;
+            private StringBuilder contents;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                checkNamespace(uri);
+                if (rootElement.equals(localName)) {
+                    if (!sessionId.equals(required(attributes, "session_id")) || serial != serial(attributes)) {
+                        throw new SAXException(rootElement + " does not match session " + sessionId + " serial " + serial);
+                    }
+                } else if ("publish".equals(localName)) {
+                    publishUri = URI.create(required(attributes, "uri"));
+                    publishHash = attributes.getValue("hash");
+                    contents = new StringBuilder();
+                } else if ("withdraw".equals(localName) && "delta".equals(rootElement)) {
+                    try {
+                        handler.withdraw(URI.create(required(attributes, "uri")), required(attributes, "hash"));
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                } else {
+                    throw new SAXException("unexpected element " + localName);
+                }
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                if (contents != null) {
+                    contents.append(ch, start, length);
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) throws SAXException {
+                if ("publish".equals(localName)) {
+                    try {
+                        handler.publish(publishUri, publishHash, DatatypeConverter.parseBase64Binary(contents.toString()));
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                    publishUri = null;
+                    publishHash = null;
+                    contents = null;
+                }
+            }
+        });
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler) throws IOException {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.newSAXParser().parse(in, handler);
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw new IOException("Error parsing RRDP file: " + e.getMessage(), e);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Error parsing RRDP file: " + e.getMessage(), e);
+        }
+    }
+
+    private static void checkNamespace(String uri) throws SAXException {
+        if (!NAMESPACE.equals(uri)) {
+            throw new SAXException("unexpected namespace " + uri);
+        }
+    }
+
+    private static Reference reference(Attributes attributes) throws SAXException {
+        return new Reference(URI.create(required(attributes, "uri")), required(attributes, "hash"));
+    }
+
+    private static long serial(Attributes attributes) throws SAXException {
+        try {
+            return Long.parseLong(required(attributes, "serial"));
+        } catch (NumberFormatException e) {
+            throw new SAXException("invalid serial " + attributes.getValue("serial"));
+        }
+    }
+
+    private static String required(Attributes attributes, String name) throws SAXException {
+        String value = attributes.getValue(name);
+        if (value == null) {
+            throw new SAXException("missing attribute " + name);
+        }
+        return value;
+    }
+}
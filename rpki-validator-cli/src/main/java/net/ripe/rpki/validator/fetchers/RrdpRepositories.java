@@ -0,0 +1,166 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.ripe.rpki.commons.crypto.x509cert.X509CertificateInformationAccessDescriptor;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+
+/**
+ * Publication points that are available over RRDP, and the RRDP session and serial of the local copies of their
+ * repositories. Kept between validation runs, so only the deltas since the previous run are fetched. Thread-safe.
+ */
+public class RrdpRepositories {
+
+    /**
+     * The access method of the RRDP notification URI in the subject information access of CA certificates (RFC 8182).
+     */
+    public static final String ID_AD_RPKI_NOTIFY = "1.3.6.1.5.5.7.48.13";
+
+    private final ConcurrentMap<URI, URI> notificationUris = new ConcurrentHashMap<URI, URI>();
+    private final ConcurrentMap<URI, State> states = new ConcurrentHashMap<URI, State>();
+
+    /**
+     * Registers the publication point of the CA certificate when its subject information access has an RRDP
+     * notification URI, and unregisters it otherwise.
+     */
+    public void register(X509ResourceCertificate certificate) {
+        URI repositoryUri = certificate.getRepositoryUri();
+        if (repositoryUri == null) {
+            return;
+        }
+        URI notificationUri = findNotificationUri(certificate);
+        if (notificationUri == null) {
+            notificationUris.remove(repositoryUri);
+        } else {
+            register(repositoryUri, notificationUri);
+        }
+    }
+
+    /**
+     * When objects of the repository were rejected while the local copy was synchronized, the local copy is replaced
+     * by the snapshot the next time, so it includes the objects of the newly registered publication point.
+     */
+    public void register(URI repositoryUri, URI notificationUri) {
+        URI previous = notificationUris.put(repositoryUri, notificationUri);
+        State state = states.get(notificationUri);
+        if (state != null && !notificationUri.equals(previous)) {
+            synchronized (state) {
+                if (state.rejectedObjects) {
+                    state.serial = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the notification URI of the registered publication point that covers the URI (the URI itself or one of
+     *         its ancestors), or <code>null</code> when the URI is not covered.
+     */
+    public URI getNotificationUri(URI uri) {
+        URI repositoryUri = getRepositoryUri(uri);
+        return repositoryUri == null ? null : notificationUris.get(repositoryUri);
+    }
+
+    /**
+     * @return the URI of the registered publication point that covers the URI, or <code>null</code> when the URI is
+     *         not covered.
+     */
+    public URI getRepositoryUri(URI uri) {
+        URI candidate = uri;
+        while (true) {
+            if (notificationUris.containsKey(candidate)) {
+                return candidate;
+            }
+            String path = candidate.getRawPath();
+            if (path == null || path.length() <= 1) {
+                return null;
+            }
+            candidate = candidate.resolve(path.endsWith("/") ? ".." : ".");
+        }
+    }
+
+    /**
+     * @return the URIs of the registered publication points that are available from the notification URI.
+     */
+    public Set<URI> getRepositoryUris(URI notificationUri) {
+        Set<URI> result = new HashSet<URI>();
+        for (Map.Entry<URI, URI> entry : notificationUris.entrySet()) {
+            if (entry.getValue().equals(notificationUri)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    static URI findNotificationUri(X509ResourceCertificate certificate) {
+        X509CertificateInformationAccessDescriptor[] descriptors = certificate.getSubjectInformationAccess();
+        if (descriptors != null) {
+            for (X509CertificateInformationAccessDescriptor descriptor : descriptors) {
+                URI location = descriptor.getLocation();
+                if (ID_AD_RPKI_NOTIFY.equals(descriptor.getMethod().getId()) && location != null && isHttp(location)) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHttp(URI uri) {
+        return "https".equalsIgnoreCase(uri.getScheme()) || "http".equalsIgnoreCase(uri.getScheme());
+    }
+
+    /**
+     * @return the state of the local copy of the repository. Synchronize on the state while the local copy is
+     *         synchronized or the state is used.
+     */
+    State getState(URI notificationUri) {
+        State state = new State();
+        State existing = states.putIfAbsent(notificationUri, state);
+        return existing == null ? state : existing;
+    }
+
+    /**
+     * The session and serial of the local copy, and the URIs of the objects in it. A serial of -1 means the local copy
+     * must be replaced by the snapshot. Objects outside the registered publication points of the repository are
+     * rejected, which is remembered until the next snapshot.
+     */
+    static final class State {
+        String sessionId;
+        long serial = -1;
+        boolean rejectedObjects;
+        final Set<URI> objects = new HashSet<URI>();
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import static net.ripe.rpki.commons.validation.ValidationString.*;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
+import net.ripe.rpki.commons.util.Specification;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.validator.util.PackFileStore;
+import net.ripe.rpki.validator.util.UriToFileMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Fetches objects of publication points that are available over RRDP (RFC 8182). The local copy of the repository is
+ * kept in the same directory layout as the rsync fetcher uses, and is brought up to date by applying the deltas since
+ * the previous run, or the snapshot when there is no usable delta. A notification file is fetched at most once per
+ * fetcher. Safe for concurrent use.
+ * <p>
+ * Only objects of the publication points that were registered for the notification URI when it was fetched are
+ * written or deleted, so a repository cannot replace the objects of another one. Objects of publication points that
+ * were registered later are fetched using rsync, until the next snapshot.
+ */
+public class RrdpRpkiRepositoryObjectFetcher implements RpkiRepositoryObjectFetcher {
+
+    public static final String RRDP_SYNCHRONIZE_METRIC = "rrdp.synchronize";
+
+    private static final Logger LOG = Logger.getLogger(RrdpRpkiRepositoryObjectFetcher.class);
+
+    private static final int TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+    private final RrdpRepositories repositories;
+    private final UriToFileMapper uriToFileMapper;
+    private final PackFileStore packFileStore;
+    private final ConcurrentMap<URI, Set<URI>> synchronizedRepositories = new ConcurrentHashMap<URI, Set<URI>>();
+
+    public RrdpRpkiRepositoryObjectFetcher(RrdpRepositories repositories, UriToFileMapper uriToFileMapper) {
+        this(repositories, uriToFileMapper, null);
+    }
+
+    /**
+     * @param packFileStore when not <code>null</code>, fetched files are read through this store.
+     */
+    public RrdpRpkiRepositoryObjectFetcher(RrdpRepositories repositories, UriToFileMapper uriToFileMapper, PackFileStore packFileStore) {
+        this.repositories = repositories;
+        this.uriToFileMapper = uriToFileMapper;
+        this.packFileStore = packFileStore;
+    }
+
+    @Override
+    public void prefetch(URI uri, ValidationResult result) {
+        synchronize(uri, result);
+    }
+
+    /**
+     * @return <code>true</code> when the URI is covered by a publication point that is available over RRDP and the
+     *         local copy of its repository is up to date.
+     */
+    public boolean synchronize(URI uri, ValidationResult result) {
+        URI notificationUri = repositories.getNotificationUri(uri);
+        if (notificationUri == null) {
+            return false;
+        }
+        RrdpRepositories.State state = repositories.getState(notificationUri);
+        synchronized (state) {
+            if (!synchronizedRepositories.containsKey(notificationUri)) {
+                long startedAt = System.currentTimeMillis();
+                Set<URI> repositoryUris = repositories.getRepositoryUris(notificationUri);
+                boolean done = synchronize(notificationUri, repositoryUris, state);
+                result.addMetric(RRDP_SYNCHRONIZE_METRIC, String.valueOf(System.currentTimeMillis() - startedAt));
+                synchronizedRepositories.put(notificationUri, done ? repositoryUris : Collections.<URI>emptySet());
+            }
+        }
+        return isSynchronized(uri);
+    }
+
+    /**
+     * @return <code>true</code> when the URI is covered by a publication point whose objects were synchronized by
+     *         this fetcher.
+     */
+    public boolean isSynchronized(URI uri) {
+        URI repositoryUri = repositories.getRepositoryUri(uri);
+        URI notificationUri = repositoryUri == null ? null : repositories.getNotificationUri(repositoryUri);
+        if (notificationUri == null) {
+            return false;
+        }
+        Set<URI> repositoryUris = synchronizedRepositories.get(notificationUri);
+        return repositoryUris != null && repositoryUris.contains(repositoryUri);
+    }
+
+    @Override
+    public CertificateRepositoryObject fetch(URI uri, Specification<byte[]> fileContentSpecification, ValidationResult result) {
+        File file = uriToFileMapper.map(uri, result);
+        if (file == null) {
+            return null;
+        }
+
+        PackFileStore.StoredObject contents = readFile(file, result);
+        if (result.hasFailureForCurrentLocation()) {
+            return null;
+        }
+
+        result.rejectIfFalse(contents.satisfies(fileContentSpecification), VALIDATOR_FILE_CONTENT, uri.toString());
+        if (result.hasFailureForCurrentLocation()) {
+            return null;
+        }
+
+        return CertificateRepositoryObjectFactory.createCertificateRepositoryObject(contents.toByteArray(), result);
+    }
+
+    private boolean synchronize(URI notificationUri, Set<URI> repositoryUris, RrdpRepositories.State state) {
+        try {
+            RrdpParser.Notification notification;
+            InputStream in = open(notificationUri);
+            try {
+                notification = RrdpParser.parseNotification(in);
+            } finally {
+                in.close();
+            }
+
+            List<RrdpParser.Reference> deltas = notification.deltasSince(state.sessionId, state.serial);
+            if (deltas == null) {
+                applySnapshot(notification, new Scope(notificationUri, repositoryUris, state));
+            } else {
+                long serial = state.serial;
+                Scope scope = new Scope(notificationUri, repositoryUris, state);
+                for (RrdpParser.Reference delta : deltas) {
+                    applyDelta(notification.sessionId, ++serial, delta, scope);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Error synchronizing RRDP repository " + notificationUri + ": " + e.getMessage());
+            state.serial = -1;
+            return false;
+        }
+    }
+
+    /**
+     * Objects that are not in the snapshot are deleted. Objects that were written by a snapshot or delta that failed
+     * are remembered, so they are deleted by the next snapshot when they are not in it.
+     */
+    private void applySnapshot(RrdpParser.Notification notification, final Scope scope) throws IOException {
+        LOG.info("Fetching RRDP snapshot " + notification.snapshot.uri);
+        final RrdpRepositories.State state = scope.state;
+        final Set<URI> published = new HashSet<URI>();
+        Set<URI> previous = new HashSet<URI>(state.objects);
+        state.serial = -1;
+        state.rejectedObjects = false;
+        parse(notification.snapshot, "snapshot", notification.sessionId, notification.serial, new RrdpParser.Handler() {
+            @Override
+            public void publish(URI uri, String hash, byte[] contents) throws IOException {
+                if (scope.accept(uri)) {
+                    write(uri, contents);
+                    published.add(uri);
+                    state.objects.add(uri);
+                }
+            }
+
+            @Override
+            public void withdraw(URI uri, String hash) {
+            }
+        });
+        for (URI uri : previous) {
+            if (!published.contains(uri) && scope.accept(uri)) {
+                delete(uri);
+                state.objects.remove(uri);
+            }
+        }
+        state.sessionId = notification.sessionId;
+        state.serial = notification.serial;
+    }
+
+    /**
+     * Replaced and withdrawn objects must match the hash in the delta, otherwise the local copy is not the one the
+     * delta applies to and the snapshot is used the next time.
+     */
+    private void applyDelta(String sessionId, long serial, RrdpParser.Reference delta, final Scope scope) throws IOException {
+        LOG.debug("Fetching RRDP delta " + delta.uri);
+        final RrdpRepositories.State state = scope.state;
+        state.serial = -1;
+        parse(delta, "delta", sessionId, serial, new RrdpParser.Handler() {
+            @Override
+            public void publish(URI uri, String hash, byte[] contents) throws IOException {
+                if (scope.accept(uri)) {
+                    if (hash != null) {
+                        checkHash(uri, hash);
+                    }
+                    write(uri, contents);
+                    state.objects.add(uri);
+                }
+            }
+
+            @Override
+            public void withdraw(URI uri, String hash) throws IOException {
+                if (scope.accept(uri)) {
+                    checkHash(uri, hash);
+                    delete(uri);
+                    state.objects.remove(uri);
+                }
+            }
+        });
+        state.sessionId = sessionId;
+        state.serial = serial;
+    }
+
+    /**
+     * The publication points of the repository that is synchronized.
+     */
+    private final class Scope {
+        final URI notificationUri;
+        final Set<URI> repositoryUris;
+        final RrdpRepositories.State state;
+
+        Scope(URI notificationUri, Set<URI> repositoryUris, RrdpRepositories.State state) {
+            this.notificationUri = notificationUri;
+            this.repositoryUris = repositoryUris;
+            this.state = state;
+        }
+
+        /**
+         * @return <code>true</code> when the URI is covered by one of the publication points, otherwise the object is
+         *         rejected.
+         */
+        boolean accept(URI uri) {
+            if (repositoryUris.contains(repositories.getRepositoryUri(uri))) {
+                return true;
+            }
+            LOG.debug("Rejecting object " + uri + " from RRDP repository " + notificationUri + ", it is not in one of its publication points");
+            state.rejectedObjects = true;
+            return false;
+        }
+    }
+
+    /**
+     * Downloads the file to a temporary file first, so it is only applied when it matches the hash in the
+     * notification file.
+     */
+    private void parse(RrdpParser.Reference reference, String rootElement, String sessionId, long serial, RrdpParser.Handler handler) throws IOException {
+        File tempFile = File.createTempFile("rrdp", ".xml");
+        try {
+            MessageDigest digest = sha256();
+            InputStream in = new DigestInputStream(open(reference.uri), digest);
+            try {
+                OutputStream out = FileUtils.openOutputStream(tempFile);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            String hash = hex(digest.digest());
+            if (!hash.equalsIgnoreCase(reference.hash)) {
+                throw new IOException("Hash of " + reference.uri + " is " + hash + ", expected " + reference.hash);
+            }
+
+            InputStream file = new BufferedInputStream(new FileInputStream(tempFile));
+            try {
+                RrdpParser.parse(file, rootElement, sessionId, serial, handler);
+            } finally {
+                file.close();
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private InputStream open(URI uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Error fetching " + uri + ": HTTP status " + responseCode);
+        }
+        return new BufferedInputStream(connection.getInputStream());
+    }
+
+    private void write(URI uri, byte[] contents) throws IOException {
+        File file = uriToFileMapper.map(uri, ValidationResult.withLocation(uri));
+        if (file == null) {
+            throw new IOException("Invalid object URI " + uri);
+        }
+        FileUtils.writeByteArrayToFile(file, contents);
+    }
+
+    private void checkHash(URI uri, String hash) throws IOException {
+        File file = uriToFileMapper.map(uri, ValidationResult.withLocation(uri));
+        if (file == null || !file.isFile()) {
+            throw new IOException("Object " + uri + " is not in the local copy");
+        }
+        String localHash = hex(sha256().digest(FileUtils.readFileToByteArray(file)));
+        if (!localHash.equalsIgnoreCase(hash)) {
+            throw new IOException("Hash of local copy of " + uri + " is " + localHash + ", expected " + hash);
+        }
+    }
+
+    private void delete(URI uri) {
+        File file = uriToFileMapper.map(uri, ValidationResult.withLocation(uri));
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private PackFileStore.StoredObject readFile(File file, ValidationResult validationResult) {
+        PackFileStore.StoredObject result;
+        try {
+            if (packFileStore == null) {
+                result = PackFileStore.StoredObject.of(FileUtils.readFileToByteArray(file));
+            } else {
+                result = packFileStore.read(file);
+            }
+        } catch (IOException e) {
+            result = null;
+        }
+        validationResult.rejectIfNull(result, VALIDATOR_READ_FILE, file.getAbsolutePath());
+        return result;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
@@ -33,20 +33,30 @@ import static net.ripe.rpki.commons.validation.ValidationString.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
 import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
 import net.ripe.rpki.commons.rsync.Rsync;
 import net.ripe.rpki.commons.util.Specification;
 import net.ripe.rpki.commons.validation.ValidationResult;
 import net.ripe.rpki.validator.util.HierarchicalUriCache;
+import net.ripe.rpki.validator.util.PackFileStore;
 import net.ripe.rpki.validator.util.UriToFileMapper;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
+/**
+ * Fetches objects using rsync. Safe for concurrent use: rsync processes are run by a {@link RsyncScheduler}, and a
+ * URI that is covered by a fetch that is still in progress waits for that fetch instead of starting another rsync.
+ */
 public class RsyncRpkiRepositoryObjectFetcher implements RpkiRepositoryObjectFetcher {
 
     public static final String RSYNC_PREFETCH_VALIDATION_METRIC = "rsync.prefetch";
     public static final String RSYNC_FETCH_FILE_VALIDATION_METRIC = "rsync.fetch.file";
+    public static final String RSYNC_PREFETCH_QUEUE_WAIT_METRIC = "rsync.prefetch.queue.wait";
+    public static final String RSYNC_FETCH_FILE_QUEUE_WAIT_METRIC = "rsync.fetch.file.queue.wait";
 
     private static final Logger LOG = Logger.getLogger(RsyncRpkiRepositoryObjectFetcher.class);
 
@@ -55,15 +65,35 @@ public class RsyncRpkiRepositoryObjectFetcher implements RpkiRepositoryObjectFet
     private static final String[] SINGLE_FILE_OPTIONS = {};
 
     private final HierarchicalUriCache uriCache;
-    private final Rsync rsync;
+    private final HierarchicalUriCache inProgressUris = new HierarchicalUriCache();
+    private final ConcurrentMap<URI, CountDownLatch> inProgress = new ConcurrentHashMap<URI, CountDownLatch>();
+    private final RsyncScheduler scheduler;
     private final UriToFileMapper uriToFileMapper;
+    private final PackFileStore packFileStore;
 
     public RsyncRpkiRepositoryObjectFetcher(Rsync rsync, UriToFileMapper uriToFileMapper) {
-        this.rsync = rsync;
+        this(new RsyncScheduler(rsync), uriToFileMapper);
+    }
+
+    public RsyncRpkiRepositoryObjectFetcher(RsyncScheduler scheduler, UriToFileMapper uriToFileMapper) {
+        this(scheduler, uriToFileMapper, null);
+    }
+
+    /**
+     * @param packFileStore when not <code>null</code>, fetched files are read through this store, so files that rsync
+     *                      did not change are not read from disk or hashed again.
+     */
+    public RsyncRpkiRepositoryObjectFetcher(RsyncScheduler scheduler, UriToFileMapper uriToFileMapper, PackFileStore packFileStore) {
+        this.scheduler = scheduler;
         this.uriToFileMapper = uriToFileMapper;
+        this.packFileStore = packFileStore;
         this.uriCache = new HierarchicalUriCache();
     }
 
+    public RsyncScheduler getScheduler() {
+        return scheduler;
+    }
+
     @Override
     public CertificateRepositoryObject fetch(URI uri, Specification<byte[]> fileContentSpecification, ValidationResult result) {
         File destinationFile = uriToFileMapper.map(uri, result);
@@ -76,17 +106,17 @@ public class RsyncRpkiRepositoryObjectFetcher implements RpkiRepositoryObjectFet
             return null;
         }
 
-        byte[] contents = readFile(destinationFile, result);
+        PackFileStore.StoredObject contents = readFile(destinationFile, result);
         if (result.hasFailureForCurrentLocation()) {
             return null;
         }
 
-        result.rejectIfFalse(fileContentSpecification.isSatisfiedBy(contents), VALIDATOR_FILE_CONTENT, uri.toString());
+        result.rejectIfFalse(contents.satisfies(fileContentSpecification), VALIDATOR_FILE_CONTENT, uri.toString());
         if (result.hasFailureForCurrentLocation()) {
             return null;
         }
 
-        return CertificateRepositoryObjectFactory.createCertificateRepositoryObject(contents, result);
+        return CertificateRepositoryObjectFactory.createCertificateRepositoryObject(contents.toByteArray(), result);
     }
 
     @Override
@@ -101,46 +131,86 @@ public class RsyncRpkiRepositoryObjectFetcher implements RpkiRepositoryObjectFet
             return;
         }
 
-        rsync.reset();
-        rsync.addOptions(STANDARD_OPTIONS);
-        rsync.addOptions(PREFETCH_OPTIONS);
-        rsync.setSource(uri.toString());
-        rsync.setDestination(destinationDirectory.getAbsolutePath());
-
         destinationDirectory.mkdirs();
-        int rc = rsync.execute();
-        result.addMetric(RSYNC_PREFETCH_VALIDATION_METRIC, String.valueOf(rsync.elapsedTime()));
-        result.rejectIfFalse(rc == 0, VALIDATOR_RSYNC_COMMAND, uri.toString());
-        if (rc == 0) {
-            uriCache.add(uri);
-        }
+        rsyncUnlessCached(uri, destinationDirectory, PREFETCH_OPTIONS, RSYNC_PREFETCH_VALIDATION_METRIC, RSYNC_PREFETCH_QUEUE_WAIT_METRIC, result);
     }
 
     private void fetchFile(URI uri, File destinationFile, ValidationResult result) {
-        if (uriCache.contains(uri)) {
-            LOG.debug("rsync cache hit for URI " + uri);
-            return;
+        destinationFile.getParentFile().mkdirs();
+        rsyncUnlessCached(uri, destinationFile, SINGLE_FILE_OPTIONS, RSYNC_FETCH_FILE_VALIDATION_METRIC, RSYNC_FETCH_FILE_QUEUE_WAIT_METRIC, result);
+    }
+
+    private void rsyncUnlessCached(URI uri, File destination, String[] options, String transferMetric, String queueWaitMetric, ValidationResult result) {
+        CountDownLatch done = new CountDownLatch(1);
+        while (true) {
+            if (uriCache.contains(uri)) {
+                LOG.debug("rsync cache hit for URI " + uri);
+                return;
+            }
+            CountDownLatch covering = registerInProgress(uri, done);
+            if (covering == done) {
+                break;
+            }
+            LOG.debug("waiting for rsync in progress covering URI " + uri);
+            awaitUninterruptibly(covering);
         }
 
-        rsync.reset();
-        rsync.addOptions(STANDARD_OPTIONS);
-        rsync.addOptions(SINGLE_FILE_OPTIONS);
-        rsync.setSource(uri.toString());
-        rsync.setDestination(destinationFile.getAbsolutePath());
+        try {
+            RsyncScheduler.Execution execution = scheduler.execute(uri, destination.getAbsolutePath(), STANDARD_OPTIONS, options);
+            result.addMetric(transferMetric, String.valueOf(execution.getTransferMillis()));
+            result.addMetric(queueWaitMetric, String.valueOf(execution.getQueueWaitMillis()));
+            result.rejectIfFalse(execution.getExitCode() == 0, VALIDATOR_RSYNC_COMMAND, uri.toString());
+            if (execution.getExitCode() == 0) {
+                uriCache.add(uri);
+            }
+        } finally {
+            unregisterInProgress(uri);
+            done.countDown();
+        }
+    }
 
-        destinationFile.getParentFile().mkdirs();
-        int rc = rsync.execute();
-        result.addMetric(RSYNC_FETCH_FILE_VALIDATION_METRIC, String.valueOf(rsync.elapsedTime()));
-        result.rejectIfFalse(rc == 0, VALIDATOR_RSYNC_COMMAND, uri.toString());
-        if (rc == 0) {
-            uriCache.add(uri);
+    /**
+     * @return the latch of the fetch in progress that covers the URI, or <code>done</code> when the caller registered
+     *         its own fetch for the URI.
+     */
+    private synchronized CountDownLatch registerInProgress(URI uri, CountDownLatch done) {
+        URI coveringUri = inProgressUris.findCachedAncestorOrSelf(uri);
+        if (coveringUri != null) {
+            return inProgress.get(coveringUri);
+        }
+        inProgressUris.add(uri);
+        inProgress.put(uri, done);
+        return done;
+    }
+
+    private synchronized void unregisterInProgress(URI uri) {
+        inProgressUris.remove(uri);
+        inProgress.remove(uri);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private byte[] readFile(File destinationFile, ValidationResult validationResult) {
-        byte[] result;
+    private PackFileStore.StoredObject readFile(File destinationFile, ValidationResult validationResult) {
+        PackFileStore.StoredObject result;
         try {
-           result = FileUtils.readFileToByteArray(destinationFile);
+            if (packFileStore == null) {
+                result = PackFileStore.StoredObject.of(FileUtils.readFileToByteArray(destinationFile));
+            } else {
+                result = packFileStore.read(destinationFile);
+            }
         } catch (IOException e) {
             result = null;
         }
@@ -0,0 +1,189 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import net.ripe.rpki.commons.rsync.Rsync;
+import org.apache.commons.lang.Validate;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs rsync processes with a limit on the total number of concurrent processes and on the number of concurrent
+ * processes per host, so that a slow repository does not hold up fetches from other hosts. Keeps track of the time
+ * spent waiting for a free slot and the time spent transferring.
+ */
+public class RsyncScheduler {
+
+    private final Rsync sharedRsync;
+    private final int timeoutInSeconds;
+    private final int maxConcurrentPerHost;
+    private final Semaphore globalPermits;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong queueWaitTime = new AtomicLong();
+    private final AtomicLong transferTime = new AtomicLong();
+
+    /**
+     * Creates a new rsync process (with the given timeout) for every execution.
+     */
+    public RsyncScheduler(int maxConcurrent, int maxConcurrentPerHost, int timeoutInSeconds) {
+        this(null, maxConcurrent, maxConcurrentPerHost, timeoutInSeconds);
+    }
+
+    /**
+     * Executes everything serially using the given rsync instance.
+     */
+    public RsyncScheduler(Rsync rsync) {
+        this(rsync, 1, 1, 0);
+        Validate.notNull(rsync);
+    }
+
+    private RsyncScheduler(Rsync sharedRsync, int maxConcurrent, int maxConcurrentPerHost, int timeoutInSeconds) {
+        Validate.isTrue(maxConcurrent > 0, "maximum number of concurrent rsync processes must be positive");
+        Validate.isTrue(maxConcurrentPerHost > 0, "maximum number of concurrent rsync processes per host must be positive");
+        this.sharedRsync = sharedRsync;
+        this.timeoutInSeconds = timeoutInSeconds;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.globalPermits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Runs rsync for the source URI, blocking until a slot is available for its host and the process is done.
+     */
+    public Execution execute(URI source, String destination, String[]... options) {
+        Semaphore perHost = hostPermitsFor(source);
+        long queuedAt = System.nanoTime();
+        perHost.acquireUninterruptibly();
+        try {
+            globalPermits.acquireUninterruptibly();
+            try {
+                long queueWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAt);
+                Rsync rsync = rsyncForExecution();
+                for (String[] option : options) {
+                    rsync.addOptions(option);
+                }
+                rsync.setSource(source.toString());
+                rsync.setDestination(destination);
+                int exitCode = rsync.execute();
+                long transferMillis = rsync.elapsedTime();
+
+                executionCount.incrementAndGet();
+                queueWaitTime.addAndGet(queueWaitMillis);
+                transferTime.addAndGet(transferMillis);
+                return new Execution(exitCode, queueWaitMillis, transferMillis);
+            } finally {
+                globalPermits.release();
+            }
+        } finally {
+            perHost.release();
+        }
+    }
+
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds that executions waited for a free slot.
+     */
+    public long getQueueWaitTime() {
+        return queueWaitTime.get();
+    }
+
+    /**
+     * @return the total time in milliseconds that rsync processes ran.
+     */
+    public long getTransferTime() {
+        return transferTime.get();
+    }
+
+    private Rsync rsyncForExecution() {
+        if (sharedRsync != null) {
+            sharedRsync.reset();
+            return sharedRsync;
+        }
+        return createRsync();
+    }
+
+    /**
+     * Overridden by unit tests to avoid running real rsync processes.
+     */
+    Rsync createRsync() {
+        Rsync rsync = new Rsync();
+        if (timeoutInSeconds > 0) {
+            rsync.setTimeoutInSeconds(timeoutInSeconds);
+        }
+        return rsync;
+    }
+
+    private Semaphore hostPermitsFor(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ENGLISH);
+        Semaphore semaphore = hostPermits.get(host);
+        if (semaphore == null) {
+            Semaphore created = new Semaphore(maxConcurrentPerHost, true);
+            semaphore = hostPermits.putIfAbsent(host, created);
+            if (semaphore == null) {
+                semaphore = created;
+            }
+        }
+        return semaphore;
+    }
+
+    public static final class Execution {
+        private final int exitCode;
+        private final long queueWaitMillis;
+        private final long transferMillis;
+
+        Execution(int exitCode, long queueWaitMillis, long transferMillis) {
+            this.exitCode = exitCode;
+            this.queueWaitMillis = queueWaitMillis;
+            this.transferMillis = transferMillis;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getQueueWaitMillis() {
+            return queueWaitMillis;
+        }
+
+        public long getTransferMillis() {
+            return transferMillis;
+        }
+    }
+}
@@ -30,29 +30,45 @@
 package net.ripe.rpki.validator.util;
 
 import java.net.URI;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
+/**
+ * Set of URIs that also contains all descendants of the added URIs. Thread-safe.
+ */
 public class HierarchicalUriCache {
 
-    private final Set<URI> cache = new HashSet<URI>();
+    private final Set<URI> cache = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
 
 
     public void add(URI uri) {
         cache.add(uri);
     }
 
+    public void remove(URI uri) {
+        cache.remove(uri);
+    }
+
     public boolean contains(URI uriToCheck) {
+        return findCachedAncestorOrSelf(uriToCheck) != null;
+    }
+
+    /**
+     * @return the added URI that covers the given URI (the URI itself or one of its ancestors), or <code>null</code>
+     *         when the URI is not covered.
+     */
+    public URI findCachedAncestorOrSelf(URI uriToCheck) {
         URI uri = uriToCheck;
         while (StringUtils.isNotEmpty(uri.getRawPath())) {
             if (cache.contains(uri)) {
-                return true;
+                return uri;
             }
             String path = uri.getRawPath();
             if ("/".equals(path)) {
-                return false;
+                return null;
             }
 
             if (path.endsWith("/")) {
@@ -63,9 +79,9 @@ public class HierarchicalUriCache {
             if (i != -1) {
                 uri = uri.resolve(path.substring(0, i + 1));
             } else {
-                return false;
+                return null;
             }
         }
-        return false;
+        return null;
     }
 }
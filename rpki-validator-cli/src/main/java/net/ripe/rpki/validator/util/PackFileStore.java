@@ -0,0 +1,392 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms.FileContentSpecification;
+import net.ripe.rpki.commons.util.Specification;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Content-addressed store of repository objects in append-only segment files that are memory-mapped. Objects are
+ * keyed by their SHA-256 hash and returned as read-only slices of the mapped segments, so reading an object again does
+ * not touch the file system. Files are remembered by path, size and modification time, so a file that was not changed
+ * by rsync is not read or hashed again: its hash is taken from the store, and its contents are only copied out of the
+ * mapping when they are decoded.
+ * <p>
+ * When the maximum number of segments is reached the oldest segment is dropped. Its objects are appended again the next
+ * time they are read. Thread-safe.
+ */
+public class PackFileStore {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAXIMUM_SEGMENTS = 8;
+
+    private static final Logger LOG = Logger.getLogger(PackFileStore.class);
+
+    private static final int RECORD_MAGIC = 0x52504b50;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + HASH_LENGTH;
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maximumSegments;
+
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private final Map<Hash, Location> locations = new HashMap<Hash, Location>();
+    private final Map<File, FileEntry> files = new HashMap<File, FileEntry>();
+    private long nextSegmentNumber;
+
+    public PackFileStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAXIMUM_SEGMENTS);
+    }
+
+    /**
+     * Opens the segments that are already in the directory. A segment is read up to the first record that is incomplete
+     * or does not match its hash, so a record that was being written when the process stopped is overwritten.
+     */
+    public PackFileStore(File directory, int segmentSize, int maximumSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maximumSegments = maximumSegments;
+
+        directory.mkdirs();
+        File[] segmentFiles = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().matches("[0-9]+\\" + SEGMENT_SUFFIX);
+            }
+        });
+        if (segmentFiles == null) {
+            throw new IOException("Cannot list directory: " + directory.getAbsolutePath());
+        }
+        Arrays.sort(segmentFiles);
+        for (File file : segmentFiles) {
+            Segment segment = new Segment(segmentNumber(file), file, map(file, file.length()));
+            scan(segment);
+            segments.add(segment);
+            nextSegmentNumber = segment.number + 1;
+        }
+        while (segments.size() > maximumSegments) {
+            dropOldestSegment();
+        }
+    }
+
+    /**
+     * @return the contents and hash of the file, read from the file only when it changed since it was last read.
+     */
+    public StoredObject read(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            FileEntry entry = files.get(file);
+            if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+                ByteBuffer contents = get(entry.hash);
+                if (contents != null) {
+                    return new StoredObject(entry.hash.bytes, contents, null);
+                }
+            }
+        }
+
+        byte[] contents = FileUtils.readFileToByteArray(file);
+        Hash hash = new Hash(sha256(contents));
+        synchronized (this) {
+            ByteBuffer stored = append(hash, contents);
+            if (locations.containsKey(hash)) {
+                files.put(file, new FileEntry(length, lastModified, hash));
+            }
+            return new StoredObject(hash.bytes, stored, contents);
+        }
+    }
+
+    /**
+     * @return the stored object, or <code>null</code> when there is no object with the hash.
+     */
+    public synchronized ByteBuffer get(byte[] hash) {
+        return get(new Hash(hash));
+    }
+
+    /**
+     * Stores the object unless an object with the same hash is already stored.
+     *
+     * @return the stored object.
+     */
+    public ByteBuffer put(byte[] contents) throws IOException {
+        Hash hash = new Hash(sha256(contents));
+        synchronized (this) {
+            return append(hash, contents);
+        }
+    }
+
+    private ByteBuffer get(Hash hash) {
+        Location location = locations.get(hash);
+        return location == null ? null : location.slice();
+    }
+
+    /**
+     * Objects that do not fit in a segment are not stored, and are returned as is.
+     */
+    private ByteBuffer append(Hash hash, byte[] contents) throws IOException {
+        ByteBuffer stored = get(hash);
+        if (stored != null) {
+            return stored;
+        }
+        int recordLength = HEADER_LENGTH + contents.length;
+        if (recordLength > segmentSize) {
+            return ByteBuffer.wrap(contents).asReadOnlyBuffer();
+        }
+
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+        if (segment == null || segment.buffer.capacity() - segment.position < recordLength) {
+            segment = newSegment();
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.position);
+        buffer.putInt(RECORD_MAGIC).putInt(contents.length).put(hash.bytes).put(contents);
+
+        Location location = new Location(segment, segment.position + HEADER_LENGTH, contents.length);
+        segment.position += recordLength;
+        locations.put(hash, location);
+        return location.slice();
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (buffer.capacity() - position >= HEADER_LENGTH) {
+            buffer.position(position);
+            if (buffer.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.capacity() - position - HEADER_LENGTH) {
+                break;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            Location location = new Location(segment, position + HEADER_LENGTH, length);
+            byte[] contents = new byte[length];
+            location.slice().get(contents);
+            if (!Arrays.equals(hash, sha256(contents))) {
+                break;
+            }
+            locations.put(new Hash(hash), location);
+            position += HEADER_LENGTH + length;
+        }
+        segment.position = position;
+    }
+
+    private Segment newSegment() throws IOException {
+        while (segments.size() >= maximumSegments) {
+            dropOldestSegment();
+        }
+        File file = new File(directory, String.format("%012d%s", nextSegmentNumber, SEGMENT_SUFFIX));
+        Segment segment = new Segment(nextSegmentNumber, file, map(file, segmentSize));
+        segments.add(segment);
+        nextSegmentNumber++;
+        return segment;
+    }
+
+    /**
+     * Buffers that were returned for objects in the segment stay valid, the mapping is released when they are no
+     * longer referenced. Files whose contents were in the segment are forgotten, so they are read again.
+     */
+    private void dropOldestSegment() {
+        Segment oldest = segments.removeFirst();
+        for (Iterator<Location> it = locations.values().iterator(); it.hasNext();) {
+            if (it.next().segment == oldest) {
+                it.remove();
+            }
+        }
+        for (Iterator<FileEntry> it = files.values().iterator(); it.hasNext();) {
+            if (!locations.containsKey(it.next().hash)) {
+                it.remove();
+            }
+        }
+        if (!oldest.file.delete()) {
+            LOG.warn("Could not delete pack file " + oldest.file.getAbsolutePath());
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static long segmentNumber(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] sha256(byte[] contents) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(contents);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    synchronized int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * An object read through the store, with its SHA-256 hash. Not thread-safe.
+     */
+    public static final class StoredObject {
+        private final byte[] hash;
+        private final ByteBuffer contents;
+        private byte[] array;
+
+        private StoredObject(byte[] hash, ByteBuffer contents, byte[] array) {
+            this.hash = hash;
+            this.contents = contents;
+            this.array = array;
+        }
+
+        /**
+         * @return an object that was not read through a store, so its hash is not known.
+         */
+        public static StoredObject of(byte[] contents) {
+            return new StoredObject(null, ByteBuffer.wrap(contents).asReadOnlyBuffer(), contents);
+        }
+
+        /**
+         * Manifest entries are compared with the stored hash, so the contents are not hashed again.
+         */
+        public boolean satisfies(Specification<byte[]> specification) {
+            if (hash != null && specification instanceof FileContentSpecification) {
+                return Arrays.equals(hash, ((FileContentSpecification) specification).getHash());
+            }
+            return specification.isSatisfiedBy(toByteArray());
+        }
+
+        /**
+         * @return a read-only buffer over the stored contents.
+         */
+        public ByteBuffer getContents() {
+            return contents.duplicate();
+        }
+
+        /**
+         * @return the contents, copied out of the store unless they were just read from the file.
+         */
+        public byte[] toByteArray() {
+            if (array == null) {
+                array = new byte[contents.remaining()];
+                contents.duplicate().get(array);
+            }
+            return array;
+        }
+    }
+
+    private static final class Segment {
+        private final long number;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        private Segment(long number, File file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private ByteBuffer slice() {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset);
+            buffer.limit(offset + length);
+            return buffer.slice().asReadOnlyBuffer();
+        }
+    }
+
+    private static final class FileEntry {
+        private final long length;
+        private final long lastModified;
+        private final Hash hash;
+
+        private FileEntry(long length, long lastModified, Hash hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private static final class Hash {
+        private final byte[] bytes;
+
+        private Hash(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Hash && Arrays.equals(bytes, ((Hash) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+}
@@ -60,6 +60,10 @@ public class TrustAnchorLocator {
 
     private final List<URI> prefetchUris;
 
+    private final int walkerThreads;
+
+    private final int walkerLookAhead;
+
     public static TrustAnchorLocator fromFile(File file) throws TrustAnchorExtractorException {
         try {
             String contents = FileUtils.readFileToString(file, "UTF-8");
@@ -118,7 +122,11 @@ public class TrustAnchorLocator {
                 prefetchUris.add(new URI(uri));
             }
         }
-        return new TrustAnchorLocator(file, caName, location, publicKeyInfo, prefetchUris);
+        int walkerThreads = Integer.parseInt(p.getProperty("walker.threads", "1").trim());
+        Validate.isTrue(walkerThreads > 0, "'walker.threads' must be positive");
+        int walkerLookAhead = Integer.parseInt(p.getProperty("walker.lookahead", "0").trim());
+        Validate.isTrue(walkerLookAhead >= 0, "'walker.lookahead' must not be negative");
+        return new TrustAnchorLocator(file, caName, location, publicKeyInfo, prefetchUris, walkerThreads, walkerLookAhead);
     }
 
     public TrustAnchorLocator(File file, String caName, URI location,URI[] locations, String publicKeyInfo, List<URI> prefetchUris) {
@@ -131,9 +139,19 @@ public class TrustAnchorLocator {
         this.certificateLocations = locations;
         this.publicKeyInfo = publicKeyInfo;
         this.prefetchUris = prefetchUris;
+        this.walkerThreads = 1;
+        this.walkerLookAhead = 0;
     }
     
     public TrustAnchorLocator(File file, String caName, URI location, String publicKeyInfo, List<URI> prefetchUris) {
+        this(file, caName, location, publicKeyInfo, prefetchUris, 1);
+    }
+
+    public TrustAnchorLocator(File file, String caName, URI location, String publicKeyInfo, List<URI> prefetchUris, int walkerThreads) {
+        this(file, caName, location, publicKeyInfo, prefetchUris, walkerThreads, 0);
+    }
+
+    public TrustAnchorLocator(File file, String caName, URI location, String publicKeyInfo, List<URI> prefetchUris, int walkerThreads, int walkerLookAhead) {
         Validate.notEmpty(caName, "'ca.name' must be provided");
         Validate.notNull(location, "'certificate.location' must be provided");
         Validate.notEmpty(publicKeyInfo, "'public.key.info' must be provided");
@@ -143,6 +161,8 @@ public class TrustAnchorLocator {
         this.certificateLocations = new URI[2];
         this.publicKeyInfo = publicKeyInfo;
         this.prefetchUris = prefetchUris;
+        this.walkerThreads = walkerThreads;
+        this.walkerLookAhead = walkerLookAhead;
     }
 
     public File getFile() {
@@ -168,4 +188,21 @@ public class TrustAnchorLocator {
         return prefetchUris;
     }
 
+    /**
+     * The number of threads used to walk the repository of this trust anchor. A value of 1 (the default) uses the
+     * serial {@link net.ripe.rpki.validator.commands.TopDownWalker}.
+     */
+    public int getWalkerThreads() {
+        return walkerThreads;
+    }
+
+    /**
+     * The number of publication points that the {@link net.ripe.rpki.validator.commands.PipelinedTopDownWalker}
+     * prefetches ahead of validation. A value of 0 (the default) disables pipelining. Only used when walking with a
+     * single thread.
+     */
+    public int getWalkerLookAhead() {
+        return walkerLookAhead;
+    }
+
 }
@@ -0,0 +1,106 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.commands;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.commons.validation.objectvalidators.CertificateRepositoryObjectValidationContext;
+import net.ripe.rpki.validator.fetchers.CertificateRepositoryObjectFetcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ParallelTopDownWalkerTest {
+
+    private static final URI ROOT_SIA_REPO_RSYNC_LOCATION = URI.create("rsync://foo.host/bar/");
+    private static final URI ROOT_SIA_MANIFEST_RSYNC_LOCATION = URI.create("rsync://foo.host/bar/manifest.mft");
+
+    private ExecutorService executor;
+    private CertificateRepositoryObjectFetcher certificateRepositoryObjectFetcher;
+    private X509ResourceCertificate ta;
+    private CertificateRepositoryObjectValidationContext taContext;
+    private ParallelTopDownWalker subject;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        certificateRepositoryObjectFetcher = mock(CertificateRepositoryObjectFetcher.class);
+        ta = TopDownWalkerTest.getRootResourceCertificate();
+        taContext = new CertificateRepositoryObjectValidationContext(URI.create("rsync://host/ta"), ta);
+        subject = new ParallelTopDownWalker(certificateRepositoryObjectFetcher, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldPrefetchAndProcessManifestOfTrustAnchor() {
+        ManifestCms manifestCms = TopDownWalkerTest.getRootManifestCms();
+        when(certificateRepositoryObjectFetcher.getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), eq(taContext), isA(ValidationResult.class))).thenReturn(manifestCms);
+
+        subject.addTrustAnchor(taContext);
+        subject.execute();
+
+        verify(certificateRepositoryObjectFetcher).prefetch(eq(ROOT_SIA_REPO_RSYNC_LOCATION), isA(ValidationResult.class));
+        verify(certificateRepositoryObjectFetcher).getObject(eq(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("foo1")), eq(taContext), eq(manifestCms.getFileContentSpecification("foo1")), isA(ValidationResult.class));
+        verify(certificateRepositoryObjectFetcher).getObject(eq(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("BaR")), eq(taContext), eq(manifestCms.getFileContentSpecification("BaR")), isA(ValidationResult.class));
+    }
+
+    @Test
+    public void shouldNotProcessCertificateTwice() {
+        ManifestCms manifestCms = TopDownWalkerTest.getRootManifestCms();
+        when(certificateRepositoryObjectFetcher.getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), isA(CertificateRepositoryObjectValidationContext.class), isA(ValidationResult.class))).thenReturn(manifestCms);
+        when(certificateRepositoryObjectFetcher.getObject(eq(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("foo1")), eq(taContext), eq(manifestCms.getFileContentSpecification("foo1")), isA(ValidationResult.class))).thenReturn(ta);
+
+        subject.addTrustAnchor(taContext);
+        subject.addTrustAnchor(taContext);
+        subject.execute();
+
+        verify(certificateRepositoryObjectFetcher, times(1)).prefetch(eq(ROOT_SIA_REPO_RSYNC_LOCATION), isA(ValidationResult.class));
+        verify(certificateRepositoryObjectFetcher, times(1)).getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), isA(CertificateRepositoryObjectValidationContext.class), isA(ValidationResult.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldPropagateFailuresOfPublicationPointTasks() {
+        doThrow(new IllegalStateException("test")).when(certificateRepositoryObjectFetcher).prefetch(eq(ROOT_SIA_REPO_RSYNC_LOCATION), isA(ValidationResult.class));
+
+        subject.addTrustAnchor(taContext);
+        subject.execute();
+    }
+}
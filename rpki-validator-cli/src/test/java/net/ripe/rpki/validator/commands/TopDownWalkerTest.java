@@ -36,6 +36,7 @@ import javax.security.auth.x500.X500Principal;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.KeyPair;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -202,6 +203,39 @@ public class TopDownWalkerTest {
         assertTrue(workQueue.isEmpty());
     }
 
+    @Test
+    public void shouldReuseChildrenOfUnchangedPublicationPoint() {
+        ManifestCms manifestCms = getRootManifestCms();
+        CertificateRepositoryObjectValidationContext childContext = taContext.createChildContext(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("foo1"), ta);
+        PublicationPointCache publicationPointCache = mock(PublicationPointCache.class);
+        when(certificateRepositoryObjectFetcher.getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), eq(taContext), isA(ValidationResult.class))).thenReturn(manifestCms);
+        when(publicationPointCache.reuse(taContext, manifestCms)).thenReturn(Collections.singletonList(childContext));
+        subject.setPublicationPointCache(publicationPointCache);
+
+        subject.processManifest(taContext);
+
+        assertEquals(1, workQueue.size());
+        assertEquals(childContext, workQueue.remove());
+        verify(certificateRepositoryObjectFetcher).getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), eq(taContext), isA(ValidationResult.class));
+        verifyNoMoreInteractions(certificateRepositoryObjectFetcher);
+        verify(publicationPointCache, never()).processed(taContext, manifestCms);
+    }
+
+    @Test
+    public void shouldProcessChangedPublicationPointAndNotifyCache() {
+        ManifestCms manifestCms = getRootManifestCms();
+        PublicationPointCache publicationPointCache = mock(PublicationPointCache.class);
+        when(certificateRepositoryObjectFetcher.getManifest(eq(ROOT_SIA_MANIFEST_RSYNC_LOCATION), eq(taContext), isA(ValidationResult.class))).thenReturn(manifestCms);
+        when(publicationPointCache.reuse(taContext, manifestCms)).thenReturn(null);
+        subject.setPublicationPointCache(publicationPointCache);
+
+        subject.processManifest(taContext);
+
+        verify(certificateRepositoryObjectFetcher).getObject(eq(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("foo1")), eq(taContext), eq(manifestCms.getFileContentSpecification("foo1")), isA(ValidationResult.class));
+        verify(certificateRepositoryObjectFetcher).getObject(eq(ROOT_SIA_REPO_RSYNC_LOCATION.resolve("BaR")), eq(taContext), eq(manifestCms.getFileContentSpecification("BaR")), isA(ValidationResult.class));
+        verify(publicationPointCache).processed(taContext, manifestCms);
+    }
+
 
     public static ManifestCms getRootManifestCms() {
         ManifestCmsBuilder builder = new ManifestCmsBuilder();
@@ -166,4 +166,48 @@ public class CachingCertificateRepositoryObjectFetcherTest {
         verify(fetcher, times(1)).getObject(uri, context, fileContentSpecification, result);
     }
 
+    @Test
+    public void shouldKeepManifestsCachedWhenEvictingOtherObjects() {
+        URI manifestUri = URI.create("rsync://host/path/manifest.mft");
+        URI otherUri = URI.create("rsync://host/path/other.cer");
+        ManifestCms manifest = RepositoryObjectsSetUpHelper.getRootManifestCms();
+        X509ResourceCertificate certificate = RepositoryObjectsSetUpHelper.getChildResourceCertificate();
+        when(fetcher.getManifest(manifestUri, context, result)).thenReturn(manifest);
+        when(fetcher.getObject(uri, context, fileContentSpecification, result)).thenReturn(certificate);
+        when(fetcher.getObject(otherUri, context, fileContentSpecification, result)).thenReturn(certificate);
+        subject = new CachingCertificateRepositoryObjectFetcher(fetcher, CertificateRepositoryObjectCache.unbounded(), new CertificateRepositoryObjectCache(1, Long.MAX_VALUE, 1));
+
+        subject.getManifest(manifestUri, context, result);
+        subject.getObject(uri, context, fileContentSpecification, result);
+        subject.getObject(otherUri, context, fileContentSpecification, result);
+
+        assertEquals(manifest, subject.getManifest(manifestUri, context, result));
+        assertEquals(certificate, subject.getObject(uri, context, fileContentSpecification, result));
+
+        verify(fetcher, times(1)).getManifest(manifestUri, context, result);
+        verify(fetcher, times(2)).getObject(uri, context, fileContentSpecification, result);
+        assertEquals(2, subject.getObjectCache().getEvictionCount());
+        assertEquals(0, subject.getPublicationPointCache().getEvictionCount());
+    }
+
+    @Test
+    public void shouldCountEachLookupOnceInTheCacheItBelongsTo() {
+        URI manifestUri = URI.create("rsync://host/path/manifest.mft");
+        ManifestCms manifest = RepositoryObjectsSetUpHelper.getRootManifestCms();
+        X509ResourceCertificate certificate = RepositoryObjectsSetUpHelper.getChildResourceCertificate();
+        when(fetcher.getManifest(manifestUri, context, result)).thenReturn(manifest);
+        when(fetcher.getObject(uri, context, fileContentSpecification, result)).thenReturn(certificate);
+
+        subject.getManifest(manifestUri, context, result);
+        subject.getManifest(manifestUri, context, result);
+        subject.getObject(uri, context, fileContentSpecification, result);
+        subject.getObject(uri, context, fileContentSpecification, result);
+        subject.getObject(manifestUri, context, fileContentSpecification, result);
+
+        assertEquals(2, subject.getPublicationPointCache().getHitCount());
+        assertEquals(1, subject.getPublicationPointCache().getMissCount());
+        assertEquals(1, subject.getObjectCache().getHitCount());
+        assertEquals(1, subject.getObjectCache().getMissCount());
+    }
+
 }
@@ -0,0 +1,97 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import static org.junit.Assert.*;
+import java.net.URI;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.validator.RepositoryObjectsSetUpHelper;
+import org.junit.Test;
+
+
+public class CertificateRepositoryObjectCacheTest {
+
+    private static final URI URI_1 = URI.create("rsync://host/path/1.crl");
+    private static final URI URI_2 = URI.create("rsync://host/path/2.crl");
+    private static final URI URI_3 = URI.create("rsync://host/path/3.crl");
+
+    private final X509Crl crl = RepositoryObjectsSetUpHelper.getRootCrl();
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        CertificateRepositoryObjectCache subject = CertificateRepositoryObjectCache.unbounded();
+
+        assertNull(subject.get(URI_1));
+        subject.put(URI_1, crl);
+        assertEquals(crl, subject.get(URI_1).getObject());
+
+        assertEquals(1, subject.getHitCount());
+        assertEquals(1, subject.getMissCount());
+        assertEquals(crl.getEncoded().length, subject.weight());
+    }
+
+    @Test
+    public void shouldCacheNullObjects() {
+        CertificateRepositoryObjectCache subject = CertificateRepositoryObjectCache.unbounded();
+
+        subject.put(URI_1, null);
+
+        assertTrue(subject.contains(URI_1));
+        assertNull(subject.get(URI_1).getObject());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        CertificateRepositoryObjectCache subject = new CertificateRepositoryObjectCache(2, Long.MAX_VALUE, 1);
+
+        subject.put(URI_1, crl);
+        subject.put(URI_2, crl);
+        subject.get(URI_1);
+        subject.put(URI_3, crl);
+
+        assertTrue(subject.contains(URI_1));
+        assertFalse(subject.contains(URI_2));
+        assertTrue(subject.contains(URI_3));
+        assertEquals(1, subject.getEvictionCount());
+        assertEquals(2, subject.size());
+    }
+
+    @Test
+    public void shouldEvictWhenMaximumSizeInBytesExceeded() {
+        CertificateRepositoryObjectCache subject = new CertificateRepositoryObjectCache(Integer.MAX_VALUE, crl.getEncoded().length, 1);
+
+        subject.put(URI_1, crl);
+        subject.put(URI_2, crl);
+
+        assertFalse(subject.contains(URI_1));
+        assertTrue(subject.contains(URI_2));
+        assertEquals(1, subject.getEvictionCount());
+    }
+}
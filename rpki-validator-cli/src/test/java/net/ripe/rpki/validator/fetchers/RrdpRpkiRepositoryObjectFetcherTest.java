@@ -0,0 +1,249 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import static net.ripe.rpki.commons.validation.ValidationString.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.commons.util.Specifications;
+import net.ripe.rpki.commons.validation.ValidationLocation;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.commons.validation.ValidationStatus;
+import net.ripe.rpki.validator.commands.TopDownWalkerTest;
+import net.ripe.rpki.validator.util.UriToFileMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RrdpRpkiRepositoryObjectFetcherTest {
+
+    private static final File TEST_TARGET_DIRECTORY = new File(System.getProperty("java.io.tmpdir", "/tmp"), "rrdp-fetcher-test");
+
+    private static final URI REPOSITORY_URI = URI.create("rsync://localhost/repo/ca/");
+    private static final URI MANIFEST_URI = REPOSITORY_URI.resolve("object.mft");
+    private static final URI OTHER_URI = REPOSITORY_URI.resolve("child/other.cer");
+    private static final URI OTHER_REPOSITORY_URI = URI.create("rsync://localhost/repo/other/");
+    private static final URI OTHER_REPOSITORY_OBJECT_URI = OTHER_REPOSITORY_URI.resolve("object.cer");
+
+    private RrdpTestServer server;
+    private RrdpRepositories repositories;
+    private CertificateRepositoryObject object;
+    private ValidationResult validationResult;
+
+    @Before
+    public void setUp() throws IOException {
+        FileUtils.deleteDirectory(TEST_TARGET_DIRECTORY);
+        server = new RrdpTestServer();
+        repositories = new RrdpRepositories();
+        repositories.register(REPOSITORY_URI, server.getNotificationUri());
+        object = TopDownWalkerTest.getRootManifestCms();
+        validationResult = ValidationResult.withLocation(MANIFEST_URI);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+        FileUtils.deleteDirectory(TEST_TARGET_DIRECTORY);
+    }
+
+    @Test
+    public void shouldFetchObjectFromSnapshot() {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        server.newSession();
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertTrue(subject.synchronize(REPOSITORY_URI, validationResult));
+        assertTrue(subject.isSynchronized(MANIFEST_URI));
+        assertEquals(object, subject.fetch(MANIFEST_URI, Specifications.<byte[]>alwaysTrue(), validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getSnapshotPath()), server.getRequests());
+    }
+
+    @Test
+    public void shouldFetchNotificationOncePerFetcher() {
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertTrue(subject.synchronize(REPOSITORY_URI, validationResult));
+        assertTrue(subject.synchronize(REPOSITORY_URI.resolve("child/"), validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getSnapshotPath()), server.getRequests());
+    }
+
+    @Test
+    public void shouldApplyDeltasSincePreviousRun() {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        server.clearRequests();
+
+        Map<URI, byte[]> changes = new HashMap<URI, byte[]>();
+        changes.put(MANIFEST_URI, null);
+        changes.put(OTHER_URI, new byte[] { 1, 2, 3 });
+        server.update(changes);
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertTrue(subject.synchronize(REPOSITORY_URI, validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getDeltaPath(3)), server.getRequests());
+        assertFalse(localFile(MANIFEST_URI).exists());
+        assertTrue(localFile(OTHER_URI).exists());
+
+        assertNull(subject.fetch(MANIFEST_URI, Specifications.<byte[]>alwaysTrue(), validationResult));
+        assertEquals(ValidationStatus.ERROR, validationResult.getResult(new ValidationLocation(MANIFEST_URI), VALIDATOR_READ_FILE).getStatus());
+    }
+
+    @Test
+    public void shouldDeleteObjectsNotInSnapshotOfNewSession() {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertTrue(localFile(MANIFEST_URI).exists());
+
+        server.update(Collections.<URI, byte[]>singletonMap(MANIFEST_URI, null));
+        server.newSession();
+        server.clearRequests();
+
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getSnapshotPath()), server.getRequests());
+        assertFalse(localFile(MANIFEST_URI).exists());
+    }
+
+    @Test
+    public void shouldNotSynchronizeWhenSnapshotDoesNotMatchHash() {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        server.replaceFile(server.getSnapshotPath(), "<snapshot/>".getBytes());
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertFalse(subject.synchronize(REPOSITORY_URI, validationResult));
+        assertFalse(subject.isSynchronized(MANIFEST_URI));
+        assertFalse(localFile(MANIFEST_URI).exists());
+    }
+
+    @Test
+    public void shouldRejectObjectsOutsideRegisteredPublicationPoints() throws IOException {
+        FileUtils.writeByteArrayToFile(localFile(OTHER_REPOSITORY_OBJECT_URI), new byte[] { 4, 5, 6 });
+        Map<URI, byte[]> objects = new HashMap<URI, byte[]>();
+        objects.put(MANIFEST_URI, object.getEncoded());
+        objects.put(OTHER_REPOSITORY_OBJECT_URI, new byte[] { 1, 2, 3 });
+        server.update(objects);
+        server.newSession();
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertTrue(subject.synchronize(REPOSITORY_URI, validationResult));
+        assertTrue(localFile(MANIFEST_URI).exists());
+        assertArrayEquals(new byte[] { 4, 5, 6 }, FileUtils.readFileToByteArray(localFile(OTHER_REPOSITORY_OBJECT_URI)));
+    }
+
+    @Test
+    public void shouldFetchSnapshotWhenRepositoryWithRejectedObjectsIsRegistered() {
+        server.update(Collections.singletonMap(OTHER_REPOSITORY_OBJECT_URI, new byte[] { 1, 2, 3 }));
+        server.newSession();
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertFalse(localFile(OTHER_REPOSITORY_OBJECT_URI).exists());
+
+        repositories.register(OTHER_REPOSITORY_URI, server.getNotificationUri());
+        server.clearRequests();
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertTrue(subject.synchronize(OTHER_REPOSITORY_URI, validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getSnapshotPath()), server.getRequests());
+        assertTrue(localFile(OTHER_REPOSITORY_OBJECT_URI).exists());
+    }
+
+    @Test
+    public void shouldNotSynchronizeRepositoryRegisteredAfterFetchingNotification() {
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+        assertTrue(subject.synchronize(REPOSITORY_URI, validationResult));
+
+        repositories.register(OTHER_REPOSITORY_URI, server.getNotificationUri());
+
+        assertFalse(subject.synchronize(OTHER_REPOSITORY_URI, validationResult));
+        assertFalse(subject.isSynchronized(OTHER_REPOSITORY_OBJECT_URI));
+    }
+
+    @Test
+    public void shouldNotApplyDeltaWhenWithdrawnObjectDoesNotMatchHash() throws IOException {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        FileUtils.writeByteArrayToFile(localFile(MANIFEST_URI), new byte[] { 1, 2, 3 });
+
+        server.update(Collections.<URI, byte[]>singletonMap(MANIFEST_URI, null));
+        server.clearRequests();
+
+        assertFalse(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertTrue(localFile(MANIFEST_URI).exists());
+
+        server.clearRequests();
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertEquals(Arrays.asList("/notification.xml", server.getSnapshotPath()), server.getRequests());
+        assertFalse(localFile(MANIFEST_URI).exists());
+    }
+
+    @Test
+    public void shouldNotApplyDeltaWhenReplacedObjectDoesNotMatchHash() throws IOException {
+        server.update(Collections.singletonMap(MANIFEST_URI, object.getEncoded()));
+        assertTrue(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        FileUtils.writeByteArrayToFile(localFile(MANIFEST_URI), new byte[] { 1, 2, 3 });
+
+        server.update(Collections.singletonMap(MANIFEST_URI, new byte[] { 4, 5, 6 }));
+
+        assertFalse(newFetcher().synchronize(REPOSITORY_URI, validationResult));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, FileUtils.readFileToByteArray(localFile(MANIFEST_URI)));
+    }
+
+    @Test
+    public void shouldNotSynchronizeUnregisteredRepository() {
+        RrdpRpkiRepositoryObjectFetcher subject = newFetcher();
+
+        assertFalse(subject.synchronize(URI.create("rsync://localhost/other/"), validationResult));
+        assertTrue(server.getRequests().isEmpty());
+    }
+
+    @Test
+    public void shouldFindNotificationUriOfCoveringRepository() {
+        assertEquals(server.getNotificationUri(), repositories.getNotificationUri(REPOSITORY_URI));
+        assertEquals(server.getNotificationUri(), repositories.getNotificationUri(OTHER_URI));
+        assertNull(repositories.getNotificationUri(URI.create("rsync://localhost/repo/")));
+        assertNull(repositories.getNotificationUri(URI.create("rsync://localhost/repo/cab/object.mft")));
+        assertEquals(REPOSITORY_URI, repositories.getRepositoryUri(OTHER_URI));
+    }
+
+    private RrdpRpkiRepositoryObjectFetcher newFetcher() {
+        return new RrdpRpkiRepositoryObjectFetcher(repositories, new UriToFileMapper(TEST_TARGET_DIRECTORY));
+    }
+
+    private File localFile(URI uri) {
+        return new UriToFileMapper(TEST_TARGET_DIRECTORY).map(uri, ValidationResult.withLocation(uri));
+    }
+}
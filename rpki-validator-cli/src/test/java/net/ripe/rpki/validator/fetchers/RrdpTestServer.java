@@ -0,0 +1,201 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.bind.DatatypeConverter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * RRDP repository served from memory on a local port, so RRDP fetching can be tested without network access. Every
+ * change to the published objects is a new serial with its own delta, and a new snapshot.
+ */
+public class RrdpTestServer {
+
+    private final HttpServer server;
+    private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    private final Map<URI, byte[]> objects = new LinkedHashMap<URI, byte[]>();
+    private final SortedMap<Long, String> deltas = new TreeMap<Long, String>();
+    private String sessionId;
+    private long serial;
+
+    public RrdpTestServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(path);
+                byte[] contents = files.get(path);
+                if (contents == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, contents.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(contents);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        newSession();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public URI getNotificationUri() {
+        return uri("/notification.xml");
+    }
+
+    /**
+     * Starts a new session, so clients must fetch the snapshot.
+     */
+    public synchronized void newSession() {
+        sessionId = UUID.randomUUID().toString();
+        serial = 1;
+        deltas.clear();
+        publishSnapshot();
+    }
+
+    /**
+     * Publishes a new serial with the objects added or replaced, and the objects with <code>null</code> contents
+     * withdrawn.
+     */
+    public synchronized void update(Map<URI, byte[]> changes) {
+        StringBuilder delta = new StringBuilder();
+        for (Map.Entry<URI, byte[]> change : changes.entrySet()) {
+            URI uri = change.getKey();
+            byte[] previous = objects.get(uri);
+            if (change.getValue() == null) {
+                delta.append("<withdraw uri=\"").append(uri).append("\" hash=\"").append(hash(previous)).append("\"/>");
+                objects.remove(uri);
+            } else {
+                delta.append("<publish uri=\"").append(uri).append("\"");
+                if (previous != null) {
+                    delta.append(" hash=\"").append(hash(previous)).append("\"");
+                }
+                delta.append(">").append(DatatypeConverter.printBase64Binary(change.getValue())).append("</publish>");
+                objects.put(uri, change.getValue());
+            }
+        }
+        serial++;
+        String path = "/" + sessionId + "/" + serial + "/delta.xml";
+        files.put(path, utf8(root("delta") + delta + "</delta>"));
+        deltas.put(serial, path);
+        publishSnapshot();
+    }
+
+    /**
+     * Replaces a served file, for example to make it not match its hash.
+     */
+    public void replaceFile(String path, byte[] contents) {
+        files.put(path, contents);
+    }
+
+    public synchronized String getSnapshotPath() {
+        return "/" + sessionId + "/" + serial + "/snapshot.xml";
+    }
+
+    public synchronized String getDeltaPath(long serial) {
+        return deltas.get(serial);
+    }
+
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<String>(requests);
+        }
+    }
+
+    public void clearRequests() {
+        requests.clear();
+    }
+
+    private void publishSnapshot() {
+        StringBuilder snapshot = new StringBuilder(root("snapshot"));
+        for (Map.Entry<URI, byte[]> object : objects.entrySet()) {
+            snapshot.append("<publish uri=\"").append(object.getKey()).append("\">").append(DatatypeConverter.printBase64Binary(object.getValue())).append("</publish>");
+        }
+        snapshot.append("</snapshot>");
+        byte[] snapshotContents = utf8(snapshot.toString());
+        files.put(getSnapshotPath(), snapshotContents);
+
+        StringBuilder notification = new StringBuilder(root("notification"));
+        notification.append("<snapshot uri=\"").append(uri(getSnapshotPath())).append("\" hash=\"").append(hash(snapshotContents)).append("\"/>");
+        for (Map.Entry<Long, String> delta : deltas.entrySet()) {
+            notification.append("<delta serial=\"").append(delta.getKey()).append("\" uri=\"").append(uri(delta.getValue())).append("\" hash=\"").append(hash(files.get(delta.getValue()))).append("\"/>");
+        }
+        notification.append("</notification>");
+        files.put(getNotificationUri().getPath(), utf8(notification.toString()));
+    }
+
+    private String root(String element) {
+        return "<" + element + " xmlns=\"" + RrdpParser.NAMESPACE + "\" version=\"1\" session_id=\"" + sessionId + "\" serial=\"" + serial + "\">";
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private static String hash(byte[] contents) {
+        try {
+            return RrdpRpkiRepositoryObjectFetcher.hex(MessageDigest.getInstance("SHA-256").digest(contents));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -43,6 +43,7 @@ import net.ripe.rpki.commons.validation.ValidationLocation;
 import net.ripe.rpki.commons.validation.ValidationResult;
 import net.ripe.rpki.commons.validation.ValidationStatus;
 import net.ripe.rpki.validator.commands.TopDownWalkerTest;
+import net.ripe.rpki.validator.util.PackFileStore;
 import net.ripe.rpki.validator.util.UriToFileMapper;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -103,6 +104,16 @@ public class RsyncRpkiRepositoryObjectFetcherTest {
         assertEquals(new ValidationCheck(ValidationStatus.PASSED, KNOWN_OBJECT_TYPE, VALIDATION_URI.toString()), validationResult.getResult(new ValidationLocation(VALIDATION_URI), KNOWN_OBJECT_TYPE));
     }
 
+    @Test
+    public void shouldFetchObjectThroughPackFileStore() throws IOException {
+        File packDirectory = new File(TEST_REPOSITORY_DIRECTORY, "packs");
+        subject = new RsyncRpkiRepositoryObjectFetcher(new RsyncScheduler(rsync), new UriToFileMapper(TEST_TARGET_DIRECTORY), new PackFileStore(packDirectory, 1024 * 1024, 1));
+        rsyncFileContents = object.getEncoded();
+
+        assertEquals(object, subject.fetch(TEST_OBJECT_CERT_URI, Specifications.<byte[]>alwaysTrue(), validationResult));
+        assertEquals(1, packDirectory.listFiles().length);
+    }
+
     @Test
     public void shouldNotFetchObjectIfContentsCannotBeVerified() {
         rsyncFileContents = object.getEncoded();
@@ -0,0 +1,128 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.fetchers;
+
+import static org.junit.Assert.*;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.ripe.rpki.commons.rsync.Rsync;
+import org.junit.After;
+import org.junit.Test;
+
+
+public class RsyncSchedulerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldLimitConcurrentExecutionsPerHost() throws Exception {
+        RsyncScheduler subject = new CountingRsyncScheduler(4, 1);
+
+        executeConcurrently(subject, URI.create("rsync://host/a/"), URI.create("rsync://host/b/"), URI.create("rsync://host/c/"));
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(3, subject.getExecutionCount());
+    }
+
+    @Test
+    public void shouldLimitConcurrentExecutions() throws Exception {
+        RsyncScheduler subject = new CountingRsyncScheduler(2, 2);
+
+        executeConcurrently(subject, URI.create("rsync://host1/a/"), URI.create("rsync://host2/a/"), URI.create("rsync://host3/a/"), URI.create("rsync://host4/a/"));
+
+        assertTrue(maxRunning.get() <= 2);
+        assertEquals(4, subject.getExecutionCount());
+    }
+
+    @Test
+    public void shouldReportExitCodeAndTimes() {
+        RsyncScheduler subject = new CountingRsyncScheduler(1, 1);
+
+        RsyncScheduler.Execution execution = subject.execute(URI.create("rsync://host/a/"), "/tmp/a", new String[] { "--recursive" });
+
+        assertEquals(0, execution.getExitCode());
+        assertTrue(execution.getQueueWaitMillis() >= 0);
+        assertEquals(subject.getTransferTime(), execution.getTransferMillis());
+    }
+
+    private void executeConcurrently(final RsyncScheduler subject, URI... uris) throws Exception {
+        List<Future<RsyncScheduler.Execution>> results = new ArrayList<Future<RsyncScheduler.Execution>>();
+        for (final URI uri : uris) {
+            results.add(executor.submit(new Callable<RsyncScheduler.Execution>() {
+                @Override
+                public RsyncScheduler.Execution call() {
+                    return subject.execute(uri, "/tmp/" + uri.getHost(), new String[0]);
+                }
+            }));
+        }
+        for (Future<RsyncScheduler.Execution> result : results) {
+            assertEquals(0, result.get().getExitCode());
+        }
+    }
+
+    private class CountingRsyncScheduler extends RsyncScheduler {
+        CountingRsyncScheduler(int maxConcurrent, int maxConcurrentPerHost) {
+            super(maxConcurrent, maxConcurrentPerHost, 0);
+        }
+
+        @Override
+        Rsync createRsync() {
+            return new Rsync() {
+                @Override
+                public int execute() {
+                    int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    return 0;
+                }
+            };
+        }
+    }
+}
@@ -79,4 +79,20 @@ public class HierarchicalUriCacheTest {
         assertFalse(subject.contains(URI.create("rsync://host:9999/foo/bar/baz.roa")));
     }
 
+    @Test
+    public void shouldFindCachedAncestor() {
+        URI parent = URI.create("rsync://host/bar/");
+        subject.add(parent);
+        assertEquals(parent, subject.findCachedAncestorOrSelf(URI.create("rsync://host/bar/path/foo.cer")));
+        assertEquals(parent, subject.findCachedAncestorOrSelf(parent));
+        assertNull(subject.findCachedAncestorOrSelf(URI.create("rsync://host/foo/")));
+    }
+
+    @Test
+    public void shouldRemoveUri() {
+        URI parent = URI.create("rsync://host/bar/");
+        subject.add(parent);
+        subject.remove(parent);
+        assertFalse(subject.contains(URI.create("rsync://host/bar/foo.cer")));
+    }
 }
@@ -0,0 +1,201 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2012 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms.FileContentSpecification;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class PackFileStoreTest {
+
+    private static final File TEST_DIRECTORY = new File(System.getProperty("java.io.tmpdir", "/tmp"), "pack-file-store-test");
+    private static final File PACK_DIRECTORY = new File(TEST_DIRECTORY, "packs");
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private PackFileStore subject;
+
+    @Before
+    public void setUp() throws IOException {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+        subject = new PackFileStore(PACK_DIRECTORY, SEGMENT_SIZE, 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+
+    @Test
+    public void shouldStoreObjectByHash() throws Exception {
+        byte[] contents = "object".getBytes("US-ASCII");
+
+        assertArrayEquals(contents, bytes(subject.put(contents)));
+        assertArrayEquals(contents, bytes(subject.get(sha256(contents))));
+        assertNull(subject.get(sha256("other".getBytes("US-ASCII"))));
+    }
+
+    @Test
+    public void shouldReturnReadOnlyBuffers() throws Exception {
+        assertTrue(subject.put("object".getBytes("US-ASCII")).isReadOnly());
+    }
+
+    @Test
+    public void shouldNotReadUnchangedFileAgain() throws Exception {
+        File file = new File(TEST_DIRECTORY, "object.cer");
+        FileUtils.writeByteArrayToFile(file, "object".getBytes("US-ASCII"));
+        long lastModified = file.lastModified();
+
+        assertArrayEquals("object".getBytes("US-ASCII"), subject.read(file).toByteArray());
+
+        // Same size and modification time, like a file that rsync did not update
+        FileUtils.writeByteArrayToFile(file, "OBJECT".getBytes("US-ASCII"));
+        assertTrue(file.setLastModified(lastModified));
+        assertArrayEquals("object".getBytes("US-ASCII"), subject.read(file).toByteArray());
+
+        FileUtils.writeByteArrayToFile(file, "changed".getBytes("US-ASCII"));
+        assertArrayEquals("changed".getBytes("US-ASCII"), subject.read(file).toByteArray());
+    }
+
+    @Test
+    public void shouldCompareManifestHashWithStoredHash() throws Exception {
+        File file = new File(TEST_DIRECTORY, "object.cer");
+        FileUtils.writeByteArrayToFile(file, "object".getBytes("US-ASCII"));
+        long lastModified = file.lastModified();
+        FileContentSpecification specification = new FileContentSpecification(sha256("object".getBytes("US-ASCII")));
+
+        assertTrue(subject.read(file).satisfies(specification));
+
+        // Not hashed again, so the changed contents are not noticed
+        FileUtils.writeByteArrayToFile(file, "OBJECT".getBytes("US-ASCII"));
+        assertTrue(file.setLastModified(lastModified));
+        assertTrue(subject.read(file).satisfies(specification));
+        assertFalse(subject.read(file).satisfies(new FileContentSpecification(sha256("OBJECT".getBytes("US-ASCII")))));
+    }
+
+    @Test
+    public void shouldForgetFilesWhenTheirSegmentIsDropped() throws Exception {
+        File file = new File(TEST_DIRECTORY, "object.cer");
+        FileUtils.writeByteArrayToFile(file, filled('a', 600));
+        subject.read(file);
+        assertEquals(1, subject.getFileCount());
+
+        subject.put(filled('b', 600));
+        subject.put(filled('c', 600));
+
+        assertEquals(0, subject.getFileCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailToReadMissingFile() throws Exception {
+        subject.read(new File(TEST_DIRECTORY, "missing.cer"));
+    }
+
+    @Test
+    public void shouldFindObjectsAfterReopening() throws Exception {
+        byte[] first = "first".getBytes("US-ASCII");
+        byte[] second = "second".getBytes("US-ASCII");
+        subject.put(first);
+        subject.put(second);
+
+        PackFileStore reopened = new PackFileStore(PACK_DIRECTORY, SEGMENT_SIZE, 2);
+
+        assertArrayEquals(first, bytes(reopened.get(sha256(first))));
+        assertArrayEquals(second, bytes(reopened.get(sha256(second))));
+    }
+
+    @Test
+    public void shouldIgnoreIncompleteRecordWhenReopening() throws Exception {
+        byte[] contents = "object".getBytes("US-ASCII");
+        subject.put(contents);
+        File segment = PACK_DIRECTORY.listFiles()[0];
+        byte[] segmentContents = FileUtils.readFileToByteArray(segment);
+        segmentContents[4 + 4 + 32] ^= 1;
+        FileUtils.writeByteArrayToFile(segment, segmentContents);
+
+        PackFileStore reopened = new PackFileStore(PACK_DIRECTORY, SEGMENT_SIZE, 2);
+
+        assertNull(reopened.get(sha256(contents)));
+        assertArrayEquals(contents, bytes(reopened.put(contents)));
+        assertArrayEquals(contents, bytes(new PackFileStore(PACK_DIRECTORY, SEGMENT_SIZE, 2).get(sha256(contents))));
+    }
+
+    @Test
+    public void shouldDropOldestSegmentWhenFull() throws Exception {
+        byte[] first = filled('a', 600);
+        byte[] second = filled('b', 600);
+        byte[] third = filled('c', 600);
+
+        subject.put(first);
+        subject.put(second);
+        ByteBuffer firstBuffer = subject.get(sha256(first));
+        subject.put(third);
+
+        assertNull(subject.get(sha256(first)));
+        assertArrayEquals(second, bytes(subject.get(sha256(second))));
+        assertArrayEquals(third, bytes(subject.get(sha256(third))));
+        assertEquals(2, PACK_DIRECTORY.listFiles().length);
+        assertArrayEquals("buffers of dropped segments stay valid", first, bytes(firstBuffer));
+    }
+
+    @Test
+    public void shouldNotStoreObjectLargerThanSegment() throws Exception {
+        byte[] contents = filled('a', SEGMENT_SIZE);
+
+        assertArrayEquals(contents, bytes(subject.put(contents)));
+        assertNull(subject.get(sha256(contents)));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    private static byte[] filled(char c, int length) {
+        byte[] result = new byte[length];
+        java.util.Arrays.fill(result, (byte) c);
+        return result;
+    }
+
+    private static byte[] sha256(byte[] contents) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(contents);
+    }
+}
@@ -72,12 +72,16 @@ public class TrustAnchorLocatorTest {
         assertEquals(URI.create("rsync://foo.net.invald/root1.cer"), tal1.getCertificateLocation());
         assertEquals(EXPECTED_PUBLIC_KEY_INFO, tal1.getPublicKeyInfo());
         assertEquals(new ArrayList<URI>(), tal1.getPrefetchUris());
+        assertEquals(1, tal1.getWalkerThreads());
+        assertEquals(8, tal1.getWalkerLookAhead());
 
         TrustAnchorLocator tal2 = TrustAnchorLocator.fromFile(new File("src/test/resources/rpki-extended-tal2.tal"));
         assertEquals("TEST2 TAL", tal2.getCaName());
         assertEquals(URI.create("rsync://foo.net.invald/root2.cer"), tal2.getCertificateLocation());
         assertEquals(EXPECTED_PUBLIC_KEY_INFO, tal2.getPublicKeyInfo());
         assertEquals(Arrays.asList(URI.create("rsync://foo.net.invalid/")), tal2.getPrefetchUris());
+        assertEquals(4, tal2.getWalkerThreads());
+        assertEquals(0, tal2.getWalkerLookAhead());
     }
 
 }